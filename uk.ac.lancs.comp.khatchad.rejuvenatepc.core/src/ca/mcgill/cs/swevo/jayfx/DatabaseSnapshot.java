@@ -0,0 +1,279 @@
+/* JayFX - A Fact Extractor Plug-in for Eclipse
+ * Copyright (C) 2006  McGill University (http://www.cs.mcgill.ca/~swevo/jayfx)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.mcgill.cs.swevo.jayfx;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaCore;
+
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Reads and writes a binary snapshot of a program database along with what
+ * is needed to update it later: the packages analyzed and, for each
+ * compilation unit, its modification stamp when it was analyzed, its
+ * top-level types and the elements it touched. Elements are written once, in
+ * a string table, and referred to by their index in it everywhere else. The
+ * snapshot is read from a memory-mapped file.
+ */
+public final class DatabaseSnapshot {
+
+	// "JFXS"
+	private static final int MAGIC = 0x4A465853;
+
+	private static final int VERSION = 1;
+
+	private static final String ENCODING = "UTF-8";
+
+	private DatabaseSnapshot() {
+	}
+
+	/**
+	 * Reads a snapshot into the given, empty, structures.
+	 *
+	 * @param pFile
+	 *            The snapshot file. Must exist.
+	 * @param pCHA
+	 *            Whether the database must have been built with class
+	 *            hierarchy analysis.
+	 * @return false if the snapshot was written by another version or with a
+	 *         different class hierarchy analysis setting, in which case
+	 *         nothing is read.
+	 * @throws IOException
+	 *             If the file cannot be read or is corrupt. The structures may
+	 *             then be partially filled.
+	 */
+	public static boolean read(final File pFile, final boolean pCHA,
+			final ProgramDatabase pDB, final Set<String> pPackages,
+			final Map<ICompilationUnit, Long> pStamps,
+			final Map<ICompilationUnit, Set<String>> pTypes,
+			final Map<ICompilationUnit, Set<IElement>> pElements)
+			throws IOException {
+		final FileInputStream lIn = new FileInputStream(pFile);
+		try {
+			final FileChannel lChannel = lIn.getChannel();
+			final MappedByteBuffer lBuffer = lChannel.map(
+					FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+
+			if (lBuffer.getInt() != MAGIC || lBuffer.getInt() != VERSION
+					|| lBuffer.getInt() != Category.values().length
+					|| lBuffer.getInt() != Relation.values().length
+					|| (lBuffer.get() != 0) != pCHA)
+				return false;
+
+			// The string table
+			final IElement[] lTable = new IElement[lBuffer.getInt()];
+			for (int i = 0; i < lTable.length; i++) {
+				final Category lCategory = Category.values()[lBuffer.get()];
+				lTable[i] = FlyweightElementFactory.getElement(lCategory,
+						DatabaseSnapshot.readString(lBuffer));
+			}
+
+			// The elements and their relations
+			final int lSize = lBuffer.getInt();
+			for (int i = 0; i < lSize; i++) {
+				final IElement lElement = lTable[lBuffer.getInt()];
+				pDB.addElement(lElement, lBuffer.getInt());
+			}
+			for (int i = 0; i < lSize; i++) {
+				final IElement lElement = lTable[lBuffer.getInt()];
+				final int lRelations = lBuffer.getInt();
+				for (int j = 0; j < lRelations; j++) {
+					final Relation lRelation = Relation.values()[lBuffer.get()];
+					final int lRange = lBuffer.getInt();
+					for (int k = 0; k < lRange; k++)
+						pDB.addRelation(lElement, lRelation, lTable[lBuffer
+								.getInt()]);
+				}
+			}
+
+			final int lPackages = lBuffer.getInt();
+			for (int i = 0; i < lPackages; i++)
+				pPackages.add(DatabaseSnapshot.readString(lBuffer));
+
+			// The compilation units
+			final int lUnits = lBuffer.getInt();
+			for (int i = 0; i < lUnits; i++) {
+				final IJavaElement lUnit = JavaCore.create(DatabaseSnapshot
+						.readString(lBuffer));
+				final long lStamp = lBuffer.getLong();
+				final Set<String> lTypes = new HashSet<String>();
+				for (int j = lBuffer.getInt(); j > 0; j--)
+					lTypes.add(DatabaseSnapshot.readString(lBuffer));
+				final Set<IElement> lElements = new HashSet<IElement>();
+				for (int j = lBuffer.getInt(); j > 0; j--)
+					lElements.add(lTable[lBuffer.getInt()]);
+				if (lUnit instanceof ICompilationUnit) {
+					pStamps.put((ICompilationUnit) lUnit, lStamp);
+					pTypes.put((ICompilationUnit) lUnit, lTypes);
+					pElements.put((ICompilationUnit) lUnit, lElements);
+				}
+			}
+			return true;
+		}
+		catch (final BufferUnderflowException lException) {
+			throw new IOException("Truncated snapshot " + pFile);
+		}
+		catch (final IndexOutOfBoundsException lException) {
+			throw new IOException("Corrupt snapshot " + pFile);
+		}
+		catch (final NegativeArraySizeException lException) {
+			throw new IOException("Corrupt snapshot " + pFile);
+		}
+		catch (final ElementNotFoundException lException) {
+			throw new IOException("Corrupt snapshot " + pFile);
+		}
+		finally {
+			lIn.close();
+		}
+	}
+
+	/**
+	 * Writes a snapshot. The file is only replaced once the snapshot has been
+	 * completely written.
+	 *
+	 * @param pFile
+	 *            The snapshot file.
+	 * @param pCHA
+	 *            Whether the database was built with class hierarchy
+	 *            analysis.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public static void write(final File pFile, final boolean pCHA,
+			final ProgramDatabase pDB, final Set<String> pPackages,
+			final Map<ICompilationUnit, Long> pStamps,
+			final Map<ICompilationUnit, Set<String>> pTypes,
+			final Map<ICompilationUnit, Set<IElement>> pElements)
+			throws IOException {
+		// Number every element referred to
+		final Map<IElement, Integer> lIds = new HashMap<IElement, Integer>();
+		final List<IElement> lTable = new ArrayList<IElement>();
+		for (final IElement lElement : pDB.getAllElements())
+			DatabaseSnapshot.getId(lElement, lIds, lTable);
+		for (final Set<IElement> lElements : pElements.values())
+			for (final IElement lElement : lElements)
+				DatabaseSnapshot.getId(lElement, lIds, lTable);
+
+		final File lTemp = new File(pFile.getPath() + ".tmp");
+		final DataOutputStream lOut = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(lTemp)));
+		try {
+			lOut.writeInt(MAGIC);
+			lOut.writeInt(VERSION);
+			lOut.writeInt(Category.values().length);
+			lOut.writeInt(Relation.values().length);
+			lOut.writeByte(pCHA ? 1 : 0);
+
+			lOut.writeInt(lTable.size());
+			for (final IElement lElement : lTable) {
+				lOut.writeByte(lElement.getCategory().ordinal());
+				DatabaseSnapshot.writeString(lOut, lElement.getId());
+			}
+
+			final Set<IElement> lAll = pDB.getAllElements();
+			lOut.writeInt(lAll.size());
+			for (final IElement lElement : lAll) {
+				lOut.writeInt(lIds.get(lElement));
+				lOut.writeInt(pDB.getModifiers(lElement));
+			}
+			for (final IElement lElement : lAll) {
+				lOut.writeInt(lIds.get(lElement));
+				final Set<Relation> lRelations = pDB.getRelations(lElement);
+				// A relation without a transpose may have been added as one
+				lRelations.remove(null);
+				lOut.writeInt(lRelations.size());
+				for (final Relation lRelation : lRelations) {
+					// Only the range still in the database can be restored
+					final List<IElement> lRange = new ArrayList<IElement>();
+					for (final IElement lTarget : pDB.getRange(lElement,
+							lRelation))
+						if (pDB.contains(lTarget))
+							lRange.add(lTarget);
+					lOut.writeByte(lRelation.ordinal());
+					lOut.writeInt(lRange.size());
+					for (final IElement lTarget : lRange)
+						lOut.writeInt(lIds.get(lTarget));
+				}
+			}
+
+			lOut.writeInt(pPackages.size());
+			for (final String lPackage : pPackages)
+				DatabaseSnapshot.writeString(lOut, lPackage);
+
+			lOut.writeInt(pElements.size());
+			for (final Map.Entry<ICompilationUnit, Set<IElement>> lEntry : pElements
+					.entrySet()) {
+				final ICompilationUnit lUnit = lEntry.getKey();
+				DatabaseSnapshot.writeString(lOut, lUnit
+						.getHandleIdentifier());
+				final Long lStamp = pStamps.get(lUnit);
+				lOut.writeLong(lStamp == null ? -1 : lStamp.longValue());
+				final Set<String> lTypes = pTypes.get(lUnit);
+				lOut.writeInt(lTypes.size());
+				for (final String lType : lTypes)
+					DatabaseSnapshot.writeString(lOut, lType);
+				lOut.writeInt(lEntry.getValue().size());
+				for (final IElement lElement : lEntry.getValue())
+					lOut.writeInt(lIds.get(lElement));
+			}
+		}
+		finally {
+			lOut.close();
+		}
+
+		if (pFile.exists() && !pFile.delete() || !lTemp.renameTo(pFile)) {
+			lTemp.delete();
+			throw new IOException("Cannot replace snapshot " + pFile);
+		}
+	}
+
+	private static int getId(final IElement pElement,
+			final Map<IElement, Integer> pIds, final List<IElement> pTable) {
+		final Integer lId = pIds.get(pElement);
+		if (lId != null)
+			return lId.intValue();
+		pIds.put(pElement, pTable.size());
+		pTable.add(pElement);
+		return pTable.size() - 1;
+	}
+
+	private static String readString(final MappedByteBuffer pBuffer)
+			throws IOException {
+		final byte[] lBytes = new byte[pBuffer.getInt()];
+		pBuffer.get(lBytes);
+		return new String(lBytes, ENCODING);
+	}
+
+	private static void writeString(final DataOutputStream pOut,
+			final String pString) throws IOException {
+		final byte[] lBytes = pString.getBytes(ENCODING);
+		pOut.writeInt(lBytes.length);
+		pOut.write(lBytes);
+	}
+}
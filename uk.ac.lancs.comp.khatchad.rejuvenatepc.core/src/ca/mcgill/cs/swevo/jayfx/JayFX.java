@@ -10,10 +10,14 @@
 
 package ca.mcgill.cs.swevo.jayfx;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.ajdt.core.javaelements.AJCodeElement;
@@ -22,6 +26,7 @@ import org.eclipse.ajdt.core.javaelements.AspectElement;
 import org.eclipse.ajdt.core.javaelements.IAJCodeElement;
 import org.eclipse.ajdt.core.model.AJRelationship;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
@@ -49,6 +54,7 @@ import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.Util;
 
 import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
 import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.ClassElement;
 import ca.mcgill.cs.swevo.jayfx.model.IElement;
 import ca.mcgill.cs.swevo.jayfx.model.MethodElement;
 import ca.mcgill.cs.swevo.jayfx.model.Relation;
@@ -139,6 +145,19 @@ public class JayFX {
 	// A Set of all the packages in the "project"
 	private final Set<String> aPackages = new HashSet<String>();
 
+	// The Java projects analyzed
+	private final Set<IJavaProject> aJavaProjects = new HashSet<IJavaProject>();
+
+	// The elements added or related while analyzing each compilation unit
+	private final Map<ICompilationUnit, Set<IElement>> aUnitElements = new HashMap<ICompilationUnit, Set<IElement>>();
+
+	// The fully qualified names of the top-level types of each compilation
+	// unit
+	private final Map<ICompilationUnit, Set<String>> aUnitTypes = new HashMap<ICompilationUnit, Set<String>>();
+
+	// The modification stamp of each compilation unit when it was analyzed
+	private final Map<ICompilationUnit, Long> aUnitStamps = new HashMap<ICompilationUnit, Long>();
+
 	public JayFX() {
 		this.aAnalyzer = new Analyzer(this.aDB);
 	}
@@ -332,11 +351,8 @@ public class JayFX {
 		this.aCHAEnabled = pCHA;
 
 		// Collect all target classes
-		final List<ICompilationUnit> lTargets = new ArrayList<ICompilationUnit>();
-
-		for (final IProject pProject : pProjectCol)
-			for (final IJavaProject lNext : JayFX.getJavaProjects(pProject))
-				lTargets.addAll(JayFX.getCompilationUnits(lNext));
+		final List<ICompilationUnit> lTargets = this
+				.getCompilationUnits(pProjectCol);
 
 		// Process all the target classes
 		final ASTCrawler lAnalyzer = new ASTCrawler(this.aDB, this.aConverter);
@@ -344,15 +360,7 @@ public class JayFX {
 			pProgress.beginTask("Building program database", lTargets.size());
 
 		for (final ICompilationUnit lCU : lTargets) {
-			try {
-				final IPackageDeclaration[] lPDs = lCU.getPackageDeclarations();
-				if (lPDs.length > 0)
-					this.aPackages.add(lPDs[0].getElementName());
-			}
-			catch (final JavaModelException lException) {
-				throw new JayFXException(lException);
-			}
-			lAnalyzer.analyze(lCU);
+			this.analyze(lAnalyzer, lCU);
 			if (pProgress != null)
 				pProgress.worked(1);
 		}
@@ -387,50 +395,7 @@ public class JayFX {
 			// k++;
 			final IElement lNext = lToProcess.iterator().next();
 			lToProcess.remove(lNext);
-			if (lNext.getCategory() == Category.METHOD)
-				if (!this.isAbstractMethod(lNext)) {
-					final Set<IElement> lOverrides = this
-							.getOverridenMethods(lNext);
-					for (final IElement lMethod : lOverrides) {
-						if (!this.isProjectElement(lMethod)) {
-							int lModifiers = 0;
-							try {
-								final IJavaElement lElement = this
-										.convertToJavaElement(lMethod);
-								if (lElement instanceof IMember) {
-									lModifiers = ((IMember) lElement)
-											.getFlags();
-									if (Modifier.isAbstract(lModifiers))
-										lModifiers += 16384;
-								}
-							}
-							catch (final ConversionException lException) {
-								// Ignore, the modifiers used is 0
-							}
-							catch (final JavaModelException lException) {
-								// Ignore, the modifierds used is 0
-							}
-							this.aDB.addElement(lMethod, lModifiers);
-						}
-						this.aDB.addRelationAndTranspose(lNext,
-								Relation.OVERRIDES, lMethod);
-					}
-					/*
-					 * for( Iterator j = lOverrides.iterator(); j.hasNext(); ) {
-					 * IElement lMethod = (IElement)j.next(); if(
-					 * !isProjectElement( lMethod )) { int lModifiers = 0; try {
-					 * IJavaElement lElement = convertToJavaElement( lMethod );
-					 * if( lElement instanceof IMember ) { lModifiers =
-					 * ((IMember)lElement).getFlags(); if( Modifier.isAbstract(
-					 * lModifiers )) { lModifiers += 16384; } } } catch(
-					 * ConversionException pException ) { // Ignore, the
-					 * modifiers used is 0 } catch( JavaModelException
-					 * pException ) { // Ignore, the modifiers used is 0 }
-					 * aDB.addElement( lMethod, lModifiers ); }
-					 * aDB.addRelationAndTranspose( lNext, Relation.OVERRIDES,
-					 * lMethod ); }
-					 */
-				}
+			this.addOverridenMethods(lNext);
 			pProgress.worked(1);
 			// System.out.println( k + "/" + lSize );
 		}
@@ -456,6 +421,388 @@ public class JayFX {
 		//		pProgress.done();
 	}
 
+	/**
+	 * Analyzes a compilation unit, remembering the elements it touched and
+	 * the types it declares so that it can be updated later.
+	 * 
+	 * @param pAnalyzer
+	 *            The crawler to analyze the unit with. Cannot be null.
+	 * @param pCU
+	 *            The unit to analyze. Cannot be null.
+	 * @throws JayFXException
+	 *             If the unit's declarations cannot be read.
+	 */
+	private void analyze(final ASTCrawler pAnalyzer, final ICompilationUnit pCU)
+			throws JayFXException {
+		final Set<String> lTypes = new HashSet<String>();
+		try {
+			final IPackageDeclaration[] lPDs = pCU.getPackageDeclarations();
+			if (lPDs.length > 0)
+				this.aPackages.add(lPDs[0].getElementName());
+			for (final IType lType : pCU.getTypes())
+				lTypes.add(lType.getFullyQualifiedName());
+		}
+		catch (final JavaModelException lException) {
+			throw new JayFXException(lException);
+		}
+
+		final Set<IElement> lElements = new HashSet<IElement>();
+		this.aDB.recordModifiedElements(lElements);
+		try {
+			pAnalyzer.analyze(pCU);
+		}
+		finally {
+			this.aDB.recordModifiedElements(null);
+		}
+		this.aUnitElements.put(pCU, lElements);
+		this.aUnitTypes.put(pCU, lTypes);
+		this.aUnitStamps.put(pCU, JayFX.getModificationStamp(pCU));
+	}
+
+	/**
+	 * Returns all the compilation units of the given projects and of the
+	 * projects they reference, remembering the Java projects analyzed.
+	 * 
+	 * @param pProjectCol
+	 *            The projects to analyze. Never null.
+	 * @return The compilation units. Never null.
+	 * @throws JayFXException
+	 *             If the units cannot be collected.
+	 */
+	private List<ICompilationUnit> getCompilationUnits(
+			final Collection<IProject> pProjectCol) throws JayFXException {
+		final List<ICompilationUnit> lReturn = new ArrayList<ICompilationUnit>();
+		for (final IProject pProject : pProjectCol)
+			for (final IJavaProject lNext : JayFX.getJavaProjects(pProject)) {
+				this.aJavaProjects.add(lNext);
+				lReturn.addAll(JayFX.getCompilationUnits(lNext));
+			}
+		return lReturn;
+	}
+
+	/**
+	 * @param pCU
+	 *            A compilation unit. Cannot be null.
+	 * @return The modification stamp of the unit's resource, or
+	 *         IResource.NULL_STAMP if it has none.
+	 */
+	private static long getModificationStamp(final ICompilationUnit pCU) {
+		final IResource lResource = pCU.getResource();
+		return lResource == null ? IResource.NULL_STAMP : lResource
+				.getModificationStamp();
+	}
+
+	/**
+	 * Initializes the program database like
+	 * {@link #initialize(Collection, IProgressMonitor, boolean)}, but reuses
+	 * the facts of a snapshot saved by {@link #saveSnapshot(File)} for the
+	 * compilation units that have not been modified since. Only the modified,
+	 * added, and removed units are analyzed. If the snapshot does not exist or
+	 * cannot be read, the whole program is analyzed.
+	 * 
+	 * @param pProjectCol
+	 *            The projects to analyze. Should never be null.
+	 * @param pProgress
+	 *            A progress monitor. Can be null.
+	 * @param pCHA
+	 *            Whether to calculate overriding relationships between methods.
+	 * @param pSnapshot
+	 *            The snapshot file. Never null.
+	 * @throws JayFXException
+	 *             If the method cannot complete correctly
+	 * @throws ConversionException
+	 * @throws ElementNotFoundException
+	 * @throws JavaModelException
+	 */
+	public void initialize(final Collection<IProject> pProjectCol,
+			final IProgressMonitor pProgress, final boolean pCHA,
+			final File pSnapshot) throws JayFXException,
+			ElementNotFoundException, ConversionException, JavaModelException {
+		boolean lRestored = false;
+		if (pSnapshot.isFile())
+			try {
+				lRestored = DatabaseSnapshot.read(pSnapshot, pCHA, this.aDB,
+						this.aPackages, this.aUnitStamps, this.aUnitTypes,
+						this.aUnitElements);
+			}
+			catch (final IOException lException) {
+				// Ignore, the whole program is analyzed
+			}
+
+		if (!lRestored) {
+			this.aDB.clear();
+			this.aPackages.clear();
+			this.aUnitStamps.clear();
+			this.aUnitTypes.clear();
+			this.aUnitElements.clear();
+			this.initialize(pProjectCol, pProgress, pCHA);
+			return;
+		}
+
+		this.aCHAEnabled = pCHA;
+		final Set<ICompilationUnit> lTargets = new HashSet<ICompilationUnit>(
+				this.getCompilationUnits(pProjectCol));
+		final List<ICompilationUnit> lChanged = new ArrayList<ICompilationUnit>();
+		for (final ICompilationUnit lCU : lTargets) {
+			final Long lStamp = this.aUnitStamps.get(lCU);
+			if (lStamp == null
+					|| lStamp.longValue() == IResource.NULL_STAMP
+					|| lStamp.longValue() != JayFX.getModificationStamp(lCU))
+				lChanged.add(lCU);
+			else
+				// The converter is otherwise loaded while crawling
+				for (final IType lType : lCU.getAllTypes())
+					this.aConverter.addMapping(lType);
+		}
+		for (final ICompilationUnit lCU : this.aUnitStamps.keySet())
+			if (!lTargets.contains(lCU))
+				lChanged.add(lCU);
+
+		this.update(lChanged, pProgress);
+	}
+
+	/**
+	 * Saves a snapshot of the database from which a later session can be
+	 * initialized with
+	 * {@link #initialize(Collection, IProgressMonitor, boolean, File)}.
+	 * 
+	 * @param pSnapshot
+	 *            The snapshot file. Never null.
+	 * @throws IOException
+	 *             If the snapshot cannot be written.
+	 */
+	public void saveSnapshot(final File pSnapshot) throws IOException {
+		DatabaseSnapshot.write(pSnapshot, this.aCHAEnabled, this.aDB,
+				this.aPackages, this.aUnitStamps, this.aUnitTypes,
+				this.aUnitElements);
+	}
+
+	/**
+	 * Brings the database up to date with a set of compilation units that
+	 * were changed, added, or removed since it was initialized, without
+	 * analyzing the rest of the program again. The relations that originated
+	 * in the units are removed, the units that still exist are analyzed
+	 * again, the elements they no longer declare are removed and, if enabled,
+	 * the class hierarchy analysis is redone for the methods whose overriding
+	 * relationships may have changed. Units outside of the analyzed projects
+	 * are ignored.
+	 * 
+	 * @param pUnits
+	 *            The units to update. Never null.
+	 * @param pProgress
+	 *            A progress monitor. Can be null.
+	 * @return The elements whose relations may have changed, including the
+	 *         ones that were removed from the database.
+	 * @throws JayFXException
+	 *             If a unit cannot be analyzed.
+	 */
+	public Set<IElement> update(final Collection<ICompilationUnit> pUnits,
+			final IProgressMonitor pProgress) throws JayFXException {
+		final List<ICompilationUnit> lUnits = new ArrayList<ICompilationUnit>();
+		for (final ICompilationUnit lCU : pUnits)
+			if (this.aJavaProjects.contains(lCU.getJavaProject()))
+				lUnits.add(lCU);
+
+		final Set<IElement> lAffected = new HashSet<IElement>();
+		final Set<IElement> lUndeclared = new HashSet<IElement>();
+		if (pProgress != null)
+			pProgress.beginTask("Updating program database", lUnits.size());
+
+		// Remove what the units contributed to the database
+		for (final ICompilationUnit lCU : lUnits) {
+			final Set<IElement> lElements = this.aUnitElements.remove(lCU);
+			final Set<String> lTypes = this.aUnitTypes.remove(lCU);
+			this.aUnitStamps.remove(lCU);
+			if (lElements == null)
+				continue;
+			for (final IElement lElement : lElements) {
+				if (JayFX.isDeclaredIn(lElement, lTypes))
+					lUndeclared.add(lElement);
+				this.removeRelations(lElement, lTypes, lAffected);
+			}
+			lAffected.addAll(lElements);
+		}
+
+		// Analyze the units that still exist again
+		final ASTCrawler lAnalyzer = new ASTCrawler(this.aDB, this.aConverter);
+		final Set<IElement> lDeclared = new HashSet<IElement>();
+		for (final ICompilationUnit lCU : lUnits) {
+			if (lCU.exists()) {
+				this.analyze(lAnalyzer, lCU);
+				final Set<String> lTypes = this.aUnitTypes.get(lCU);
+				for (final IElement lElement : this.aUnitElements.get(lCU)) {
+					if (JayFX.isDeclaredIn(lElement, lTypes))
+						lDeclared.add(lElement);
+					lAffected.add(lElement);
+				}
+			}
+			if (pProgress != null)
+				pProgress.worked(1);
+		}
+
+		// Remove the elements that are no longer declared
+		lUndeclared.removeAll(lDeclared);
+		for (final IElement lElement : lUndeclared)
+			if (this.aDB.contains(lElement)) {
+				for (final Relation lRelation : this.aDB.getRelations(lElement))
+					lAffected.addAll(this.aDB.getRange(lElement, lRelation));
+				this.aDB.removeElement(lElement);
+			}
+
+		if (this.aCHAEnabled)
+			this.updateOverridenMethods(lDeclared, lAffected);
+
+		if (pProgress != null)
+			pProgress.done();
+		return lAffected;
+	}
+
+	/**
+	 * Removes the relations of pElement that originated in a compilation unit
+	 * declaring the given types: all of its direct relations if it is declared
+	 * in the unit, and the containment and annotation relations to elements
+	 * of the unit otherwise, as these have no transpose.
+	 * 
+	 * @param pElement
+	 *            The element. Cannot be null.
+	 * @param pTypes
+	 *            The top-level types of the unit.
+	 * @param pAffected
+	 *            The Set to which the elements whose relations changed are
+	 *            added.
+	 */
+	private void removeRelations(final IElement pElement,
+			final Set<String> pTypes, final Set<IElement> pAffected) {
+		final boolean lDeclared = JayFX.isDeclaredIn(pElement, pTypes);
+		for (final Relation lRelation : this.aDB.getRelations(pElement)) {
+			if (lRelation == null || !lRelation.isDirect())
+				continue;
+			for (final IElement lTarget : this.aDB.getRange(pElement,
+					lRelation))
+				if (lDeclared
+						|| (lRelation == Relation.CONTAINS || lRelation == Relation.ANNOTATES)
+						&& JayFX.isDeclaredIn(lTarget, pTypes)) {
+					// The callers of an overriden method also call pElement.
+					if (lRelation == Relation.OVERRIDES)
+						pAffected.addAll(this.aDB.getRange(lTarget,
+								Relation.T_CALLS));
+					this.aDB.removeRelationAndTranspose(pElement, lRelation,
+							lTarget);
+					pAffected.add(lTarget);
+				}
+		}
+	}
+
+	/**
+	 * Redoes the class hierarchy analysis for the given methods and for the
+	 * methods of the subtypes of the given types.
+	 * 
+	 * @param pElements
+	 *            The elements declared in the updated units.
+	 * @param pAffected
+	 *            The Set to which the elements whose relations changed are
+	 *            added.
+	 */
+	private void updateOverridenMethods(final Set<IElement> pElements,
+			final Set<IElement> pAffected) {
+		final Set<IElement> lMethods = new HashSet<IElement>();
+		for (final IElement lElement : pElements) {
+			if (!this.aDB.contains(lElement))
+				continue;
+			if (lElement.getCategory() == Category.METHOD)
+				lMethods.add(lElement);
+			else if (lElement instanceof ClassElement) {
+				final Set<IElement> lSubtypes = new HashSet<IElement>();
+				lSubtypes.addAll(this.aAnalyzer.getRange(lElement,
+						Relation.T_TRANS_EXTENDS));
+				lSubtypes.addAll(this.aAnalyzer.getRange(lElement,
+						Relation.T_TRANS_IMPLEMENTS));
+				for (final IElement lSubtype : lSubtypes)
+					lMethods.addAll(this.aDB.getRange(lSubtype,
+							Relation.DECLARES_METHOD));
+			}
+		}
+
+		for (final IElement lMethod : lMethods) {
+			for (final IElement lOverriden : this.aDB.getRange(lMethod,
+					Relation.OVERRIDES)) {
+				pAffected.addAll(this.aDB.getRange(lOverriden,
+						Relation.T_CALLS));
+				this.aDB.removeRelationAndTranspose(lMethod,
+						Relation.OVERRIDES, lOverriden);
+			}
+			this.addOverridenMethods(lMethod);
+			for (final IElement lOverriden : this.aDB.getRange(lMethod,
+					Relation.OVERRIDES)) {
+				pAffected.addAll(this.aDB.getRange(lOverriden,
+						Relation.T_CALLS));
+				pAffected.add(lOverriden);
+			}
+			pAffected.add(lMethod);
+		}
+	}
+
+	/**
+	 * Returns whether pElement is declared by one of the given top-level
+	 * types or by a type nested in one of them.
+	 * 
+	 * @param pElement
+	 *            The element to check. Cannot be null.
+	 * @param pTypes
+	 *            Fully qualified type names.
+	 * @return true if pElement belongs to one of the types.
+	 */
+	private static boolean isDeclaredIn(final IElement pElement,
+			final Set<String> pTypes) {
+		final ClassElement lClass = pElement instanceof ClassElement ? (ClassElement) pElement
+				: pElement.getDeclaringClass();
+		if (lClass == null)
+			return false;
+		final String lId = lClass.getId();
+		final int lIndex = lId.indexOf('$');
+		return pTypes.contains(lIndex < 0 ? lId : lId.substring(0, lIndex));
+	}
+
+	/**
+	 * Adds the OVERRIDES relations of pMethod, along with the methods it
+	 * overrides that are not in the analyzed packages. Does nothing if
+	 * pMethod is not a method or is abstract.
+	 * 
+	 * @param pMethod
+	 *            The method to analyze. Cannot be null.
+	 */
+	private void addOverridenMethods(final IElement pMethod) {
+		if (pMethod.getCategory() == Category.METHOD)
+			if (!this.isAbstractMethod(pMethod)) {
+				final Set<IElement> lOverrides = this
+						.getOverridenMethods(pMethod);
+				for (final IElement lMethod : lOverrides) {
+					if (!this.isProjectElement(lMethod)) {
+						int lModifiers = 0;
+						try {
+							final IJavaElement lElement = this
+									.convertToJavaElement(lMethod);
+							if (lElement instanceof IMember) {
+								lModifiers = ((IMember) lElement)
+										.getFlags();
+								if (Modifier.isAbstract(lModifiers))
+									lModifiers += 16384;
+							}
+						}
+						catch (final ConversionException lException) {
+							// Ignore, the modifiers used is 0
+						}
+						catch (final JavaModelException lException) {
+							// Ignore, the modifierds used is 0
+						}
+						this.aDB.addElement(lMethod, lModifiers);
+					}
+					this.aDB.addRelationAndTranspose(pMethod,
+							Relation.OVERRIDES, lMethod);
+				}
+			}
+	}
+
 	/**
 	 * Returns whether pElement is an non-implemented method, either in an
 	 * interface or as an abstract method in an abstract class. Description of
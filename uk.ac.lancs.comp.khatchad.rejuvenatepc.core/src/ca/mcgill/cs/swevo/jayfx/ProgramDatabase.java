@@ -54,6 +54,10 @@ public class ProgramDatabase {
 	// to bundles containing modifiers and relations
 	private final Map<IElement, Bundle> aElements;
 
+	// The elements added or related since recording started, null if not
+	// recording.
+	private Set<IElement> aModified;
+
 	/**
 	 * Creates an empty program database.
 	 */
@@ -72,6 +76,8 @@ public class ProgramDatabase {
 	 */
 	public void addElement(final IElement pElement, final int pModifier) {
 		//		assert (pElement != null);
+		if (this.aModified != null)
+			this.aModified.add(pElement);
 		if (!this.aElements.containsKey(pElement))
 			this.aElements.put(pElement, new Bundle(pModifier));
 	}
@@ -111,6 +117,8 @@ public class ProgramDatabase {
 			lRelations.put(pRelation, lElements);
 		}
 		lElements.add(pElement2);
+		if (this.aModified != null)
+			this.aModified.add(pElement1);
 	}
 
 	/**
@@ -140,7 +148,17 @@ public class ProgramDatabase {
 			throw new ElementNotFoundException(pElement2.getId());
 
 		this.addRelation(pElement1, pRelation, pElement2);
-		this.addRelation(pElement2, pRelation.getInverseRelation(), pElement1);
+		// Some relations, e.g., advises, have no transpose.
+		if (pRelation.getInverseRelation() != null)
+			this.addRelation(pElement2, pRelation.getInverseRelation(),
+					pElement1);
+	}
+
+	/**
+	 * Removes all the elements and relations from the database.
+	 */
+	public void clear() {
+		this.aElements.clear();
 	}
 
 	/**
@@ -262,6 +280,24 @@ public class ProgramDatabase {
 		return lReturn;
 	}
 
+	/**
+	 * Returns the relations for which pElement has a non-empty range.
+	 * 
+	 * @param pElement
+	 *            The domain element. Cannot be null.
+	 * @return A Set of Relation objects. Never null.
+	 */
+	public Set<Relation> getRelations(final IElement pElement) {
+		final Set<Relation> lReturn = new HashSet<Relation>();
+		if (!this.contains(pElement))
+			return lReturn;
+		for (final Map.Entry<Relation, Set<IElement>> lEntry : this.aElements
+				.get(pElement).getRelationMap().entrySet())
+			if (!lEntry.getValue().isEmpty())
+				lReturn.add(lEntry.getKey());
+		return lReturn;
+	}
+
 	/**
 	 * Returns whether pElements has any associated relations.
 	 * 
@@ -302,16 +338,68 @@ public class ProgramDatabase {
 		final Map lRelations = this.aElements.get(pElement).getRelationMap();
 		for (final Iterator i = lRelations.keySet().iterator(); i.hasNext();) {
 			final Relation lNext = (Relation) i.next();
+			if (lNext == null || lNext.getInverseRelation() == null)
+				continue;
 			final Set lElements = (Set) lRelations.get(lNext);
-			for (final Iterator j = lElements.iterator(); j.hasNext();)
-				this.removeRelation((IElement) j.next(), lNext
-						.getInverseRelation(), pElement);
+			for (final Iterator j = lElements.iterator(); j.hasNext();) {
+				final IElement lElement = (IElement) j.next();
+				this.removeRelation(lElement, lNext.getInverseRelation(),
+						pElement);
+				// The transpose may be shared, e.g., accesses is also the
+				// transpose of gets and sets.
+				for (final Relation lRelation : this.getRelations(lElement))
+					if (lRelation.getInverseRelation() == lNext)
+						this.removeRelation(lElement, lRelation, pElement);
+			}
 		}
 
 		// Remove the element
 		this.aElements.remove(pElement);
 	}
 
+	/**
+	 * Convenience method to remove a relation and its transpose at the same
+	 * time.
+	 * 
+	 * @param pElement1
+	 *            The domain of the relation. Should not be null.
+	 * @param pRelation
+	 *            The Relation relating the domain to the range. Should not be
+	 *            null.
+	 * @param pElement2
+	 *            The range of the relation. Should not be null.
+	 * @throws ElementNotFoundException
+	 *             if either of pElement1 or pElement2 are not indexed in the
+	 *             database.
+	 */
+	public void removeRelationAndTranspose(final IElement pElement1,
+			final Relation pRelation, final IElement pElement2)
+			throws ElementNotFoundException {
+		this.removeRelation(pElement1, pRelation, pElement2);
+		final Relation lInverse = pRelation.getInverseRelation();
+		if (lInverse == null)
+			return;
+		// The transpose may be shared, e.g., gets and sets are also accesses.
+		for (final Relation lRelation : this.getRelations(pElement1))
+			if (lRelation.getInverseRelation() == lInverse
+					&& this.getRange(pElement1, lRelation).contains(pElement2))
+				return;
+		this.removeRelation(pElement2, lInverse, pElement1);
+	}
+
+	/**
+	 * Starts recording every element that is added to the database or that
+	 * becomes the domain of a relation, e.g., to find the elements touched
+	 * while analyzing a compilation unit.
+	 * 
+	 * @param pElements
+	 *            The Set to which the elements are added, or null to stop
+	 *            recording.
+	 */
+	public void recordModifiedElements(final Set<IElement> pElements) {
+		this.aModified = pElements;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -46,7 +46,7 @@ public class FlyweightElementFactory {
 	 * @exception InternalProblemException
 	 *                if an invalid category is passed as parameter.
 	 */
-	public static IElement getElement(final Category pCategory,
+	public static synchronized IElement getElement(final Category pCategory,
 			final String pId) {
 		IElement lReturn = FlyweightElementFactory.aElements.get(pCategory
 				+ FlyweightElementFactory.KEY_SEPARATOR + pId);
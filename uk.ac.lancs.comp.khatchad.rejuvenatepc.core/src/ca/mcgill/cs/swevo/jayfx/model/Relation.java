@@ -311,10 +311,17 @@ public enum Relation {
 	/**
 	 * @return If this is a direct relation, returns the corresponding
 	 *         transpose. If this is a transpose relation, returns the
-	 *         corresponding direct relation.
+	 *         corresponding direct relation. The declarations, gets and
+	 *         sets, having no transpose of their own, are inverted as
+	 *         declarations and accesses.
 	 */
 	public Relation getInverseRelation() {
-		if (this.isDirect())
+		if (this == DECLARES_METHOD || this == DECLARES_FIELD
+				|| this == DECLARES_TYPE)
+			return T_DECLARES;
+		else if (this == GETS || this == SETS)
+			return T_ACCESSES;
+		else if (this.isDirect())
 			return Relation.tRelationMap.get(this.aId);
 		else
 			return this.getDirectRelation();
@@ -20,6 +20,7 @@ public class JayFXTestSuite extends TestSuite {
 	public static Test suite() {
 		final TestSuite lSuite = new TestSuite(
 				"AnalyzePointcutPlugin suite for JayFX");
+		lSuite.addTestSuite(TestDatabaseSnapshot.class);
 		lSuite.addTestSuite(TestProgramDatabase.class);
 		lSuite.addTestSuite(TestRelation.class);
 		return lSuite;
@@ -0,0 +1,137 @@
+/* JayFX - A Fact Extractor Plug-in for Eclipse
+ * Copyright (C) 2006  McGill University (http://www.cs.mcgill.ca/~swevo/jayfx)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.mcgill.cs.swevo.jayfx.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+
+import ca.mcgill.cs.swevo.jayfx.DatabaseSnapshot;
+import ca.mcgill.cs.swevo.jayfx.ProgramDatabase;
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+public class TestDatabaseSnapshot extends TestCase {
+	private IElement aClass1;
+	private IElement aField1;
+	private IElement aField2;
+	private IElement aMethod1;
+	private IElement aMethod2;
+	private ProgramDatabase aDB;
+	private File aFile;
+
+	public void testReadOtherSetting() throws IOException {
+		DatabaseSnapshot.write(this.aFile, true, this.aDB, Collections
+				.<String> emptySet(), new HashMap<ICompilationUnit, Long>(),
+				new HashMap<ICompilationUnit, Set<String>>(),
+				new HashMap<ICompilationUnit, Set<IElement>>());
+		final ProgramDatabase lDB = new ProgramDatabase();
+		Assert.assertFalse(DatabaseSnapshot.read(this.aFile, false, lDB,
+				new HashSet<String>(), new HashMap<ICompilationUnit, Long>(),
+				new HashMap<ICompilationUnit, Set<String>>(),
+				new HashMap<ICompilationUnit, Set<IElement>>()));
+		Assert.assertTrue(lDB.getAllElements().isEmpty());
+	}
+
+	/**
+	 * Writes and reads back a database whose methods get and set fields,
+	 * which have no transpose of their own.
+	 */
+	public void testReadWrite() throws IOException {
+		final Set<String> lPackages = Collections.singleton("a.b.c");
+		DatabaseSnapshot.write(this.aFile, true, this.aDB, lPackages,
+				new HashMap<ICompilationUnit, Long>(),
+				new HashMap<ICompilationUnit, Set<String>>(),
+				new HashMap<ICompilationUnit, Set<IElement>>());
+
+		final ProgramDatabase lDB = new ProgramDatabase();
+		final Set<String> lReadPackages = new HashSet<String>();
+		Assert.assertTrue(DatabaseSnapshot.read(this.aFile, true, lDB,
+				lReadPackages, new HashMap<ICompilationUnit, Long>(),
+				new HashMap<ICompilationUnit, Set<String>>(),
+				new HashMap<ICompilationUnit, Set<IElement>>()));
+
+		Assert.assertEquals(lPackages, lReadPackages);
+		Assert.assertEquals(this.aDB.getAllElements(), lDB.getAllElements());
+		for (final IElement lElement : this.aDB.getAllElements()) {
+			Assert.assertEquals(this.aDB.getModifiers(lElement), lDB
+					.getModifiers(lElement));
+			Assert.assertEquals(this.aDB.getRelations(lElement), lDB
+					.getRelations(lElement));
+			for (final Relation lRelation : this.aDB.getRelations(lElement))
+				Assert.assertEquals(this.aDB.getRange(lElement, lRelation), lDB
+						.getRange(lElement, lRelation));
+		}
+		Assert.assertEquals(2, lDB.getRange(this.aField1, Relation.T_ACCESSES)
+				.size());
+		Assert.assertTrue(lDB.getRange(this.aMethod2, Relation.SETS).contains(
+				this.aField2));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.aClass1 = FlyweightElementFactory.getElement(Category.CLASS,
+				"a.b.c.Class1");
+		this.aField1 = FlyweightElementFactory.getElement(Category.FIELD,
+				"a.b.c.Class1.aField1");
+		this.aField2 = FlyweightElementFactory.getElement(Category.FIELD,
+				"a.b.c.Class1.aField2");
+		this.aMethod1 = FlyweightElementFactory.getElement(Category.METHOD,
+				"a.b.c.Class1.method1()");
+		this.aMethod2 = FlyweightElementFactory.getElement(Category.METHOD,
+				"a.b.c.Class1.method2()");
+
+		this.aDB = new ProgramDatabase();
+		this.aDB.addElement(this.aClass1, 1);
+		this.aDB.addElement(this.aField1, 2);
+		this.aDB.addElement(this.aField2, 0);
+		this.aDB.addElement(this.aMethod1, 1);
+		this.aDB.addElement(this.aMethod2, 9);
+		this.aDB.addRelation(this.aClass1, Relation.DECLARES_FIELD,
+				this.aField1);
+		this.aDB.addRelation(this.aClass1, Relation.DECLARES_FIELD,
+				this.aField2);
+		this.aDB.addRelation(this.aClass1, Relation.DECLARES_METHOD,
+				this.aMethod1);
+		this.aDB.addRelation(this.aClass1, Relation.DECLARES_METHOD,
+				this.aMethod2);
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.ACCESSES,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.GETS,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aMethod2, Relation.ACCESSES,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aMethod2, Relation.GETS,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aMethod2, Relation.ACCESSES,
+				this.aField2);
+		this.aDB.addRelationAndTranspose(this.aMethod2, Relation.SETS,
+				this.aField2);
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.CALLS,
+				this.aMethod2);
+
+		this.aFile = File.createTempFile("jayfx", ".snapshot");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.aFile.delete();
+	}
+}
@@ -10,16 +10,20 @@
 
 package ca.mcgill.cs.swevo.jayfx.test;
 
+import java.util.Collections;
 import java.util.Set;
 
 import junit.framework.Assert;
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IType;
 
 import ca.mcgill.cs.swevo.jayfx.ConversionException;
 import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.JayFXException;
 import ca.mcgill.cs.swevo.jayfx.RelationNotSupportedException;
 import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
 import ca.mcgill.cs.swevo.jayfx.model.Category;
@@ -1632,6 +1636,39 @@ public class TestJayFX extends TestCase {
 		Assert.assertTrue(lRange.contains(this.getElement("a.b.K", true)));
 	}
 
+	/**
+	 * Updates a unit whose methods get and set fields, which have no
+	 * transpose of their own.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testUpdate() throws ConversionException, JayFXException {
+		final IElement lMethod = this.getElement("a.b.A.<init>()", false);
+		final IElement lField = this.getElement("a.b.A.aTest1", false);
+		final ICompilationUnit lUnit = ((IType) this.aDB
+				.convertToJavaElement(this.getElement("a.b.A", true)))
+				.getCompilationUnit();
+
+		final Set lAffected = this.aDB.update(Collections.singleton(lUnit),
+				null);
+		Assert.assertTrue(lAffected.contains(lField));
+
+		Set lRange = this.aDB.getRange(lMethod, Relation.ACCESSES);
+		Assert.assertEquals(2, lRange.size());
+		Assert.assertTrue(lRange.contains(lField));
+		Assert.assertTrue(lRange.contains(this.getElement(
+				"java.lang.System.out", false)));
+
+		lRange = this.aDB.getRange(lField, Relation.T_ACCESSES);
+		Assert.assertEquals(3, lRange.size());
+		Assert.assertTrue(lRange.contains(lMethod));
+
+		// Updating again finds the same relations.
+		this.aDB.update(Collections.singleton(lUnit), null);
+		lRange = this.aDB.getRange(lField, Relation.T_ACCESSES);
+		Assert.assertEquals(3, lRange.size());
+		Assert.assertTrue(lRange.contains(lMethod));
+	}
+
 	private IElement getElement(final String pId, final boolean pIsClass) {
 		if (pIsClass)
 			return FlyweightElementFactory.getElement(Category.CLASS, pId
@@ -267,6 +267,43 @@ public class TestProgramDatabase extends TestCase {
 		Assert.assertTrue(lSet.contains(this.aMethod1));
 	}
 
+	@SuppressWarnings("unchecked")
+	public void testRemoveRelationAndTranspose() {
+		this.aDB.addElement(this.aMethod1, 0);
+		this.aDB.addElement(this.aField1, 0);
+		this.aDB.addElement(this.aClass1, 0);
+		// Gets and sets share the transpose of accesses.
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.ACCESSES,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.GETS,
+				this.aField1);
+		this.aDB.addRelationAndTranspose(this.aClass1, Relation.ADVISES,
+				this.aMethod1);
+		Assert.assertFalse(this.aDB.getRelations(this.aField1).contains(null));
+		Assert.assertFalse(this.aDB.getRelations(this.aMethod1).contains(null));
+		Set lSet = this.aDB.getRange(this.aField1, Relation.T_ACCESSES);
+		Assert.assertTrue(lSet.size() == 1);
+		Assert.assertTrue(lSet.contains(this.aMethod1));
+		this.aDB.removeRelationAndTranspose(this.aMethod1, Relation.GETS,
+				this.aField1);
+		lSet = this.aDB.getRange(this.aMethod1, Relation.GETS);
+		Assert.assertTrue(lSet.size() == 0);
+		lSet = this.aDB.getRange(this.aField1, Relation.T_ACCESSES);
+		Assert.assertTrue(lSet.size() == 1);
+		this.aDB.removeRelationAndTranspose(this.aMethod1, Relation.ACCESSES,
+				this.aField1);
+		lSet = this.aDB.getRange(this.aField1, Relation.T_ACCESSES);
+		Assert.assertTrue(lSet.size() == 0);
+		// Removing the elements leaves no back-edges.
+		this.aDB.addRelationAndTranspose(this.aMethod1, Relation.SETS,
+				this.aField1);
+		this.aDB.removeElement(this.aClass1);
+		this.aDB.removeElement(this.aMethod1);
+		Assert.assertFalse(this.aDB.contains(this.aMethod1));
+		lSet = this.aDB.getRange(this.aField1, Relation.T_ACCESSES);
+		Assert.assertTrue(lSet.size() == 0);
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		this.aClass1 = FlyweightElementFactory.getElement(Category.CLASS,
@@ -14,6 +14,7 @@ public class Constants {
 
 	public static final String DB_URL = "jdbc:postgresql:rejuv-pc";
 	public static final String INIT_STRING = ".<init>";
+	public static final String PLUGIN_ID = "uk.ac.lancs.comp.khatchad.rejuvenatepc.core";
 	/**
 	 * 
 	 */
@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
+
+import java.util.EnumSet;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Which graph elements are inserted as facts into the working memory. Paths
+ * are only built through the arcs admitted.
+ *
+ * @author raffi
+ *
+ */
+public interface FactAdmissionPolicy {
+
+	/**
+	 * Admits every element.
+	 */
+	FactAdmissionPolicy ALL = new FactAdmissionPolicy() {
+		public boolean admits(final IntentionElement<IElement> element) {
+			return true;
+		}
+
+		public boolean admits(final IElement from, final Relation relation,
+				final IElement to) {
+			return true;
+		}
+	};
+
+	/**
+	 * Admits the methods and fields, and the arcs in between them that
+	 * pointcuts can select or that relate the methods to each other. The
+	 * declaration, containment, type hierarchy and annotation structure is
+	 * left out.
+	 */
+	FactAdmissionPolicy JOIN_POINTS = new FactAdmissionPolicy() {
+
+		private final EnumSet<Category> categories = EnumSet.of(
+				Category.METHOD, Category.FIELD);
+
+		private final EnumSet<Relation> relations = EnumSet.of(
+				Relation.CALLS, Relation.GETS, Relation.SETS,
+				Relation.OVERRIDES, Relation.IMPLEMENTS_METHOD);
+
+		@SuppressWarnings("unchecked")
+		public boolean admits(final IntentionElement<IElement> element) {
+			if (element instanceof IntentionArc) {
+				final IntentionArc<IElement> arc = (IntentionArc<IElement>) element;
+				return this.admits(arc.getFromNode().getElem(), arc.getType(),
+						arc.getToNode().getElem());
+			}
+			return element instanceof IntentionNode
+					&& this.categories.contains(((IntentionNode<IElement>) element)
+							.getElem().getCategory());
+		}
+
+		public boolean admits(final IElement from, final Relation relation,
+				final IElement to) {
+			return this.relations.contains(relation)
+					&& this.categories.contains(from.getCategory())
+					&& this.categories.contains(to.getCategory());
+		}
+	};
+
+	/**
+	 * @param element
+	 * @return whether the given element is inserted into the working memory.
+	 */
+	boolean admits(IntentionElement<IElement> element);
+
+	/**
+	 * @param from
+	 * @param relation
+	 * @param to
+	 * @return whether the arc of the given relation between the given
+	 *         elements is inserted into the working memory, along with its
+	 *         nodes.
+	 */
+	boolean admits(IElement from, Relation relation, IElement to);
+}
@@ -0,0 +1,32 @@
+/**
+ * 
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
+
+/**
+ * How the suggestion queries are answered.
+ * 
+ * @author raffi
+ * 
+ */
+public enum PatternEngine {
+
+	/**
+	 * The node rules are fired in a Drools working memory holding the graph.
+	 */
+	DROOLS,
+
+	/**
+	 * The paths of the graph are indexed by a
+	 * {@link uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathIndex}
+	 * without a working memory.
+	 */
+	PATH_INDEX,
+
+	/**
+	 * The rules of <code>rules.pl</code> are evaluated bottom-up as Datalog
+	 * by a
+	 * {@link uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.SuggestionProgram}.
+	 */
+	DATALOG
+}
@@ -68,7 +68,13 @@ public class PointcutAnalyzer extends PointcutProcessor {
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
 
-			graph.enableElementsAccordingTo(advElem, monitor);
+			graph.beginEnablementBatch();
+			try {
+				graph.enableElementsAccordingTo(advElem, monitor);
+			}
+			finally {
+				updateFacts(workingMemory, graph.endEnablementBatch());
+			}
 
 //			GraphVizUtil.makeDotFile(graph, pointcutCount,
 //					FileUtil.WORKSPACE_LOC + advElem.getPath().toOSString()
@@ -77,11 +83,9 @@ public class PointcutAnalyzer extends PointcutProcessor {
 			executeQueries(monitor, workingMemory, patternToResultMap,
 					patternToEnabledElementMap);
 
-			double totalConfidence = 0;
-			for (final Pattern pattern : patternToResultMap.keySet())
-				totalConfidence += calculatePatternStatistics(pointcutCount,
-						advElem, adviceXMLElement, patternToResultMap,
-						patternToEnabledElementMap, pattern, graph);
+			double totalConfidence = calculatePatternStatistics(
+					pointcutCount, advElem, adviceXMLElement,
+					patternToResultMap, patternToEnabledElementMap, graph);
 
 			writeXMLFile(advElem, adviceXMLElement);
 			pointcutCount++;
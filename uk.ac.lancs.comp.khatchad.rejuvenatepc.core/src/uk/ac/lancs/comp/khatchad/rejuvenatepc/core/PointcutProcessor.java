@@ -2,39 +2,57 @@ package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.drools.FactHandle;
 import org.drools.QueryResult;
 import org.drools.QueryResults;
 import org.drools.RuleBase;
+import org.drools.StatefulSession;
 import org.drools.WorkingMemory;
 import org.eclipse.ajdt.core.javaelements.AdviceElement;
+import org.eclipse.ajdt.core.javaelements.IAJCodeElement;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.JavaModelException;
 import org.jdom.Element;
 import org.jdom.JDOMException;
+import org.osgi.framework.Bundle;
 
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.CompactIntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Neighbourhood;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Path;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathBudget;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathIndex;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternMatcher;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternStatistics;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternTable;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.SuggestionProgram;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.AJUtil;
-import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.FileUtil;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.RuleBaseCache;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.XMLUtil;
 import ca.mcgill.cs.swevo.jayfx.ConversionException;
 import ca.mcgill.cs.swevo.jayfx.JayFX;
@@ -64,13 +82,102 @@ public abstract class PointcutProcessor {
 	 * 
 	 */
 	private static final String CONFIDENCE = "confidence";
+
+	/**
+	 * Whether the intention graph arcs are built on multiple threads.
+	 */
+	private boolean concurrentGraphConstruction;
+
+	/**
+	 * Whether the intention graph is held in compressed sparse row form.
+	 */
+	private boolean compactGraph;
+
+	/**
+	 * The relations from which the intention graph arcs are built.
+	 */
+	private EnumSet<Relation> graphRelations = IntentionGraph
+			.getDefaultRelations();
+
+	/**
+	 * The number of hops around the advised elements for which the intention
+	 * graph is built, or a negative number for the whole program.
+	 */
+	private int neighbourhoodRadius = -1;
+
+	/**
+	 * How the suggestion queries are answered.
+	 */
+	private PatternEngine patternEngine = PatternEngine.DROOLS;
+
+	/**
+	 * Bounds the paths built for each run.
+	 */
+	private PathBudget pathBudget = new PathBudget();
+
+	/**
+	 * The budget the paths of the current, or last, run were built within.
+	 */
+	private PathBudget lastPathBudget;
+
+	/**
+	 * Which graph elements are inserted into the working memory, and which
+	 * arcs the paths of the other engines go through.
+	 */
+	private FactAdmissionPolicy factAdmissionPolicy = FactAdmissionPolicy.ALL;
+
+	/**
+	 * The paths of the graph being analyzed when they are indexed rather than
+	 * built in a working memory.
+	 */
+	private PathIndex pathIndex;
+
+	/**
+	 * The rules evaluated as Datalog for the graph being analyzed when they
+	 * are used rather than a working memory.
+	 */
+	private SuggestionProgram suggestionProgram;
+
+	/**
+	 * Whether the suggestion queries are all answered in a single walk of the
+	 * enabled elements rather than one query at a time.
+	 */
+	private boolean combinedQueries;
+
+	/**
+	 * Whether the rows of the suggestion queries are reused across the advice
+	 * of a run that enable the same elements.
+	 */
+	private boolean queryResultCaching;
+
+	/**
+	 * The rows of the suggestion queries of the current, or last, run when
+	 * they are reused.
+	 */
+	private QueryResultCache queryResultCache;
+
+	/**
+	 * Whether the program database and whole-program intention graph are kept
+	 * between runs and updated from the changed compilation units.
+	 */
+	private boolean incrementalGraph;
+
+	/**
+	 * The graphs kept between runs, by the projects they were built for.
+	 */
+	private final Map<Set<IProject>, WarmIntentionGraph> warmGraphs = new HashMap<Set<IProject>, WarmIntentionGraph>();
+
+	/**
+	 * Where program database snapshots are kept between sessions, or
+	 * <code>null</code> if they are not.
+	 */
+	private File snapshotDirectory;
 	
 	/**
 	 * @param relation
 	 * @param string
 	 * @param workingMemory
-	 * @param patternToResultMap
-	 * @param patternToEnabledElementMap
+	 * @param patternTable
 	 * @param lMonitor
 	 */
 	@SuppressWarnings("unchecked")
@@ -78,9 +185,7 @@ public abstract class PointcutProcessor {
 			final String queryString,
 			final Relation relation,
 			final WorkingMemory workingMemory,
-			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
-			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap,
-			final IProgressMonitor lMonitor) {
+			final PatternTable patternTable, final IProgressMonitor lMonitor) {
 
 		final QueryResults suggestedArcs = workingMemory.getQueryResults(
 				queryString, new Object[] { relation });
@@ -100,18 +205,10 @@ public abstract class PointcutProcessor {
 
 			final IntentionNode commonNode = (IntentionNode) result
 					.get("$commonNode");
-			final Pattern pattern = enabledPath.extractPattern(commonNode,
-					enabledArc);
+			final int patternId = patternTable.intern(enabledPath,
+					commonNode, enabledArc);
 
-			if (!patternToResultMap.containsKey(pattern))
-				patternToResultMap.put(pattern,
-						new LinkedHashSet<IntentionElement<IElement>>());
-			patternToResultMap.get(pattern).add(suggestedArc);
-
-			if (!patternToEnabledElementMap.containsKey(pattern))
-				patternToEnabledElementMap.put(pattern,
-						new LinkedHashSet<IntentionElement<IElement>>());
-			patternToEnabledElementMap.get(pattern).add(enabledArc);
+			patternTable.record(patternId, suggestedArc, enabledArc);
 
 			lMonitor.worked(1);
 		}
@@ -121,16 +218,13 @@ public abstract class PointcutProcessor {
 	/**
 	 * @param lMonitor
 	 * @param workingMemory
-	 * @param patternToResultMap
-	 * @param patternToEnabledElementMap
+	 * @param patternTable
 	 */
 	@SuppressWarnings("unchecked")
 	private static void executeNodeQuery(
 			final IProgressMonitor lMonitor,
 			final WorkingMemory workingMemory,
-			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
-			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap,
-			final String queryString) {
+			final PatternTable patternTable, final String queryString) {
 
 		final QueryResults suggestedNodes = workingMemory
 				.getQueryResults(queryString);
@@ -148,18 +242,10 @@ public abstract class PointcutProcessor {
 
 			final IntentionNode commonNode = (IntentionNode) result
 					.get("$commonNode");
-			final Pattern pattern = enabledPath.extractPattern(commonNode,
-					enabledNode);
+			final int patternId = patternTable.intern(enabledPath,
+					commonNode, enabledNode);
 
-			if (!patternToResultMap.containsKey(pattern))
-				patternToResultMap.put(pattern,
-						new LinkedHashSet<IntentionElement<IElement>>());
-			patternToResultMap.get(pattern).add(suggestedNode);
-
-			if (!patternToEnabledElementMap.containsKey(pattern))
-				patternToEnabledElementMap.put(pattern,
-						new LinkedHashSet<IntentionElement<IElement>>());
-			patternToEnabledElementMap.get(pattern).add(enabledNode);
+			patternTable.record(patternId, suggestedNode, enabledNode);
 
 			lMonitor.worked(1);
 		}
@@ -182,16 +268,154 @@ public abstract class PointcutProcessor {
 		}
 	}
 	
-	@SuppressWarnings( { "unchecked", "restriction" })
 	public void analyze(final Collection<? extends AdviceElement> adviceCol,
 			final IProgressMonitor lMonitor) throws Exception {
 		final IntentionGraph graph = generateIntentionGraph(adviceCol, lMonitor);
+		this.queryResultCache = this.queryResultCaching ? new QueryResultCache(
+				graph) : null;
+		try {
+			this.analyze(adviceCol, lMonitor, graph);
+		}
+		finally {
+			// the statistics are kept until the next run.
+			if (this.queryResultCache != null)
+				this.queryResultCache.clear();
+		}
+	}
+
+	/**
+	 * Analyzes the given advice over the given intention graph with the
+	 * selected pattern engine.
+	 * 
+	 * @param adviceCol
+	 * @param lMonitor
+	 * @param graph
+	 * @throws Exception
+	 */
+	@SuppressWarnings( { "unchecked", "restriction" })
+	private void analyze(
+			final Collection<? extends AdviceElement> adviceCol,
+			final IProgressMonitor lMonitor, final IntentionGraph graph)
+			throws Exception {
+		this.lastPathBudget = null;
+		if (this.isDirected()) {
+			// the paths are walked for the patterns of each advice instead.
+			analyzeAdviceCollection(adviceCol, lMonitor, graph, null);
+			return;
+		}
+
+		if (this.patternEngine == PatternEngine.PATH_INDEX) {
+			final PathBudget budget = this.copyPathBudget();
+			this.pathIndex = new PathIndex(graph, budget,
+					new SubProgressMonitor(lMonitor, -1));
+			this.reportPathBudget(budget);
+			try {
+				analyzeAdviceCollection(adviceCol, lMonitor, graph, null);
+			}
+			finally {
+				this.pathIndex = null;
+			}
+			return;
+		}
+
+		if (this.patternEngine == PatternEngine.DATALOG) {
+			final PathBudget budget = this.copyPathBudget();
+			this.suggestionProgram = new SuggestionProgram(graph, budget,
+					new SubProgressMonitor(lMonitor, -1));
+			this.reportPathBudget(budget);
+			try {
+				analyzeAdviceCollection(adviceCol, lMonitor, graph, null);
+			}
+			finally {
+				this.suggestionProgram = null;
+			}
+			return;
+		}
+
+		final StatefulSession workingMemory = generateRulesBase(lMonitor,
+				graph);
 
-		final WorkingMemory workingMemory = generateRulesBase(lMonitor, graph);
+		if (this.combinedQueries)
+			// the paths are built once; only the enabled elements change.
+			this.pathIndex = new PathIndex(graph, getPaths(workingMemory));
 
-		analyzeAdviceCollection(adviceCol, lMonitor, graph, workingMemory);
+		try {
+			analyzeAdviceCollection(adviceCol, lMonitor, graph, workingMemory);
+		}
+		finally {
+			this.pathIndex = null;
+			if (this.incrementalGraph)
+				retractFacts(workingMemory, graph);
+			// the rule base is shared and keeps its sessions until disposed.
+			workingMemory.dispose();
+		}
 	}
 
+	/**
+	 * @param workingMemory
+	 * @return the paths built by the node rules.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Path<IntentionArc<IElement>>> getPaths(
+			final WorkingMemory workingMemory) {
+		final QueryResults results = workingMemory
+				.getQueryResults("all paths");
+		final List<Path<IntentionArc<IElement>>> ret = new ArrayList<Path<IntentionArc<IElement>>>(
+				results.size());
+		for (final Iterator it = results.iterator(); it.hasNext();)
+			ret.add((Path<IntentionArc<IElement>>) ((QueryResult) it.next())
+					.get("$path"));
+		return ret;
+	}
+
+	/**
+	 * Retracts the graph elements from the working memory so that it stops
+	 * listening to their changes and the graph can be used again.
+	 * 
+	 * @param workingMemory
+	 * @param graph
+	 */
+	private static void retractFacts(final WorkingMemory workingMemory,
+			final IntentionGraph graph) {
+		for (final IntentionElement<IElement> elem : graph.flatten()) {
+			final FactHandle handle = workingMemory.getFactHandle(elem);
+			if (handle != null)
+				workingMemory.retract(handle);
+		}
+	}
+
+	/**
+	 * Tells the working memory about the elements whose enabled flag changed
+	 * during an enablement batch of the graph, once each.
+	 * 
+	 * @param workingMemory
+	 *            the working memory, or <code>null</code> if there is none.
+	 * @param changed
+	 * @see IntentionGraph#endEnablementBatch()
+	 */
+	protected static void updateFacts(final WorkingMemory workingMemory,
+			final Collection<IntentionElement<IElement>> changed) {
+		if (workingMemory == null)
+			return;
+		for (final IntentionElement<IElement> elem : changed) {
+			final FactHandle handle = workingMemory.getFactHandle(elem);
+			if (handle != null)
+				workingMemory.update(handle, elem);
+		}
+	}
+
+	/**
+	 * @param adviceCol
+	 * @param lMonitor
+	 * @param graph
+	 * @param workingMemory
+	 *            the working memory holding the graph, or <code>null</code>
+	 *            if the queries are answered by a {@link PathIndex}.
+	 * @throws ConversionException
+	 * @throws CoreException
+	 * @throws IOException
+	 * @throws JDOMException
+	 */
 	protected abstract void analyzeAdviceCollection(
 			final Collection<? extends AdviceElement> adviceCol,
 			final IProgressMonitor lMonitor, final IntentionGraph graph,
@@ -205,21 +429,71 @@ public abstract class PointcutProcessor {
 	 * @throws Exception 
 	 * @throws Exception
 	 */
-	private WorkingMemory generateRulesBase(final IProgressMonitor lMonitor,
-			final IntentionGraph graph) throws Exception {
-		final WorkingMemory workingMemory = loadRulesBase(lMonitor, graph);
+	private StatefulSession generateRulesBase(
+			final IProgressMonitor lMonitor, final IntentionGraph graph)
+			throws Exception {
+		final PathBudget budget = this.copyPathBudget();
+		final StatefulSession workingMemory = loadRulesBase(lMonitor, graph,
+				budget);
 		fireRules(lMonitor, workingMemory);
+		this.reportPathBudget(budget);
 		return workingMemory;
 	}
+
+	/**
+	 * @return a budget for a run, with the bounds of the path budget. Paths
+	 *         only go through the arcs admitted by the fact admission policy,
+	 *         so that every engine sees the elements of the working memory.
+	 */
+	protected PathBudget copyPathBudget() {
+		final FactAdmissionPolicy policy = this.factAdmissionPolicy;
+		if (policy == FactAdmissionPolicy.ALL)
+			return this.pathBudget.copy();
+		return new PathBudget(this.pathBudget) {
+			@Override
+			public boolean admits(final IElement from, final Relation relation,
+					final IElement to) {
+				return super.admits(from, relation, to)
+						&& policy.admits(from, relation, to);
+			}
+		};
+	}
+
+	/**
+	 * Keeps the budget of a run for the caller and logs a warning if the
+	 * paths were cut short.
+	 * 
+	 * @param budget
+	 *            the budget of a run whose paths have been built.
+	 * @see #getLastPathBudget()
+	 */
+	private void reportPathBudget(final PathBudget budget) {
+		this.lastPathBudget = budget;
+		if (!budget.isExhausted())
+			return;
+		final String message = "Stopped building paths after "
+				+ budget.getPathCount()
+				+ " paths; suggestions are based on these paths only.";
+		final Bundle bundle = Platform.getBundle(Constants.PLUGIN_ID);
+		if (bundle == null)
+			System.err.println(message);
+		else
+			Platform.getLog(bundle).log(
+					new Status(IStatus.WARNING, Constants.PLUGIN_ID,
+							IStatus.OK, message, null));
+	}
 	
 	/**
+	 * Scores all the patterns found for an advice and adds them, with their
+	 * enabled and suggested elements, to the XML of the advice.
+	 * 
 	 * @param pointcutCount
 	 * @param advElem
 	 * @param adviceXMLElement
 	 * @param patternToResultMap
 	 * @param patternToEnabledElementMap
-	 * @param pattern
-	 * @return
+	 * @param graph
+	 * @return the sum of the confidences of the patterns.
 	 * @throws IOException
 	 * @throws JavaModelException 
 	 */
@@ -229,44 +503,45 @@ public abstract class PointcutProcessor {
 			Element adviceXMLElement,
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap,
-			final Pattern pattern, IntentionGraph graph) throws IOException, JavaModelException {
-
-		double precision = Pattern.calculatePrecision(
-				patternToEnabledElementMap.get(pattern), patternToResultMap
-						.get(pattern));
+			IntentionGraph graph) throws IOException, JavaModelException {
 
-		double coverage = patternToEnabledElementMap.get(pattern).size() / graph.getEnabledElements().size();
+		final PatternStatistics statistics = new PatternStatistics(
+				patternToResultMap, patternToEnabledElementMap, graph
+						.getEnabledElementCount());
 
-		double concreteness = Pattern.calculateConcreteness(pattern);
-		
-		double confidence = Pattern
-				.calculateConfidence(precision, coverage, concreteness);
+		for (int i = 0; i < statistics.size(); i++) {
+			final Pattern<IntentionArc<IElement>> pattern = statistics
+					.getPattern(i);
 
-		Element patternXMLElement = getPatternXMLElement(pattern, confidence);
+			Element patternXMLElement = getPatternXMLElement(pattern,
+					statistics.getConfidence(i));
 
-		//enabled elements.
-		Element enabledElementsXMLElement = getXML(patternToEnabledElementMap
-				.get(pattern), ENABLED_ELEMENTS);
-		patternXMLElement.addContent(enabledElementsXMLElement);
+			//enabled elements.
+			Element enabledElementsXMLElement = getXML(
+					patternToEnabledElementMap.get(pattern), ENABLED_ELEMENTS);
+			patternXMLElement.addContent(enabledElementsXMLElement);
 
-//		printEnabledElementResults(pattern, pointcutCount, advElem,
-//				patternToEnabledElementMap.get(pattern));
+//			printEnabledElementResults(pattern, pointcutCount, advElem,
+//					patternToEnabledElementMap.get(pattern));
 
-		//suggestions.
-		Element suggestedElementsXML = getXML(patternToResultMap.get(pattern),
-				SUGGESTEDLEMENTS);
-		patternXMLElement.addContent(suggestedElementsXML);
+			//suggestions.
+			Element suggestedElementsXML = getXML(patternToResultMap
+					.get(pattern), SUGGESTEDLEMENTS);
+			patternXMLElement.addContent(suggestedElementsXML);
 
-//		printSuggestedElementResults(pattern, pointcutCount, advElem,
-//				patternToResultMap.get(pattern));
+//			printSuggestedElementResults(pattern, pointcutCount, advElem,
+//					patternToResultMap.get(pattern));
 
-		adviceXMLElement.addContent(patternXMLElement);
+			adviceXMLElement.addContent(patternXMLElement);
 
-//		printPatternResults(pointcutCount, advElem, pattern, patternToResultMap
-//				.get(pattern).size(), patternToEnabledElementMap.get(pattern)
-//				.size(), precision, concreteness, confidence);
+//			printPatternResults(pointcutCount, advElem, pattern,
+//					patternToResultMap.get(pattern).size(),
+//					patternToEnabledElementMap.get(pattern).size(), statistics
+//							.getPrecision(i), statistics.getConcreteness(i),
+//					statistics.getConfidence(i));
+		}
 
-		return confidence;
+		return statistics.getTotalConfidence();
 	}
 	
 	/**
@@ -325,45 +600,110 @@ public abstract class PointcutProcessor {
 			final WorkingMemory workingMemory,
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap) {
-		executeNodeQuery(new SubProgressMonitor(lMonitor, 1,
-				SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK),
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				"forward suggested execution nodes");
+		final Set<SuggestionQuery> queries = this.suggestionProgram != null
+				|| this.pathIndex != null && this.combinedQueries ? EnumSet
+				.of(SuggestionQuery.ALL) : EnumSet.range(
+				SuggestionQuery.FORWARD_EXECUTION_NODES,
+				SuggestionQuery.BACKWARD_SETS_ARCS);
 
-		executeNodeQuery(new SubProgressMonitor(lMonitor, 1,
-				SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK),
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				"backward suggested execution nodes");
+		if (this.queryResultCache == null) {
+			final PatternTable patternTable = new PatternTable();
+			for (final SuggestionQuery query : queries)
+				this.executeQuery(query, lMonitor, workingMemory,
+						patternTable);
+			patternTable.addTo(patternToResultMap, patternToEnabledElementMap);
+			return;
+		}
 
-		executeArcQuery("forward suggested X arcs", Relation.CALLS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+		// the rows of each query are kept apart so that they can be reused.
+		for (final SuggestionQuery query : queries) {
+			PatternTable patternTable = this.queryResultCache.get(query);
+			if (patternTable == null) {
+				patternTable = new PatternTable();
+				this.executeQuery(query, lMonitor, workingMemory,
+						patternTable);
+				this.queryResultCache.put(query, patternTable);
+			}
+			else
+				lMonitor.worked(1);
+			patternTable.addTo(patternToResultMap, patternToEnabledElementMap);
+		}
+	}
 
-		executeArcQuery("backward suggested X arcs", Relation.CALLS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+	/**
+	 * Finds the given patterns only, by walking the paths of the graph
+	 * matching them, with the rows of the last run for the same patterns and
+	 * enabled elements reused if the query results are cached.
+	 * 
+	 * @param lMonitor
+	 * @param graph
+	 * @param patterns
+	 * @param patternToResultMap
+	 * @param patternToEnabledElementMap
+	 * @see #isDirected()
+	 */
+	protected void executeQueries(
+			final IProgressMonitor lMonitor,
+			final IntentionGraph graph,
+			final Set<Pattern<IntentionArc<IElement>>> patterns,
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap) {
+		PatternTable patternTable = this.queryResultCache == null ? null
+				: this.queryResultCache.get(SuggestionQuery.ALL, patterns);
+		if (patternTable == null) {
+			patternTable = new PatternTable();
+			final PathBudget budget = this.copyPathBudget();
+			new PatternMatcher(graph, budget).executeQueries(patterns, EnumSet
+					.of(Relation.CALLS, Relation.GETS, Relation.SETS),
+					patternTable, new SubProgressMonitor(lMonitor, -1));
+			this.reportPathBudget(budget);
+			if (this.queryResultCache != null)
+				this.queryResultCache.put(SuggestionQuery.ALL, patterns,
+						patternTable);
+		}
+		patternTable.addTo(patternToResultMap, patternToEnabledElementMap);
+	}
 
-		executeArcQuery("forward suggested X arcs", Relation.GETS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+	/**
+	 * @param query
+	 * @param lMonitor
+	 * @param workingMemory
+	 * @param patternTable
+	 *            where the rows of the query are aggregated.
+	 */
+	private void executeQuery(final SuggestionQuery query,
+			final IProgressMonitor lMonitor,
+			final WorkingMemory workingMemory, final PatternTable patternTable) {
+		final IProgressMonitor monitor = new SubProgressMonitor(lMonitor, 1,
+				SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK);
 
-		executeArcQuery("backward suggested X arcs", Relation.GETS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+		if (query == SuggestionQuery.ALL) {
+			final Set<Relation> relations = EnumSet.of(Relation.CALLS,
+					Relation.GETS, Relation.SETS);
+			if (this.suggestionProgram != null)
+				this.suggestionProgram.executeQueries(relations, patternTable,
+						monitor);
+			else
+				this.pathIndex.executeQueries(relations, patternTable, monitor);
+		}
 
-		executeArcQuery("forward suggested X arcs", Relation.SETS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+		else if (query.getRelation() == null) {
+			if (this.pathIndex != null)
+				this.pathIndex.executeNodeQuery(query.isForward(),
+						patternTable, monitor);
+			else
+				executeNodeQuery(monitor, workingMemory, patternTable, query
+						.isForward() ? "forward suggested execution nodes"
+						: "backward suggested execution nodes");
+		}
 
-		executeArcQuery("backward suggested X arcs", Relation.SETS,
-				workingMemory, patternToResultMap, patternToEnabledElementMap,
-				new SubProgressMonitor(lMonitor, 1,
-						SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
+		else if (this.pathIndex != null)
+			this.pathIndex.executeArcQuery(query.isForward(), query
+					.getRelation(), patternTable, monitor);
+		else
+			executeArcQuery(query.isForward() ? "forward suggested X arcs"
+					: "backward suggested X arcs", query.getRelation(),
+					workingMemory, patternTable, monitor);
 	}
 
 	/**
@@ -373,40 +713,32 @@ public abstract class PointcutProcessor {
 	private void fireRules(final IProgressMonitor lMonitor,
 			final WorkingMemory workingMemory) {
 		lMonitor.subTask("Firing rules.");
+		// paths are built in their final orientation.
 		workingMemory.fireAllRules();
-
-		final QueryResults pathsToReverse = workingMemory
-				.getQueryResults("all paths");
-		lMonitor.beginTask("Reversing all paths.", pathsToReverse.size());
-		for (final Iterator it = pathsToReverse.iterator(); it.hasNext();) {
-			final QueryResult result = (QueryResult) it.next();
-			final Path path = (Path) result.get("$path");
-			Collections.reverse(path);
-			final FactHandle handle = workingMemory.getFactHandle(path);
-			workingMemory.update(handle, path);
-			lMonitor.worked(1);
-		}
 	}
 
 	/**
 	 * @param lMonitor
 	 * @param graph
+	 * @param budget
 	 * @return
 	 * @throws Exception 
 	 * @throws Exception
 	 */
-	private WorkingMemory loadRulesBase(final IProgressMonitor lMonitor,
-			final IntentionGraph graph) throws Exception {
+	private StatefulSession loadRulesBase(final IProgressMonitor lMonitor,
+			final IntentionGraph graph, final PathBudget budget)
+			throws Exception {
 		lMonitor.subTask("Loading up the rulebase.");
-		final Reader source = new InputStreamReader(PointcutProcessor.class
-				.getResourceAsStream(RULES_FILE));
-		final RuleBase ruleBase = FileUtil.readRule(source);
-		final WorkingMemory workingMemory = ruleBase.newStatefulSession();
+		final RuleBase ruleBase = RuleBaseCache.getRuleBase(RULES_FILE);
+		final StatefulSession workingMemory = ruleBase.newStatefulSession();
+		// the rules consult the budget as the facts are inserted.
+		workingMemory.setGlobal("budget", budget);
 
 		final Set<IntentionElement<IElement>> elemCol = graph.flatten();
 		lMonitor.beginTask("Inserting facts.", elemCol.size());
-		for (final IntentionElement elem : elemCol) {
-			workingMemory.insert(elem, true);
+		for (final IntentionElement<IElement> elem : elemCol) {
+			if (this.factAdmissionPolicy.admits(elem))
+				workingMemory.insert(elem, true);
 			lMonitor.worked(1);
 		}
 		return workingMemory;
@@ -425,15 +757,426 @@ public abstract class PointcutProcessor {
 			final Collection<? extends AdviceElement> adviceCol,
 			final IProgressMonitor lMonitor) throws JayFXException,
 			ConversionException, JavaModelException {
-		final JayFX lDB = new JayFX();
-
 		final Collection<IProject> projectsToAnalyze = AJUtil
 				.getProjects(adviceCol);
 
-		lDB.initialize(projectsToAnalyze, lMonitor, true);
-		final IntentionGraph graph = new IntentionGraph(lDB, lMonitor);
+		if (this.incrementalGraph && this.neighbourhoodRadius < 0)
+			return this.getWarmIntentionGraph(projectsToAnalyze, lMonitor);
+
+		final JayFX lDB = new JayFX();
+		this.initializeDatabase(lDB, projectsToAnalyze, lMonitor);
+		final Collection<IElement> elements = this.getGraphElements(adviceCol,
+				lDB);
+		return this.buildIntentionGraph(lDB, elements, lMonitor);
+	}
+
+	/**
+	 * Initializes the given database from the snapshot of the projects, if
+	 * snapshots are kept, and saves the resulting snapshot for the next
+	 * session.
+	 * 
+	 * @param database
+	 * @param projectsToAnalyze
+	 * @param lMonitor
+	 * @throws JayFXException
+	 * @throws ConversionException
+	 * @throws JavaModelException
+	 */
+	private void initializeDatabase(final JayFX database,
+			final Collection<IProject> projectsToAnalyze,
+			final IProgressMonitor lMonitor) throws JayFXException,
+			ConversionException, JavaModelException {
+		if (this.snapshotDirectory == null) {
+			database.initialize(projectsToAnalyze, lMonitor, true);
+			return;
+		}
+
+		final File snapshot = this.getSnapshotFile(projectsToAnalyze);
+		database.initialize(projectsToAnalyze, lMonitor, true, snapshot);
+		try {
+			this.snapshotDirectory.mkdirs();
+			database.saveSnapshot(snapshot);
+		}
+		catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param projectsToAnalyze
+	 * @return the snapshot file of the given projects.
+	 */
+	private File getSnapshotFile(final Collection<IProject> projectsToAnalyze) {
+		final Set<String> names = new TreeSet<String>();
+		for (final IProject project : projectsToAnalyze)
+			names.add(project.getName());
+		final StringBuilder name = new StringBuilder();
+		for (final String projectName : names) {
+			if (name.length() > 0)
+				name.append('+');
+			name.append(projectName);
+		}
+		return new File(this.snapshotDirectory, name.append(".jfx").toString());
+	}
+
+	/**
+	 * @param database
+	 * @param elements
+	 *            the elements whose arcs are built.
+	 * @param lMonitor
+	 * @return a new graph built according to the current settings.
+	 */
+	private IntentionGraph buildIntentionGraph(final JayFX database,
+			final Collection<IElement> elements, final IProgressMonitor lMonitor) {
+		return this.compactGraph ? new CompactIntentionGraph(database,
+				this.graphRelations, elements, lMonitor) : new IntentionGraph(
+				database, this.graphRelations, elements, lMonitor,
+				this.concurrentGraphConstruction);
+	}
+
+	/**
+	 * @param projectsToAnalyze
+	 * @param lMonitor
+	 * @return the whole-program graph kept for the given projects, updated
+	 *         with the compilation units changed since the last run, or a new
+	 *         one if there is none or it is stale. Its elements are all
+	 *         disabled.
+	 * @throws JayFXException
+	 * @throws ConversionException
+	 * @throws JavaModelException
+	 */
+	private IntentionGraph getWarmIntentionGraph(
+			final Collection<IProject> projectsToAnalyze,
+			final IProgressMonitor lMonitor) throws JayFXException,
+			ConversionException, JavaModelException {
+		final Set<IProject> key = new HashSet<IProject>(projectsToAnalyze);
+		WarmIntentionGraph warmGraph = this.warmGraphs.get(key);
+		if (warmGraph != null && warmGraph.isStale()) {
+			warmGraph.dispose();
+			this.warmGraphs.remove(key);
+			warmGraph = null;
+		}
+
+		if (warmGraph == null) {
+			final JayFX lDB = new JayFX();
+			warmGraph = new WarmIntentionGraph(lDB);
+			try {
+				this.initializeDatabase(lDB, projectsToAnalyze, lMonitor);
+				warmGraph.setGraph(this.buildIntentionGraph(lDB, lDB
+						.getAllElements(), lMonitor));
+			}
+			catch (final JayFXException e) {
+				warmGraph.dispose();
+				throw e;
+			}
+			catch (final RuntimeException e) {
+				warmGraph.dispose();
+				throw e;
+			}
+			this.warmGraphs.put(key, warmGraph);
+		}
+
+		final IntentionGraph graph = warmGraph.update(lMonitor);
+		// clear the enablement left by the previous run.
+		graph.applyOverlay(new EnablementOverlay(), new SubProgressMonitor(
+				lMonitor, -1));
 		return graph;
 	}
+
+	/**
+	 * Stops keeping the intention graphs built so far between runs.
+	 */
+	public void disposeWarmIntentionGraphs() {
+		for (final WarmIntentionGraph warmGraph : this.warmGraphs.values())
+			warmGraph.dispose();
+		this.warmGraphs.clear();
+	}
+
+	/**
+	 * @param adviceCol
+	 * @param database
+	 * @return the elements for which the intention graph is built: the
+	 *         neighbourhood of the advised elements if a radius is set and
+	 *         there are seeds, the whole program otherwise.
+	 * @throws JavaModelException
+	 * @throws ConversionException
+	 */
+	private Collection<IElement> getGraphElements(
+			final Collection<? extends AdviceElement> adviceCol,
+			final JayFX database) throws JavaModelException,
+			ConversionException {
+		if (this.neighbourhoodRadius < 0)
+			return database.getAllElements();
+
+		final Set<IElement> seeds = this.getNeighbourhoodSeeds(adviceCol,
+				database);
+		if (seeds == null || seeds.isEmpty())
+			return database.getAllElements();
+
+		return Neighbourhood.expand(database, seeds, this.graphRelations,
+				this.neighbourhoodRadius);
+	}
+
+	/**
+	 * @param adviceCol
+	 * @param database
+	 * @return the elements around which the intention graph is built when a
+	 *         neighbourhood radius is set, i.e., the members containing the
+	 *         shadows of the given advice, or <code>null</code> to build the
+	 *         graph for the whole program.
+	 * @throws JavaModelException
+	 * @throws ConversionException
+	 */
+	protected Set<IElement> getNeighbourhoodSeeds(
+			final Collection<? extends AdviceElement> adviceCol,
+			final JayFX database) throws JavaModelException,
+			ConversionException {
+		final Set<IElement> ret = new LinkedHashSet<IElement>();
+		for (final AdviceElement advElem : adviceCol)
+			for (final IJavaElement advisedElement : AJUtil
+					.getAdvisedJavaElements(advElem)) {
+				// shadows inside a member are seeded by the member.
+				final IJavaElement member = advisedElement instanceof IAJCodeElement ? advisedElement
+						.getParent()
+						: advisedElement;
+				final IElement elem = database.convertToElement(member);
+				if (elem != null)
+					ret.add(elem);
+			}
+		return ret;
+	}
+
+	/**
+	 * @return whether the intention graph arcs are built on multiple threads.
+	 */
+	public boolean isConcurrentGraphConstruction() {
+		return this.concurrentGraphConstruction;
+	}
+
+	/**
+	 * @param concurrentGraphConstruction
+	 *            whether the intention graph arcs should be built on multiple
+	 *            threads.
+	 */
+	public void setConcurrentGraphConstruction(
+			final boolean concurrentGraphConstruction) {
+		this.concurrentGraphConstruction = concurrentGraphConstruction;
+		this.disposeWarmIntentionGraphs();
+	}
+
+	/**
+	 * @return whether the intention graph is held in compressed sparse row
+	 *         form.
+	 */
+	public boolean isCompactGraph() {
+		return this.compactGraph;
+	}
+
+	/**
+	 * @param compactGraph
+	 *            whether the intention graph should be held in compressed
+	 *            sparse row form. Compact graphs are always built on a single
+	 *            thread.
+	 */
+	public void setCompactGraph(final boolean compactGraph) {
+		this.compactGraph = compactGraph;
+		this.disposeWarmIntentionGraphs();
+	}
+
+	/**
+	 * @return the relations from which the intention graph arcs are built.
+	 */
+	public EnumSet<Relation> getGraphRelations() {
+		return EnumSet.copyOf(this.graphRelations);
+	}
+
+	/**
+	 * @param graphRelations
+	 *            the relations from which the intention graph arcs should be
+	 *            built, e.g., {@link IntentionGraph#getJoinPointRelations()}.
+	 *            Paths, and hence patterns, are only formed over these
+	 *            relations.
+	 */
+	public void setGraphRelations(final EnumSet<Relation> graphRelations) {
+		this.graphRelations = EnumSet.copyOf(graphRelations);
+		this.disposeWarmIntentionGraphs();
+	}
+
+	/**
+	 * @return the number of hops around the advised elements for which the
+	 *         intention graph is built, or a negative number for the whole
+	 *         program.
+	 */
+	public int getNeighbourhoodRadius() {
+		return this.neighbourhoodRadius;
+	}
+
+	/**
+	 * @param neighbourhoodRadius
+	 *            the number of hops around the advised elements for which the
+	 *            intention graph should be built, or a negative number for the
+	 *            whole program. A suggestion is reached from an enabled
+	 *            element through the common node of its pattern, i.e., by a
+	 *            path there and a path back, so the suggestions are those of
+	 *            the whole program when the radius is at least twice
+	 *            {@link PathBudget#getMaxLength()}.
+	 */
+	public void setNeighbourhoodRadius(final int neighbourhoodRadius) {
+		this.neighbourhoodRadius = neighbourhoodRadius;
+	}
+
+	/**
+	 * @return the bounds of the paths built for each run.
+	 */
+	public PathBudget getPathBudget() {
+		return this.pathBudget;
+	}
+
+	/**
+	 * @param pathBudget
+	 *            the bounds of the paths built for each run, e.g., longer
+	 *            paths for more suggestions at the cost of time and memory.
+	 *            Each run spends a fresh copy of it.
+	 */
+	public void setPathBudget(final PathBudget pathBudget) {
+		this.pathBudget = pathBudget;
+	}
+
+	/**
+	 * @return how the suggestion queries are answered.
+	 */
+	public PatternEngine getPatternEngine() {
+		return this.patternEngine;
+	}
+
+	/**
+	 * @param patternEngine
+	 *            how the suggestion queries should be answered.
+	 */
+	public void setPatternEngine(final PatternEngine patternEngine) {
+		this.patternEngine = patternEngine;
+	}
+
+	/**
+	 * @return which graph elements are inserted into the working memory, and
+	 *         which arcs the paths of the other engines go through.
+	 */
+	public FactAdmissionPolicy getFactAdmissionPolicy() {
+		return this.factAdmissionPolicy;
+	}
+
+	/**
+	 * @param factAdmissionPolicy
+	 *            which graph elements are inserted into the working memory,
+	 *            and which arcs the paths of the other engines go through.
+	 *            Admitting fewer elements than {@link FactAdmissionPolicy#ALL}
+	 *            changes the patterns found.
+	 */
+	public void setFactAdmissionPolicy(
+			final FactAdmissionPolicy factAdmissionPolicy) {
+		this.factAdmissionPolicy = factAdmissionPolicy;
+	}
+
+	/**
+	 * @return whether the suggestion queries are answered in a single walk of
+	 *         the enabled elements.
+	 */
+	public boolean isCombinedQueries() {
+		return this.combinedQueries;
+	}
+
+	/**
+	 * @param combinedQueries
+	 *            whether the suggestion queries are answered in a single walk
+	 *            of the enabled elements.
+	 */
+	public void setCombinedQueries(final boolean combinedQueries) {
+		this.combinedQueries = combinedQueries;
+	}
+
+	/**
+	 * @return whether the rows of the suggestion queries are reused across
+	 *         the advice of a run that enable the same elements.
+	 */
+	public boolean isQueryResultCaching() {
+		return this.queryResultCaching;
+	}
+
+	/**
+	 * @param queryResultCaching
+	 *            whether the rows of the suggestion queries are reused across
+	 *            the advice of a run that enable the same elements.
+	 */
+	public void setQueryResultCaching(final boolean queryResultCaching) {
+		this.queryResultCaching = queryResultCaching;
+	}
+
+	/**
+	 * @return the rows reused during the last run, whose hit and miss counts
+	 *         tell how many queries were saved, or <code>null</code> if they
+	 *         were not reused.
+	 */
+	public QueryResultCache getQueryResultCache() {
+		return this.queryResultCache;
+	}
+
+	/**
+	 * @return whether only the patterns given to
+	 *         {@link #executeQueries(IProgressMonitor, IntentionGraph, Set, Map, Map)}
+	 *         are looked for, so that no paths are built before the advice
+	 *         are analyzed, whatever the pattern engine.
+	 */
+	protected boolean isDirected() {
+		return false;
+	}
+
+	/**
+	 * @return the budget the paths of the last run were built within, whose
+	 *         path count and exhaustion tell whether the suggestions are based
+	 *         on all the paths, or <code>null</code> if no paths were built.
+	 */
+	public PathBudget getLastPathBudget() {
+		return this.lastPathBudget;
+	}
+
+	/**
+	 * @return whether the program database and whole-program intention graph
+	 *         are kept between runs.
+	 */
+	public boolean isIncrementalGraph() {
+		return this.incrementalGraph;
+	}
+
+	/**
+	 * @param incrementalGraph
+	 *            whether the program database and whole-program intention
+	 *            graph should be kept between runs and updated from the
+	 *            compilation units changed since, rather than built again.
+	 *            Has no effect on neighbourhood graphs.
+	 */
+	public void setIncrementalGraph(final boolean incrementalGraph) {
+		this.incrementalGraph = incrementalGraph;
+		if (!incrementalGraph)
+			this.disposeWarmIntentionGraphs();
+	}
+
+	/**
+	 * @return the directory where program database snapshots are kept between
+	 *         sessions, or <code>null</code> if they are not.
+	 */
+	public File getSnapshotDirectory() {
+		return this.snapshotDirectory;
+	}
+
+	/**
+	 * @param snapshotDirectory
+	 *            the directory where program database snapshots should be kept
+	 *            between sessions so that only the compilation units modified
+	 *            since are analyzed, or <code>null</code> if they should not.
+	 */
+	public void setSnapshotDirectory(final File snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
 	
 	/**
 	 * @param adviceXMLElement
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -36,6 +37,7 @@ import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.model.Suggestion;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.DatabaseUtil;
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.XMLUtil;
 import ca.mcgill.cs.swevo.jayfx.ConversionException;
+import ca.mcgill.cs.swevo.jayfx.JayFX;
 import ca.mcgill.cs.swevo.jayfx.model.IElement;
 
 public class PointcutRejuvenator extends PointcutProcessor {
@@ -46,6 +48,18 @@ public class PointcutRejuvenator extends PointcutProcessor {
 
 	private List<Suggestion<IJavaElement>> suggestionList = new ArrayList<Suggestion<IJavaElement>>();
 
+	/**
+	 * Whether only the saved patterns are looked for rather than every
+	 * pattern being derived and then intersected with them.
+	 */
+	private boolean directed;
+
+	/**
+	 * The number of suggestions made for each advice, or a negative number
+	 * for all of them.
+	 */
+	private int maxSuggestions = -1;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -79,12 +93,15 @@ public class PointcutRejuvenator extends PointcutProcessor {
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> derivedPatternToResultMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
 			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> derivedPatternToEnabledElementMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
 
-			graph
-					.enableAllAdvisableElements(new SubProgressMonitor(monitor,
-							-1));
-
-			executeQueries(monitor, workingMemory, derivedPatternToResultMap,
-					derivedPatternToEnabledElementMap);
+			graph.beginEnablementBatch();
+			try {
+				graph
+						.enableAllAdvisableElements(new SubProgressMonitor(monitor,
+								-1));
+			}
+			finally {
+				updateFacts(workingMemory, graph.endEnablementBatch());
+			}
 
 			// retrieve analysis information.
 			Document document = readXMLFile(advElem);
@@ -92,6 +109,17 @@ public class PointcutRejuvenator extends PointcutProcessor {
 			// Retrieve the saved patterns.
 			Map<Pattern<IntentionArc<IElement>>, Double> recoveredPatternToConfidenceMap = extractPatterns(document);
 
+			if (this.directed) {
+				// only the saved patterns are looked for.
+				executeQueries(monitor, graph, recoveredPatternToConfidenceMap
+						.keySet(), derivedPatternToResultMap,
+						derivedPatternToEnabledElementMap);
+			}
+			else
+				executeQueries(monitor, workingMemory,
+						derivedPatternToResultMap,
+						derivedPatternToEnabledElementMap);
+
 			// Intersect pattern sets.
 			Set<Pattern<IntentionArc<IElement>>> survingPatternSet = obtainSurvingPatterns(
 					derivedPatternToResultMap, recoveredPatternToConfidenceMap);
@@ -109,15 +137,27 @@ public class PointcutRejuvenator extends PointcutProcessor {
 					});
 
 			// For aesthetic purposes.
+			graph.beginEnablementBatch();
 			try {
 				Collection<IJavaElement> advisedElements = extractAdvisedElements(document);
 				graph.enableElementsAccordingTo(advisedElements,
 						new SubProgressMonitor(monitor, -1));
 			} catch (Exception e) {
 			}
+			updateFacts(workingMemory, graph.endEnablementBatch());
+
+			// only the most confident suggestions are converted when bounded.
+			Collection<Pattern<IntentionArc<IElement>>> suggestingPatterns = survingPatternSet;
+			if (this.maxSuggestions >= 0)
+				suggestingPatterns = sortByConfidence(survingPatternSet,
+						recoveredPatternToConfidenceMap);
+			int suggestionCount = 0;
 
 			// System.out.println("Suggestion\tPattern\tConfidence");
-			for (Pattern<IntentionArc<IElement>> pattern : survingPatternSet) {
+			patterns: for (Pattern<IntentionArc<IElement>> pattern : suggestingPatterns) {
+
+				if (suggestionCount == this.maxSuggestions)
+					break;
 
 				// Get the confidence.
 				double confidence = recoveredPatternToConfidenceMap
@@ -135,6 +175,9 @@ public class PointcutRejuvenator extends PointcutProcessor {
 				for (IntentionElement<IElement> intentionElement : derivedPatternToResultMap
 						.get(pattern)) {
 
+					if (suggestionCount == this.maxSuggestions)
+						break patterns;
+
 					IJavaElement suggestedJavaElement = intentionElement
 							.toJavaElement(graph.getDatabase());
 
@@ -189,6 +232,7 @@ public class PointcutRejuvenator extends PointcutProcessor {
 						Suggestion<IJavaElement> suggestion = new Suggestion<IJavaElement>(
 								suggestedJavaElement, pattern, confidence);
 						this.suggestionList.add(suggestion);
+						suggestionCount++;
 					}
 				}
 			}
@@ -197,6 +241,19 @@ public class PointcutRejuvenator extends PointcutProcessor {
 		}
 	}
 
+	/**
+	 * Rejuvenation looks for new join points anywhere in the program, so the
+	 * graph is always built for the whole program.
+	 * 
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PointcutProcessor#getNeighbourhoodSeeds(java.util.Collection,
+	 *      ca.mcgill.cs.swevo.jayfx.JayFX)
+	 */
+	@Override
+	protected Set<IElement> getNeighbourhoodSeeds(
+			Collection<? extends AdviceElement> adviceCol, JayFX database) {
+		return null;
+	}
+
 	/**
  * @param derivedPatternToResultMap
 	 * @param recoveredPatternToConfidenceMap
@@ -217,6 +274,27 @@ public class PointcutRejuvenator extends PointcutProcessor {
 		return survingPatternSet;
 	}
 
+	/**
+	 * @param patterns
+	 * @param patternToConfidenceMap
+	 * @return the given patterns, most confident first. Patterns as confident
+	 *         are left in their order.
+	 */
+	private static List<Pattern<IntentionArc<IElement>>> sortByConfidence(
+			final Collection<Pattern<IntentionArc<IElement>>> patterns,
+			final Map<Pattern<IntentionArc<IElement>>, Double> patternToConfidenceMap) {
+		final List<Pattern<IntentionArc<IElement>>> ret = new ArrayList<Pattern<IntentionArc<IElement>>>(
+				patterns);
+		Collections.sort(ret, new Comparator<Pattern<IntentionArc<IElement>>>() {
+			public int compare(final Pattern<IntentionArc<IElement>> o1,
+					final Pattern<IntentionArc<IElement>> o2) {
+				return patternToConfidenceMap.get(o2).compareTo(
+						patternToConfidenceMap.get(o1));
+			}
+		});
+		return ret;
+	}
+
 	/**
 	 * @param document
 	 * @return
@@ -277,4 +355,39 @@ public class PointcutRejuvenator extends PointcutProcessor {
 	public void clearSuggestionList() {
 		this.suggestionList.clear();
 	}
+
+	/**
+	 * @return whether only the saved patterns are looked for, so that neither
+	 *         the working memory nor the paths of the whole graph are built.
+	 */
+	@Override
+	public boolean isDirected() {
+		return this.directed;
+	}
+
+	/**
+	 * @param directed
+	 *            whether only the saved patterns are looked for rather than
+	 *            every pattern being derived and then intersected with them.
+	 */
+	public void setDirected(final boolean directed) {
+		this.directed = directed;
+	}
+
+	/**
+	 * @return the number of suggestions made for each advice, or a negative
+	 *         number for all of them.
+	 */
+	public int getMaxSuggestions() {
+		return this.maxSuggestions;
+	}
+
+	/**
+	 * @param maxSuggestions
+	 *            the number of suggestions made for each advice, the most
+	 *            confident first, or a negative number for all of them.
+	 */
+	public void setMaxSuggestions(final int maxSuggestions) {
+		this.maxSuggestions = maxSuggestions;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/**
+ * 
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternTable;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Keeps the rows of the suggestion queries run during an analysis, by the
+ * elements enabled in the graph, the query and the patterns it was restricted
+ * to, so that advice enabling the same elements reuse them rather than
+ * running the queries again. The
+ * enabled elements are compared exactly, as the overlay applied to the graph,
+ * so a row is never reused for a different enablement. The rows are dropped
+ * once nodes or arcs are added to or removed from the graph, as the ordinals
+ * of its elements may then be given to others.
+ * 
+ * @author raffi
+ * 
+ */
+public class QueryResultCache {
+
+	private static final class Key {
+
+		private final EnablementOverlay enablement;
+
+		private final SuggestionQuery query;
+
+		private final Set<Pattern<IntentionArc<IElement>>> patterns;
+
+		Key(final EnablementOverlay enablement, final SuggestionQuery query,
+				final Set<Pattern<IntentionArc<IElement>>> patterns) {
+			this.enablement = enablement;
+			this.query = query;
+			this.patterns = patterns;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key rhs = (Key) obj;
+			return this.query == rhs.query
+					&& this.enablement.equals(rhs.enablement)
+					&& (this.patterns == null ? rhs.patterns == null
+							: this.patterns.equals(rhs.patterns));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * this.enablement.hashCode() + this.query
+					.hashCode())
+					+ (this.patterns == null ? 0 : this.patterns.hashCode());
+		}
+	}
+
+	private final IntentionGraph graph;
+
+	private final Map<Key, PatternTable> tables = new HashMap<Key, PatternTable>();
+
+	/**
+	 * The version of the graph the rows were found in.
+	 */
+	private int version;
+
+	private int hitCount;
+
+	private int missCount;
+
+	/**
+	 * @param graph
+	 *            the graph whose enabled elements key the rows.
+	 */
+	public QueryResultCache(final IntentionGraph graph) {
+		this.graph = graph;
+		this.version = graph.getVersion();
+	}
+
+	/**
+	 * @param query
+	 * @return the rows of the given query for the elements currently enabled
+	 *         in the graph, or <code>null</code> if they are not kept.
+	 */
+	public PatternTable get(final SuggestionQuery query) {
+		return this.get(query, null);
+	}
+
+	/**
+	 * @param query
+	 * @param patterns
+	 *            the patterns the query is restricted to, or
+	 *            <code>null</code> for all of them.
+	 * @return the rows of the given query for the given patterns and the
+	 *         elements currently enabled in the graph, or <code>null</code>
+	 *         if they are not kept.
+	 */
+	public PatternTable get(final SuggestionQuery query,
+			final Set<Pattern<IntentionArc<IElement>>> patterns) {
+		this.checkVersion();
+		final PatternTable ret = this.tables.get(new Key(this.graph
+				.getAppliedOverlay(), query, patterns));
+		if (ret == null)
+			this.missCount++;
+		else
+			this.hitCount++;
+		return ret;
+	}
+
+	/**
+	 * Keeps the rows of the given query for the elements currently enabled
+	 * in the graph. The table is no longer changed.
+	 * 
+	 * @param query
+	 * @param patternTable
+	 */
+	public void put(final SuggestionQuery query,
+			final PatternTable patternTable) {
+		this.put(query, null, patternTable);
+	}
+
+	/**
+	 * Keeps the rows of the given query for the given patterns and the
+	 * elements currently enabled in the graph. The table is no longer
+	 * changed.
+	 * 
+	 * @param query
+	 * @param patterns
+	 *            the patterns the query was restricted to, or
+	 *            <code>null</code> for all of them.
+	 * @param patternTable
+	 */
+	public void put(final SuggestionQuery query,
+			final Set<Pattern<IntentionArc<IElement>>> patterns,
+			final PatternTable patternTable) {
+		this.checkVersion();
+		this.tables.put(new Key(this.graph.getAppliedOverlay(), query,
+				patterns == null ? null
+						: new HashSet<Pattern<IntentionArc<IElement>>>(
+								patterns)), patternTable);
+	}
+
+	/**
+	 * Removes the rows kept if the graph changed since they were found.
+	 */
+	private void checkVersion() {
+		if (this.version != this.graph.getVersion()) {
+			this.tables.clear();
+			this.version = this.graph.getVersion();
+		}
+	}
+
+	/**
+	 * Removes the rows kept; the statistics are left.
+	 */
+	public void clear() {
+		this.tables.clear();
+	}
+
+	/**
+	 * @return the number of queries whose rows were reused.
+	 */
+	public int getHitCount() {
+		return this.hitCount;
+	}
+
+	/**
+	 * @return the number of queries that were run.
+	 */
+	public int getMissCount() {
+		return this.missCount;
+	}
+
+	/**
+	 * @return the proportion of the queries whose rows were reused, or 0 if
+	 *         none was asked for.
+	 */
+	public double getHitRatio() {
+		final int count = this.hitCount + this.missCount;
+		return count == 0 ? 0 : (double) this.hitCount / count;
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * 
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
+
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * The suggestion queries of the node rules, as they are run for an advice.
+ * 
+ * @author raffi
+ * 
+ */
+public enum SuggestionQuery {
+
+	/**
+	 * Every query at once, when the engine answers them in a single pass.
+	 */
+	ALL(false, null),
+
+	FORWARD_EXECUTION_NODES(true, null),
+
+	BACKWARD_EXECUTION_NODES(false, null),
+
+	FORWARD_CALLS_ARCS(true, Relation.CALLS),
+
+	BACKWARD_CALLS_ARCS(false, Relation.CALLS),
+
+	FORWARD_GETS_ARCS(true, Relation.GETS),
+
+	BACKWARD_GETS_ARCS(false, Relation.GETS),
+
+	FORWARD_SETS_ARCS(true, Relation.SETS),
+
+	BACKWARD_SETS_ARCS(false, Relation.SETS);
+
+	private final boolean forward;
+
+	private final Relation relation;
+
+	private SuggestionQuery(final boolean forward, final Relation relation) {
+		this.forward = forward;
+		this.relation = relation;
+	}
+
+	/**
+	 * @return whether the query is a forward one.
+	 */
+	public boolean isForward() {
+		return this.forward;
+	}
+
+	/**
+	 * @return the type of the enabled arcs of an arc query, or
+	 *         <code>null</code> for the other queries.
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * 
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.JayFXException;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * An intention graph kept between runs along with its program database. The
+ * compilation units changed in the Java model are collected as they change,
+ * and only those are analyzed again when the graph is next asked for.
+ * Changes that cannot be traced to compilation units, e.g., to the classpath,
+ * make the graph stale.
+ * 
+ * @author raffi
+ * 
+ */
+public class WarmIntentionGraph implements IElementChangedListener {
+
+	private final JayFX database;
+
+	private IntentionGraph graph;
+
+	/**
+	 * The units changed since the last update, guarded by this object.
+	 */
+	private Set<ICompilationUnit> changedUnits = new LinkedHashSet<ICompilationUnit>();
+
+	private boolean stale;
+
+	/**
+	 * Starts listening for changes right away so that none are missed while
+	 * the database is being initialized.
+	 * 
+	 * @param database
+	 *            the database, not yet initialized.
+	 */
+	public WarmIntentionGraph(final JayFX database) {
+		this.database = database;
+		JavaCore.addElementChangedListener(this,
+				ElementChangedEvent.POST_CHANGE);
+	}
+
+	/**
+	 * @param graph
+	 *            the graph built over the initialized database.
+	 */
+	public void setGraph(final IntentionGraph graph) {
+		this.graph = graph;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+	 */
+	public synchronized void elementChanged(final ElementChangedEvent event) {
+		this.collectChangedUnits(event.getDelta());
+	}
+
+	private void collectChangedUnits(final IJavaElementDelta delta) {
+		final IJavaElement element = delta.getElement();
+		switch (element.getElementType()) {
+			case IJavaElement.JAVA_MODEL:
+				break;
+
+			case IJavaElement.JAVA_PROJECT:
+				if (delta.getKind() != IJavaElementDelta.CHANGED
+						|| (delta.getFlags() & (IJavaElementDelta.F_CLASSPATH_CHANGED
+								| IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED)) != 0) {
+					this.stale = true;
+					return;
+				}
+				break;
+
+			case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			case IJavaElement.PACKAGE_FRAGMENT:
+				if (delta.getKind() != IJavaElementDelta.CHANGED
+						|| (delta.getFlags() & IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED) != 0) {
+					this.stale = true;
+					return;
+				}
+				break;
+
+			case IJavaElement.COMPILATION_UNIT:
+				if (delta.getKind() != IJavaElementDelta.CHANGED
+						|| (delta.getFlags() & (IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE)) != 0)
+					this.changedUnits.add((ICompilationUnit) element
+							.getPrimaryElement());
+				return;
+
+			default:
+				return;
+		}
+
+		for (final IJavaElementDelta child : delta.getAffectedChildren())
+			this.collectChangedUnits(child);
+	}
+
+	/**
+	 * @return whether the graph can no longer be updated and must be built
+	 *         again.
+	 */
+	public synchronized boolean isStale() {
+		return this.stale;
+	}
+
+	/**
+	 * Updates the database and graph with the compilation units changed since
+	 * the last update.
+	 * 
+	 * @param monitor
+	 * @return the graph.
+	 * @throws JayFXException
+	 */
+	public IntentionGraph update(final IProgressMonitor monitor)
+			throws JayFXException {
+		// units changing from here on are left for the next update.
+		final Collection<ICompilationUnit> units;
+		synchronized (this) {
+			units = this.changedUnits;
+			this.changedUnits = new LinkedHashSet<ICompilationUnit>();
+		}
+		if (!units.isEmpty()) {
+			final Set<IElement> affected = this.database.update(units,
+					new SubProgressMonitor(monitor, -1));
+			this.graph.update(affected, new SubProgressMonitor(monitor, -1));
+		}
+		return this.graph;
+	}
+
+	/**
+	 * Stops listening for changes.
+	 */
+	public void dispose() {
+		JavaCore.removeElementChangedListener(this);
+	}
+}
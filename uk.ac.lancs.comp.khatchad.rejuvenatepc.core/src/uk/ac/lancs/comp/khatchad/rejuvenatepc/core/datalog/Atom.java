@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+/**
+ * A predicate applied to terms. Constants are non-negative integers, and
+ * variables are numbered from zero within a rule and made with
+ * {@link #var(int)}.
+ *
+ * @author raffi
+ *
+ */
+public class Atom {
+
+	private final String predicate;
+
+	private final int[] terms;
+
+	/**
+	 * @param predicate
+	 * @param terms
+	 */
+	public Atom(final String predicate, final int... terms) {
+		this.predicate = predicate;
+		this.terms = terms.clone();
+	}
+
+	/**
+	 * @param index
+	 * @return the term of the variable with the given index.
+	 */
+	public static int var(final int index) {
+		if (index < 0)
+			throw new IllegalArgumentException("Negative variable index.");
+		return -index - 1;
+	}
+
+	/**
+	 * @param term
+	 * @return whether the given term is a variable.
+	 */
+	public static boolean isVar(final int term) {
+		return term < 0;
+	}
+
+	/**
+	 * @param term
+	 *            a variable.
+	 * @return the index of the given variable.
+	 */
+	public static int getVarIndex(final int term) {
+		return -term - 1;
+	}
+
+	/**
+	 * @return the predicate.
+	 */
+	public String getPredicate() {
+		return this.predicate;
+	}
+
+	/**
+	 * @return the number of terms.
+	 */
+	public int getArity() {
+		return this.terms.length;
+	}
+
+	/**
+	 * @param index
+	 * @return the term at the given index.
+	 */
+	public int getTerm(final int index) {
+		return this.terms[index];
+	}
+
+	static String toString(final int term) {
+		return isVar(term) ? "V" + getVarIndex(term) : String.valueOf(term);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder ret = new StringBuilder(this.predicate);
+		ret.append('(');
+		for (int i = 0; i < this.terms.length; i++) {
+			if (i > 0)
+				ret.append(',');
+			ret.append(toString(this.terms[i]));
+		}
+		ret.append(')');
+		return ret.toString();
+	}
+}
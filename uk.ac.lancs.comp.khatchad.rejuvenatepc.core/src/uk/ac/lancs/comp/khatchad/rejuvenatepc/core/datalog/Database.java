@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The tables of the predicates of a program, both those given as facts and
+ * those derived by its rules.
+ *
+ * @author raffi
+ *
+ */
+public class Database {
+
+	private final Map<String, Table> tables = new HashMap<String, Table>();
+
+	/**
+	 * @param predicate
+	 * @param arity
+	 * @return the table of the given predicate, which is created empty if it
+	 *         does not exist.
+	 */
+	public Table getTable(final String predicate, final int arity) {
+		Table ret = this.tables.get(predicate);
+		if (ret == null) {
+			ret = new Table(arity);
+			this.tables.put(predicate, ret);
+		}
+		else if (ret.getArity() != arity)
+			throw new IllegalArgumentException(predicate + " has arity "
+					+ ret.getArity() + ", not " + arity + ".");
+		return ret;
+	}
+
+	/**
+	 * @param predicate
+	 * @return the table of the given predicate, or <code>null</code> if it
+	 *         does not exist.
+	 */
+	public Table getTable(final String predicate) {
+		return this.tables.get(predicate);
+	}
+
+	/**
+	 * @param predicate
+	 * @param tuple
+	 * @return whether the given fact is new.
+	 */
+	public boolean add(final String predicate, final int... tuple) {
+		return this.getTable(predicate, tuple.length).add(tuple);
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+/**
+ * Decides whether the facts a program derives are added to its database.
+ *
+ * @author raffi
+ *
+ */
+public interface FactFilter {
+
+	/**
+	 * @param predicate
+	 * @param tuple
+	 *            a fact of the given predicate not yet in the database.
+	 * @return whether the fact is added. If not, the evaluation stops.
+	 */
+	boolean admits(String predicate, int[] tuple);
+}
@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of Datalog rules evaluated bottom-up. The rules are stratified so that
+ * a predicate is only negated once it is completely derived, and each stratum
+ * is evaluated semi-naively: after a first round over all the facts, a rule
+ * is only joined again with the facts derived in the previous round, one body
+ * atom at a time, and with all the facts for its other atoms. A match using
+ * only old facts is thus never found again, but one using several new facts
+ * is found once for each of them; facts already in the database are then
+ * dropped.
+ *
+ * @author raffi
+ *
+ */
+public class Program {
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	/**
+	 * @param rule
+	 */
+	public void addRule(final Rule rule) {
+		this.rules.add(rule);
+	}
+
+	/**
+	 * @return the predicates derived by the rules.
+	 */
+	public Set<String> getDerivedPredicates() {
+		final Set<String> ret = new HashSet<String>();
+		for (final Rule rule : this.rules)
+			ret.add(rule.getHead().getPredicate());
+		return ret;
+	}
+
+	/**
+	 * Derives the facts of the rules into the given database.
+	 *
+	 * @param database
+	 */
+	public void evaluate(final Database database) {
+		this.evaluate(database, null);
+	}
+
+	/**
+	 * Derives the facts of the rules into the given database until the given
+	 * filter refuses one.
+	 *
+	 * @param database
+	 * @param filter
+	 *            asked for each new fact before it is added, or
+	 *            <code>null</code> to add them all.
+	 * @return whether every fact was derived, i.e., none was refused.
+	 */
+	public boolean evaluate(final Database database, final FactFilter filter) {
+		for (final List<Rule> stratum : this.stratify()) {
+			final Map<String, List<int[]>> derived = new HashMap<String, List<int[]>>();
+			for (final Rule rule : stratum)
+				join(rule, 0, -1, null, database, new int[rule.getVarCount()],
+						new boolean[rule.getVarCount()], derived);
+
+			while (!derived.isEmpty()) {
+				final Map<String, Table> delta = new HashMap<String, Table>();
+				for (final Map.Entry<String, List<int[]>> entry : derived
+						.entrySet()) {
+					final List<int[]> tuples = entry.getValue();
+					final Table table = database.getTable(entry.getKey(),
+							tuples.get(0).length);
+					for (final int[] tuple : tuples)
+						if (!table.contains(tuple)) {
+							if (filter != null
+									&& !filter.admits(entry.getKey(), tuple))
+								return false;
+							table.add(tuple);
+							Table deltaTable = delta.get(entry.getKey());
+							if (deltaTable == null) {
+								deltaTable = new Table(tuple.length);
+								delta.put(entry.getKey(), deltaTable);
+							}
+							deltaTable.add(tuple);
+						}
+				}
+				derived.clear();
+
+				for (final Rule rule : stratum)
+					for (int i = 0; i < rule.getBody().size(); i++) {
+						final Table deltaTable = delta.get(rule.getBody()
+								.get(i).getPredicate());
+						if (deltaTable != null)
+							join(rule, 0, i, deltaTable, database,
+									new int[rule.getVarCount()],
+									new boolean[rule.getVarCount()], derived);
+					}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Joins the positive atoms of the body of the given rule from the given
+	 * position on, and adds the heads of the matches to the derived facts.
+	 */
+	private static void join(final Rule rule, final int position,
+			final int deltaPosition, final Table delta,
+			final Database database, final int[] values,
+			final boolean[] bound, final Map<String, List<int[]>> derived) {
+		if (position == rule.getBody().size()) {
+			if (holds(rule, database, values))
+				derive(rule.getHead(), values, derived);
+			return;
+		}
+
+		final Atom atom = rule.getBody().get(position);
+		final Table table = position == deltaPosition ? delta : database
+				.getTable(atom.getPredicate());
+		if (table == null)
+			return;
+
+		long columns = 0;
+		final int[] key = new int[atom.getArity()];
+		for (int i = 0; i < key.length; i++) {
+			final int term = atom.getTerm(i);
+			if (!Atom.isVar(term)) {
+				columns |= 1L << i;
+				key[i] = term;
+			}
+			else if (bound[Atom.getVarIndex(term)]) {
+				columns |= 1L << i;
+				key[i] = values[Atom.getVarIndex(term)];
+			}
+		}
+
+		final boolean[] binding = new boolean[key.length];
+		for (final int[] tuple : table.lookup(columns, key)) {
+			boolean matches = true;
+			for (int i = 0; i < key.length && matches; i++) {
+				if ((columns & (1L << i)) != 0)
+					continue;
+				final int var = Atom.getVarIndex(atom.getTerm(i));
+				if (bound[var])
+					// the variable occurs twice in the atom.
+					matches = values[var] == tuple[i];
+				else {
+					values[var] = tuple[i];
+					bound[var] = binding[i] = true;
+				}
+			}
+			if (matches)
+				join(rule, position + 1, deltaPosition, delta, database,
+						values, bound, derived);
+			for (int i = 0; i < key.length; i++)
+				if (binding[i]) {
+					bound[Atom.getVarIndex(atom.getTerm(i))] = false;
+					binding[i] = false;
+				}
+		}
+	}
+
+	private static boolean holds(final Rule rule, final Database database,
+			final int[] values) {
+		for (final int[] inequality : rule.getInequalities())
+			if (getValue(inequality[0], values) == getValue(inequality[1],
+					values))
+				return false;
+		for (final Atom atom : rule.getNegatedAtoms()) {
+			final Table table = database.getTable(atom.getPredicate());
+			if (table != null && table.contains(instantiate(atom, values)))
+				return false;
+		}
+		return true;
+	}
+
+	private static void derive(final Atom head, final int[] values,
+			final Map<String, List<int[]>> derived) {
+		List<int[]> tuples = derived.get(head.getPredicate());
+		if (tuples == null) {
+			tuples = new ArrayList<int[]>();
+			derived.put(head.getPredicate(), tuples);
+		}
+		tuples.add(instantiate(head, values));
+	}
+
+	private static int[] instantiate(final Atom atom, final int[] values) {
+		final int[] ret = new int[atom.getArity()];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = getValue(atom.getTerm(i), values);
+		return ret;
+	}
+
+	private static int getValue(final int term, final int[] values) {
+		return Atom.isVar(term) ? values[Atom.getVarIndex(term)] : term;
+	}
+
+	/**
+	 * @return the rules grouped by stratum, lowest first. A predicate is in a
+	 *         stratum no lower than those of the predicates it depends on, and
+	 *         higher than those of the predicates it negates.
+	 */
+	private List<List<Rule>> stratify() {
+		final Set<String> predicates = this.getDerivedPredicates();
+		final Map<String, Integer> strata = new HashMap<String, Integer>();
+		for (final String predicate : predicates)
+			strata.put(predicate, 0);
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final Rule rule : this.rules) {
+				final String head = rule.getHead().getPredicate();
+				int stratum = strata.get(head);
+				for (final Atom atom : rule.getBody())
+					if (predicates.contains(atom.getPredicate()))
+						stratum = Math.max(stratum, strata.get(atom
+								.getPredicate()));
+				for (final Atom atom : rule.getNegatedAtoms())
+					if (predicates.contains(atom.getPredicate()))
+						stratum = Math.max(stratum, strata.get(atom
+								.getPredicate()) + 1);
+				if (stratum > predicates.size())
+					throw new IllegalStateException(head
+							+ " depends on its own negation.");
+				if (stratum != strata.get(head)) {
+					strata.put(head, stratum);
+					changed = true;
+				}
+			}
+		}
+
+		final List<List<Rule>> ret = new ArrayList<List<Rule>>();
+		for (final Rule rule : this.rules) {
+			final int stratum = strata.get(rule.getHead().getPredicate());
+			while (ret.size() <= stratum)
+				ret.add(new ArrayList<Rule>());
+			ret.get(stratum).add(rule);
+		}
+		return ret;
+	}
+}
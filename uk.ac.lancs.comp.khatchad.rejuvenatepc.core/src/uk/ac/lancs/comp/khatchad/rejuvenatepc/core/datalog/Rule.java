@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Datalog rule: the head holds whenever the positive atoms of the body
+ * hold, none of the negated atoms do, and the terms said to differ do. The
+ * positive atoms are joined in the order they are given, so the most
+ * selective ones should come first. Every variable of the head, of the
+ * negated atoms, and of the inequalities must occur in a positive atom.
+ *
+ * @author raffi
+ *
+ */
+public class Rule {
+
+	private final Atom head;
+
+	private final List<Atom> body;
+
+	private final List<Atom> negatedAtoms = new ArrayList<Atom>();
+
+	private final List<int[]> inequalities = new ArrayList<int[]>();
+
+	/**
+	 * @param head
+	 * @param body
+	 *            the positive atoms of the body.
+	 */
+	public Rule(final Atom head, final Atom... body) {
+		this.head = head;
+		this.body = Arrays.asList(body.clone());
+	}
+
+	/**
+	 * Requires the given atom not to hold.
+	 *
+	 * @param atom
+	 * @return this rule.
+	 */
+	public Rule addNegatedAtom(final Atom atom) {
+		this.negatedAtoms.add(atom);
+		return this;
+	}
+
+	/**
+	 * Requires the given terms to differ.
+	 *
+	 * @param lhs
+	 * @param rhs
+	 * @return this rule.
+	 */
+	public Rule addInequality(final int lhs, final int rhs) {
+		this.inequalities.add(new int[] { lhs, rhs });
+		return this;
+	}
+
+	/**
+	 * @return the head.
+	 */
+	public Atom getHead() {
+		return this.head;
+	}
+
+	/**
+	 * @return the positive atoms of the body.
+	 */
+	public List<Atom> getBody() {
+		return Collections.unmodifiableList(this.body);
+	}
+
+	/**
+	 * @return the negated atoms of the body.
+	 */
+	public List<Atom> getNegatedAtoms() {
+		return Collections.unmodifiableList(this.negatedAtoms);
+	}
+
+	/**
+	 * @return the pairs of terms required to differ.
+	 */
+	public List<int[]> getInequalities() {
+		return Collections.unmodifiableList(this.inequalities);
+	}
+
+	/**
+	 * @return the number of variables, i.e., one more than the greatest
+	 *         variable index.
+	 */
+	public int getVarCount() {
+		int ret = 0;
+		for (final Atom atom : this.body)
+			for (int i = 0; i < atom.getArity(); i++)
+				if (Atom.isVar(atom.getTerm(i)))
+					ret = Math.max(ret, Atom.getVarIndex(atom.getTerm(i)) + 1);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder ret = new StringBuilder(this.head.toString());
+		ret.append(" :- ");
+		for (int i = 0; i < this.body.size(); i++) {
+			if (i > 0)
+				ret.append(", ");
+			ret.append(this.body.get(i));
+		}
+		for (final Atom atom : this.negatedAtoms)
+			ret.append(", \\+").append(atom);
+		for (final int[] inequality : this.inequalities)
+			ret.append(", ").append(Atom.toString(inequality[0])).append(
+					" \\== ").append(Atom.toString(inequality[1]));
+		return ret.append('.').toString();
+	}
+}
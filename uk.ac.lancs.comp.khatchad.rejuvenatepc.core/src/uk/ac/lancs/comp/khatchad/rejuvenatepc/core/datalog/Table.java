@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The facts of a predicate: a set of tuples of integer constants. Tuples are
+ * looked up by the values of some of their columns through hash indexes,
+ * which are built the first time a set of columns is looked up and kept up to
+ * date as tuples are added.
+ *
+ * @author raffi
+ *
+ */
+public class Table {
+
+	/**
+	 * A tuple, or the key of a tuple in an index.
+	 */
+	private static final class Key {
+
+		private final int[] values;
+
+		private final int hash;
+
+		Key(final int[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Key && this.hash == ((Key) obj).hash
+					&& Arrays.equals(this.values, ((Key) obj).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private final int arity;
+
+	private final List<int[]> tuples = new ArrayList<int[]>();
+
+	private final Set<Key> tupleSet = new HashSet<Key>();
+
+	/**
+	 * The indexes, by the bit mask of the columns they are keyed by.
+	 */
+	private final Map<Long, Map<Key, List<int[]>>> indexes = new HashMap<Long, Map<Key, List<int[]>>>();
+
+	/**
+	 * @param arity
+	 *            the number of columns, at most 63.
+	 */
+	public Table(final int arity) {
+		if (arity < 0 || arity >= Long.SIZE)
+			throw new IllegalArgumentException("Unsupported arity: " + arity);
+		this.arity = arity;
+	}
+
+	/**
+	 * @return the number of columns.
+	 */
+	public int getArity() {
+		return this.arity;
+	}
+
+	/**
+	 * @return the number of tuples.
+	 */
+	public int size() {
+		return this.tuples.size();
+	}
+
+	/**
+	 * @return the tuples, in the order they were added. They must not be
+	 *         modified.
+	 */
+	public List<int[]> getTuples() {
+		return Collections.unmodifiableList(this.tuples);
+	}
+
+	/**
+	 * @param tuple
+	 * @return whether the given tuple was not already in this table.
+	 */
+	public boolean add(final int[] tuple) {
+		if (tuple.length != this.arity)
+			throw new IllegalArgumentException("Expected " + this.arity
+					+ " values.");
+		if (!this.tupleSet.add(new Key(tuple)))
+			return false;
+		this.tuples.add(tuple);
+		for (final Map.Entry<Long, Map<Key, List<int[]>>> entry : this.indexes
+				.entrySet())
+			index(entry.getValue(), entry.getKey(), tuple);
+		return true;
+	}
+
+	/**
+	 * @param tuple
+	 * @return whether the given tuple is in this table.
+	 */
+	public boolean contains(final int[] tuple) {
+		return this.tupleSet.contains(new Key(tuple));
+	}
+
+	/**
+	 * Removes every tuple.
+	 */
+	public void clear() {
+		this.tuples.clear();
+		this.tupleSet.clear();
+		this.indexes.clear();
+	}
+
+	/**
+	 * @param columns
+	 *            the bit mask of the columns whose values are given.
+	 * @param values
+	 *            the values of the tuples, of which only those of the given
+	 *            columns are read.
+	 * @return the tuples having the given values in the given columns.
+	 */
+	public List<int[]> lookup(final long columns, final int[] values) {
+		if (columns == 0)
+			return this.tuples;
+		Map<Key, List<int[]>> index = this.indexes.get(columns);
+		if (index == null) {
+			index = new HashMap<Key, List<int[]>>();
+			for (final int[] tuple : this.tuples)
+				index(index, columns, tuple);
+			this.indexes.put(columns, index);
+		}
+		final List<int[]> ret = index.get(getKey(columns, values));
+		return ret == null ? Collections.<int[]> emptyList() : ret;
+	}
+
+	private static void index(final Map<Key, List<int[]>> index,
+			final long columns, final int[] tuple) {
+		final Key key = getKey(columns, tuple);
+		List<int[]> tuples = index.get(key);
+		if (tuples == null) {
+			tuples = new ArrayList<int[]>(1);
+			index.put(key, tuples);
+		}
+		tuples.add(tuple);
+	}
+
+	private static Key getKey(final long columns, final int[] values) {
+		final int[] ret = new int[Long.bitCount(columns)];
+		int i = 0;
+		for (int column = 0; column < values.length; column++)
+			if ((columns & (1L << column)) != 0)
+				ret[i++] = values[column];
+		return new Key(ret);
+	}
+}
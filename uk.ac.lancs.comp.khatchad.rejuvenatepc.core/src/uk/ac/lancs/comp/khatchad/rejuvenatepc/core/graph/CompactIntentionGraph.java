@@ -0,0 +1,463 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * An intention graph whose structure is held in compressed sparse row form.
+ * Nodes are numbered in the order {@link IntentionGraph} would create them,
+ * and the arcs of each relation are stored as an offset array and a target
+ * array indexed by node number. {@link IntentionNode} and
+ * {@link IntentionArc} objects are only created when a node is first asked
+ * for, so the graph holds the same nodes and arcs as an
+ * {@link IntentionGraph} built over the same database. The path index, the
+ * Datalog program and the pattern matcher walk the arrays through
+ * {@link #getTargets(int, Relation)} and only ask for the nodes and arcs of
+ * the enabled paths and of the suggestions; the node rules need every node
+ * and arc as a fact, and so does {@link #flatten()}. Updates are applied to
+ * the materialized nodes; the arrays keep describing the graph as it was
+ * built, less the nodes removed since. Once every node has been
+ * materialized, e.g., to enable all the elements, the arrays are released.
+ *
+ * @author raffi
+ *
+ */
+public class CompactIntentionGraph extends IntentionGraph {
+
+	/**
+	 * The program elements, indexed by node number.
+	 */
+	private IElement[] elements;
+
+	/**
+	 * The number of node numbers assigned, including those of the nodes added
+	 * after construction.
+	 */
+	private int size;
+
+	private final Map<IElement, Integer> elementToIdMap = new HashMap<IElement, Integer>();
+
+	/**
+	 * The number of nodes whose arcs were built. Nodes discovered as arc
+	 * targets are numbered after these and have no arcs.
+	 */
+	private int sourceCount;
+
+	/**
+	 * For each relation of {@link IntentionGraph#getArcRelations()}, the arcs of
+	 * node <code>i</code> are the targets from <code>offsets[r][i]</code>
+	 * (inclusive) to <code>offsets[r][i + 1]</code> (exclusive).
+	 * <code>null</code> once every node has been materialized.
+	 */
+	private int[][] offsets;
+
+	private int[][] targets;
+
+	/**
+	 * The number of arcs built from the database.
+	 */
+	private int arcCount;
+
+	/**
+	 * Materialized nodes, indexed by node number.
+	 */
+	private IntentionNode<IElement>[] nodes;
+
+	/**
+	 * The nodes whose arcs have been materialized.
+	 */
+	private final BitSet expanded = new BitSet();
+
+	/**
+	 * Whether every node built from the database has been materialized.
+	 */
+	private boolean materialized;
+
+	/**
+	 * The nodes removed by an update.
+	 */
+	private final BitSet removed = new BitSet();
+
+	/**
+	 * @param database
+	 * @param monitor
+	 */
+	public CompactIntentionGraph(final JayFX database,
+			final IProgressMonitor monitor) {
+		this(database, getDefaultRelations(), monitor);
+	}
+
+	/**
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 * @param monitor
+	 */
+	public CompactIntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations, final IProgressMonitor monitor) {
+		this(database, relations, database.getAllElements(), monitor);
+	}
+
+	/**
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 * @param elements
+	 *            the elements whose arcs are built.
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	public CompactIntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations,
+			final Collection<IElement> elements, final IProgressMonitor monitor) {
+		super(database, relations);
+		final List<IElement> elementList = new ArrayList<IElement>();
+		for (final IElement elem : elements)
+			this.assignId(elem, elementList);
+		this.sourceCount = elementList.size();
+		this.buildArcs(elementList, new SubProgressMonitor(monitor, -1));
+		this.elements = elementList.toArray(new IElement[elementList.size()]);
+		this.size = this.elements.length;
+		this.nodes = new IntentionNode[this.size];
+	}
+
+	private void buildArcs(final List<IElement> elementList,
+			final IProgressMonitor monitor) {
+		monitor.beginTask("Building Intention Arcs", this.sourceCount);
+
+		final Relation[] arcRelations = this.getArcRelations();
+		final int relationCount = arcRelations.length;
+		this.offsets = new int[relationCount][this.sourceCount + 1];
+		this.targets = new int[relationCount][];
+		final int[] sizes = new int[relationCount];
+		for (int r = 0; r < relationCount; r++)
+			this.targets[r] = new int[16];
+
+		for (int id = 0; id < this.sourceCount; id++) {
+			final IElement elem = elementList.get(id);
+			for (int r = 0; r < relationCount; r++) {
+				this.offsets[r][id] = sizes[r];
+				for (final IElement toElement : this.getDatabase().getRange(
+						elem, arcRelations[r])) {
+					if (sizes[r] == this.targets[r].length)
+						this.targets[r] = grow(this.targets[r]);
+					this.targets[r][sizes[r]++] = this.assignId(toElement,
+							elementList);
+				}
+			}
+			monitor.worked(1);
+		}
+
+		for (int r = 0; r < relationCount; r++) {
+			this.offsets[r][this.sourceCount] = sizes[r];
+			final int[] trimmed = new int[sizes[r]];
+			System.arraycopy(this.targets[r], 0, trimmed, 0, sizes[r]);
+			this.targets[r] = trimmed;
+			this.arcCount += sizes[r];
+		}
+		monitor.done();
+	}
+
+	private static int[] grow(final int[] array) {
+		final int[] ret = new int[array.length * 2];
+		System.arraycopy(array, 0, ret, 0, array.length);
+		return ret;
+	}
+
+	/**
+	 * @return the node number of the given element, numbering it if needed.
+	 */
+	private int assignId(final IElement elem, final List<IElement> elementList) {
+		final Integer id = this.elementToIdMap.get(elem);
+		if (id != null)
+			return id.intValue();
+		this.elementToIdMap.put(elem, elementList.size());
+		elementList.add(elem);
+		return elementList.size() - 1;
+	}
+
+	/**
+	 * @return the number of nodes.
+	 */
+	public int getNodeCount() {
+		return this.size - this.removed.cardinality();
+	}
+
+	/**
+	 * @return the number of nodes created so far.
+	 */
+	public int getMaterializedNodeCount() {
+		int ret = 0;
+		for (int id = 0; id < this.size; id++)
+			if (this.nodes[id] != null)
+				ret++;
+		return ret;
+	}
+
+	/**
+	 * @return the number of arcs built from the database.
+	 */
+	public int getArcCount() {
+		return this.arcCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getIdBound()
+	 */
+	@Override
+	public int getIdBound() {
+		return this.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#nextId(int)
+	 */
+	@Override
+	public int nextId(final int from) {
+		final int ret = this.removed.nextClearBit(from);
+		return ret < this.size ? ret : -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getElement(int)
+	 */
+	@Override
+	public IElement getElement(final int id) {
+		return this.elements[id];
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getId(ca.mcgill.cs.swevo.jayfx.model.IElement)
+	 */
+	@Override
+	public int getId(final IElement elem) {
+		final Integer id = this.elementToIdMap.get(elem);
+		return id == null ? -1 : id.intValue();
+	}
+
+	/**
+	 * The arcs of the nodes not materialized yet are read from the arrays,
+	 * less those to removed nodes.
+	 *
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getTargets(int,
+	 *      ca.mcgill.cs.swevo.jayfx.model.Relation)
+	 */
+	@Override
+	public int[] getTargets(final int id, final Relation relation) {
+		if (this.removed.get(id))
+			return new int[0];
+		if (this.expanded.get(id))
+			return this.getMaterializedTargets(id, relation);
+		final int r = this.indexOf(relation);
+		if (r < 0 || id >= this.sourceCount)
+			return new int[0];
+		int size = 0;
+		final int[] ret = new int[this.offsets[r][id + 1] - this.offsets[r][id]];
+		for (int i = this.offsets[r][id]; i < this.offsets[r][id + 1]; i++)
+			if (!this.removed.get(this.targets[r][i]))
+				ret[size++] = this.targets[r][i];
+		return trim(ret, size);
+	}
+
+	/**
+	 * @return the node numbers of the targets of the arcs of the given
+	 *         materialized node and relation.
+	 */
+	private int[] getMaterializedTargets(final int id, final Relation relation) {
+		final Set<IntentionArc<IElement>> arcs = this.nodes[id]
+				.getArcs(relation);
+		int size = 0;
+		final int[] ret = new int[arcs.size()];
+		for (final IntentionArc<IElement> arc : arcs) {
+			final int target = this.getId(arc.getToNode().getElem());
+			// the target may have been removed from the graph.
+			if (target >= 0 && this.nodes[target] == arc.getToNode())
+				ret[size++] = target;
+		}
+		return trim(ret, size);
+	}
+
+	private static int[] trim(final int[] array, final int size) {
+		if (size == array.length)
+			return array;
+		final int[] ret = new int[size];
+		System.arraycopy(array, 0, ret, 0, size);
+		return ret;
+	}
+
+	private int indexOf(final Relation relation) {
+		final Relation[] arcRelations = this.getArcRelations();
+		for (int r = 0; r < arcRelations.length; r++)
+			if (arcRelations[r] == relation)
+				return r;
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getNode(int)
+	 */
+	@Override
+	public IntentionNode<IElement> getNode(final int id) {
+		if (this.removed.get(id))
+			return null;
+		final IntentionNode<IElement> ret = this.getShell(id);
+		if (!this.expanded.get(id)) {
+			this.expanded.set(id);
+			final Relation[] arcRelations = this.getArcRelations();
+			if (id < this.sourceCount)
+				for (int r = 0; r < arcRelations.length; r++)
+					for (int i = this.offsets[r][id]; i < this.offsets[r][id + 1]; i++) {
+						final IntentionNode<IElement> toNode = this
+								.getShell(this.targets[r][i]);
+						if (toNode != null)
+							this.addArc(new IntentionArc<IElement>(ret, toNode,
+									arcRelations[r]));
+					}
+		}
+		return ret;
+	}
+
+	/**
+	 * The arcs of the node are not materialized.
+	 *
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getShell(int)
+	 */
+	@Override
+	IntentionNode<IElement> getShell(final int id) {
+		if (this.removed.get(id))
+			return null;
+		if (this.nodes[id] == null) {
+			this.nodes[id] = new IntentionNode<IElement>(this.elements[id]);
+			this.register(this.nodes[id]);
+		}
+		return this.nodes[id];
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#materialize()
+	 */
+	@Override
+	protected void materialize() {
+		if (this.materialized)
+			return;
+		for (int id = 0; id < this.size; id++)
+			if (!this.removed.get(id))
+				this.getNode(id);
+		this.materialized = true;
+		// every arc is now held by its node.
+		this.offsets = null;
+		this.targets = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getNode(ca.mcgill.cs.swevo.jayfx.model.IElement)
+	 */
+	@Override
+	public IntentionNode<IElement> getNode(final IElement elem) {
+		final Integer id = this.elementToIdMap.get(elem);
+		return id == null ? null : this.getNode(id.intValue());
+	}
+
+	/**
+	 * The node is numbered after the existing ones and has no arcs in the
+	 * arrays.
+	 *
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#addNode(ca.mcgill.cs.swevo.jayfx.model.IElement)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected IntentionNode<IElement> addNode(final IElement elem) {
+		if (this.size == this.elements.length) {
+			final int length = Math.max(16, 2 * this.size);
+			final IElement[] elements = new IElement[length];
+			System.arraycopy(this.elements, 0, elements, 0, this.size);
+			this.elements = elements;
+			final IntentionNode<IElement>[] nodes = new IntentionNode[length];
+			System.arraycopy(this.nodes, 0, nodes, 0, this.size);
+			this.nodes = nodes;
+		}
+		final int id = this.size++;
+		final IntentionNode<IElement> node = new IntentionNode<IElement>(elem);
+		this.elements[id] = elem;
+		this.nodes[id] = node;
+		this.elementToIdMap.put(elem, id);
+		this.expanded.set(id);
+		this.register(node);
+		return node;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#removeNode(uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode)
+	 */
+	@Override
+	protected void removeNode(final IntentionNode<IElement> node) {
+		final Integer id = this.elementToIdMap.remove(node.getElem());
+		if (id != null) {
+			this.removed.set(id.intValue());
+			this.nodes[id.intValue()] = null;
+		}
+		super.removeNode(node);
+	}
+
+	/**
+	 * The returned collection materializes nodes as it is iterated.
+	 *
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph#getNodes()
+	 */
+	@Override
+	public Collection<IntentionNode<IElement>> getNodes() {
+		return new AbstractCollection<IntentionNode<IElement>>() {
+
+			@Override
+			public Iterator<IntentionNode<IElement>> iterator() {
+				return new NodeIterator();
+			}
+
+			@Override
+			public int size() {
+				return CompactIntentionGraph.this.getNodeCount();
+			}
+		};
+	}
+
+	private class NodeIterator implements Iterator<IntentionNode<IElement>> {
+
+		private int next = CompactIntentionGraph.this.nextId(0);
+
+		public boolean hasNext() {
+			return this.next >= 0;
+		}
+
+		public IntentionNode<IElement> next() {
+			if (this.next < 0)
+				throw new NoSuchElementException();
+			final IntentionNode<IElement> ret = CompactIntentionGraph.this
+					.getNode(this.next);
+			this.next = CompactIntentionGraph.this.nextId(this.next + 1);
+			return ret;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
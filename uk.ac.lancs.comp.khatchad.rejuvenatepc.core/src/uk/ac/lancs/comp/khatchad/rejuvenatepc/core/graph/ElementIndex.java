@@ -0,0 +1,231 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * The nodes and arcs of an {@link IntentionGraph} in ordinal order. Ordinals
+ * are never reused, so the read-only views the index hands out stay valid as
+ * the graph is extended or updated; the version tells clients whether it has
+ * changed.
+ *
+ * @author raffi
+ *
+ */
+class ElementIndex {
+
+	/**
+	 * The elements indexed by ordinal, <code>null</code> for removed ones.
+	 */
+	private final List<IntentionElement<IElement>> elements = new ArrayList<IntentionElement<IElement>>();
+
+	private final BitSet live = new BitSet();
+
+	private final BitSet advisable = new BitSet();
+
+	private final BitSet nodes = new BitSet();
+
+	private int liveCount;
+
+	private int advisableCount;
+
+	private final Set<IntentionElement<IElement>> elementView = new BitSetView(
+			this.live) {
+
+		@Override
+		public int size() {
+			return ElementIndex.this.liveCount;
+		}
+	};
+
+	private final Set<IntentionElement<IElement>> advisableElementView = new BitSetView(
+			this.advisable) {
+
+		@Override
+		public int size() {
+			return ElementIndex.this.advisableCount;
+		}
+	};
+
+	private int version;
+
+	/**
+	 * Assigns the next ordinal to the given element.
+	 *
+	 * @param elem
+	 */
+	public void add(final IntentionElement<IElement> elem) {
+		if (elem.getOrdinal() >= 0)
+			throw new IllegalStateException("Element " + elem
+					+ " already belongs to a graph.");
+		final int ordinal = this.elements.size();
+		elem.setOrdinal(ordinal);
+		this.elements.add(elem);
+		this.live.set(ordinal);
+		this.liveCount++;
+		if (elem.isAdvisable()) {
+			this.advisable.set(ordinal);
+			this.advisableCount++;
+		}
+		if (elem instanceof IntentionNode)
+			this.nodes.set(ordinal);
+		this.version++;
+	}
+
+	/**
+	 * Removes the given element. Its ordinal is not reused.
+	 *
+	 * @param elem
+	 */
+	public void remove(final IntentionElement<IElement> elem) {
+		final int ordinal = elem.getOrdinal();
+		if (ordinal < 0 || !this.live.get(ordinal)
+				|| this.elements.get(ordinal) != elem)
+			throw new IllegalStateException("Element " + elem
+					+ " does not belong to this graph.");
+		this.elements.set(ordinal, null);
+		this.live.clear(ordinal);
+		this.liveCount--;
+		if (this.advisable.get(ordinal)) {
+			this.advisable.clear(ordinal);
+			this.advisableCount--;
+		}
+		this.nodes.clear(ordinal);
+		this.version++;
+	}
+
+	/**
+	 * @param ordinal
+	 * @return the element with the given ordinal, or <code>null</code> if it
+	 *         was removed.
+	 */
+	public IntentionElement<IElement> get(final int ordinal) {
+		return this.elements.get(ordinal);
+	}
+
+	/**
+	 * @return the number of elements.
+	 */
+	public int size() {
+		return this.liveCount;
+	}
+
+	/**
+	 * @return the number of advisable elements.
+	 */
+	public int getAdvisableCount() {
+		return this.advisableCount;
+	}
+
+	/**
+	 * @return the ordinals of the elements. Not to be modified.
+	 */
+	public BitSet getBits() {
+		return this.live;
+	}
+
+	/**
+	 * @return the ordinals of the advisable elements. Not to be modified.
+	 */
+	public BitSet getAdvisableBits() {
+		return this.advisable;
+	}
+
+	/**
+	 * @return the ordinals of the nodes. Not to be modified.
+	 */
+	public BitSet getNodeBits() {
+		return this.nodes;
+	}
+
+	/**
+	 * @return one more than the highest ordinal assigned so far.
+	 */
+	public int getOrdinalBound() {
+		return this.elements.size();
+	}
+
+	/**
+	 * @return a read-only view of all elements in ordinal order.
+	 */
+	public Set<IntentionElement<IElement>> getElements() {
+		return this.elementView;
+	}
+
+	/**
+	 * @return a read-only view of the advisable elements in ordinal order.
+	 */
+	public Set<IntentionElement<IElement>> getAdvisableElements() {
+		return this.advisableElementView;
+	}
+
+	/**
+	 * @return a number that changes whenever an element is added or removed.
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * A read-only set of the elements whose ordinals are set in a bit set.
+	 */
+	private abstract class BitSetView extends
+			AbstractSet<IntentionElement<IElement>> {
+
+		private final BitSet bits;
+
+		public BitSetView(final BitSet bits) {
+			this.bits = bits;
+		}
+
+		/**
+		 * Looks up the elements of this index by ordinal; only equal elements
+		 * of other graphs are searched for.
+		 */
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof IntentionElement))
+				return false;
+			final int ordinal = ((IntentionElement<?>) o).getOrdinal();
+			if (ordinal >= 0 && ordinal < ElementIndex.this.elements.size()
+					&& ElementIndex.this.elements.get(ordinal) == o)
+				return this.bits.get(ordinal);
+			return super.contains(o);
+		}
+
+		@Override
+		public Iterator<IntentionElement<IElement>> iterator() {
+			return new Iterator<IntentionElement<IElement>>() {
+
+				private int next = BitSetView.this.bits.nextSetBit(0);
+
+				public boolean hasNext() {
+					return this.next >= 0;
+				}
+
+				public IntentionElement<IElement> next() {
+					if (this.next < 0)
+						throw new NoSuchElementException();
+					final IntentionElement<IElement> ret = ElementIndex.this.elements
+							.get(this.next);
+					this.next = BitSetView.this.bits.nextSetBit(this.next + 1);
+					return ret;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * 
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.BitSet;
+
+/**
+ * The set of enabled elements of an {@link IntentionGraph}, e.g., those
+ * selected by the pointcut of a single piece of advice. Elements are keyed by
+ * their ordinal in the graph, so overlays for several advice can be computed,
+ * compared and queried without touching the state of the graph elements.
+ * Only {@link IntentionGraph#applyOverlay(EnablementOverlay,
+ * org.eclipse.core.runtime.IProgressMonitor)} sets their enabled flags, which
+ * the rules and the pattern engines read, to those of an overlay.
+ * 
+ * @author raffi
+ * 
+ */
+public class EnablementOverlay {
+
+	private final BitSet enabled;
+
+	/**
+	 * Creates an overlay in which no element is enabled.
+	 */
+	public EnablementOverlay() {
+		this.enabled = new BitSet();
+	}
+
+	/**
+	 * @param enabled
+	 */
+	EnablementOverlay(final BitSet enabled) {
+		this.enabled = (BitSet) enabled.clone();
+	}
+
+	/**
+	 * @param elem
+	 *            an element of the graph this overlay belongs to.
+	 */
+	public void enable(final IntentionElement<?> elem) {
+		this.enabled.set(ordinalOf(elem));
+	}
+
+	/**
+	 * @param elem
+	 *            an element of the graph this overlay belongs to.
+	 */
+	public void disable(final IntentionElement<?> elem) {
+		this.enabled.clear(ordinalOf(elem));
+	}
+
+	/**
+	 * @param elem
+	 * @return whether the given element is enabled in this overlay.
+	 */
+	public boolean isEnabled(final IntentionElement<?> elem) {
+		return elem.getOrdinal() >= 0 && this.enabled.get(elem.getOrdinal());
+	}
+
+	/**
+	 * @return the number of enabled elements.
+	 */
+	public int getEnabledCount() {
+		return this.enabled.cardinality();
+	}
+
+	/**
+	 * @return whether no element is enabled.
+	 */
+	public boolean isEmpty() {
+		return this.enabled.isEmpty();
+	}
+
+	/**
+	 * @return the ordinals of the enabled elements. Not to be modified.
+	 */
+	BitSet getBits() {
+		return this.enabled;
+	}
+
+	private static int ordinalOf(final IntentionElement<?> elem) {
+		if (elem.getOrdinal() < 0)
+			throw new IllegalArgumentException("Element " + elem
+					+ " does not belong to a graph.");
+		return elem.getOrdinal();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		return obj instanceof EnablementOverlay ? this.enabled
+				.equals(((EnablementOverlay) obj).enabled) : false;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return this.enabled.hashCode();
+	}
+}
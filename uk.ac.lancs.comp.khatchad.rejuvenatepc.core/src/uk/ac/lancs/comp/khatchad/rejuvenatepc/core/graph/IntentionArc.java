@@ -3,6 +3,10 @@
  */
 package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
 import org.aspectj.lang.JoinPoint;
 import org.eclipse.ajdt.core.javaelements.AJCodeElement;
 import org.eclipse.jdt.core.IField;
@@ -179,21 +183,49 @@ public class IntentionArc<E extends IElement> extends IntentionElement<E> {
 	//		this.type = type;
 	//	}
 	public String toDotFormat() {
-		final StringBuilder ret = new StringBuilder();
-		ret.append(this.fromNode.hashCode());
-		ret.append("->");
-		ret.append(this.toNode.hashCode());
-		ret.append(' ');
-		ret.append("[label=");
-		ret.append("\"");
-		ret.append(this.type.getFullCode());
-		ret.append("\"");
-		if (this.isEnabled())
-			ret.append(",style=bold,color=red,fontcolor=red");
-		ret.append("];");
+		final StringWriter ret = new StringWriter();
+		try {
+			this.writeDotFormat(ret);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
 		return ret.toString();
 	}
 
+	/**
+	 * Writes the DOT statement of this arc.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeDotFormat(final Writer out) throws IOException {
+		out.write(String.valueOf(this.fromNode.hashCode()));
+		out.write("->");
+		out.write(String.valueOf(this.toNode.hashCode()));
+		out.write(" [label=\"");
+		out.write(this.type.getFullCode());
+		out.write('"');
+		if (this.isEnabled())
+			out.write(",style=bold,color=red,fontcolor=red");
+		out.write("];");
+	}
+
+	/**
+	 * Writes this arc as a Prolog fact named after its relation.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeProlog(final Writer out) throws IOException {
+		out.write(this.type.toString().toLowerCase());
+		out.write("('");
+		out.write(this.fromNode.getElem().toString());
+		out.write("','");
+		out.write(this.toNode.getElem().toString());
+		out.write("').");
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder ret = new StringBuilder();
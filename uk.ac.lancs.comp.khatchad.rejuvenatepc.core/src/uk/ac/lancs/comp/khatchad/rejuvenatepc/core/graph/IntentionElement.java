@@ -29,11 +29,20 @@ public abstract class IntentionElement<E> implements Serializable {
 	 */
 	private static final String ENABLED = "enabled";
 
-	private final PropertyChangeSupport changes = new PropertyChangeSupport(
-			this);
+	/**
+	 * Created when the first listener is added; elements that are never
+	 * inserted as dynamic facts do not need it.
+	 */
+	private PropertyChangeSupport changes;
 
 	private boolean enabled;
 
+	/**
+	 * The position of this element in the graph that owns it, or -1 if it
+	 * does not belong to a graph (e.g., pattern elements).
+	 */
+	private int ordinal = -1;
+
 	/**
 	 * 
 	 */
@@ -42,13 +51,15 @@ public abstract class IntentionElement<E> implements Serializable {
 	}
 
 	public void addPropertyChangeListener(final PropertyChangeListener l) {
+		if (this.changes == null)
+			this.changes = new PropertyChangeSupport(this);
 		this.changes.addPropertyChangeListener(l);
 	}
 
 	public void disable() {
 		final boolean oldState = this.enabled;
 		this.enabled = false;
-		if (oldState != this.enabled)
+		if (oldState != this.enabled && this.changes != null)
 			this.changes.firePropertyChange(new PropertyChangeEvent(this,
 					ENABLED, oldState, this.enabled));
 	}
@@ -60,11 +71,36 @@ public abstract class IntentionElement<E> implements Serializable {
 	public void enable() {
 		final boolean oldState = this.enabled;
 		this.enabled = true;
-		if (oldState != this.enabled)
+		if (oldState != this.enabled && this.changes != null)
 			this.changes.firePropertyChange(new PropertyChangeEvent(this,
 					ENABLED, oldState, this.enabled));
 	}
 
+	/**
+	 * Sets the enabled flag without notifying the listeners.
+	 * 
+	 * @param enabled
+	 */
+	void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return the position of this element in the graph that owns it, or -1
+	 *         if it does not belong to a graph.
+	 */
+	public int getOrdinal() {
+		return this.ordinal;
+	}
+
+	/**
+	 * @param ordinal
+	 *            the position of this element in the graph that owns it.
+	 */
+	void setOrdinal(final int ordinal) {
+		this.ordinal = ordinal;
+	}
+
 	/**
 	 * @return the enabled
 	 */
@@ -73,7 +109,8 @@ public abstract class IntentionElement<E> implements Serializable {
 	}
 
 	public void removePropertyChangeListener(final PropertyChangeListener l) {
-		this.changes.removePropertyChangeListener(l);
+		if (this.changes != null)
+			this.changes.removePropertyChangeListener(l);
 	}
 
 	@Override
@@ -3,13 +3,27 @@
  */
 package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.ajdt.core.javaelements.AJCodeElement;
 import org.eclipse.ajdt.core.javaelements.AdviceElement;
@@ -18,6 +32,7 @@ import org.eclipse.ajdt.core.javaelements.IAJCodeElement;
 import org.eclipse.ajdt.core.model.AJRelationship;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IMethod;
@@ -50,58 +65,100 @@ public class IntentionGraph {
 
 	private Map<IElement, IntentionNode<IElement>> elementToNodeMap = new LinkedHashMap<IElement, IntentionNode<IElement>>();
 
-	private void buildNodes(IProgressMonitor monitor) {
-		monitor.beginTask("Building Intention Nodes", database.getAllElements()
-				.size());
+	/**
+	 * The nodes and arcs of the graph, indexed by ordinal.
+	 */
+	private final ElementIndex index = new ElementIndex();
+
+	/**
+	 * The ordinals of the elements whose enabled flag is currently set.
+	 */
+	private BitSet appliedEnablement = new BitSet();
+
+	/**
+	 * The enablement when the current batch began, or <code>null</code> if
+	 * no batch is in progress.
+	 */
+	private BitSet batchEnablement;
+
+	private void buildNodes(Collection<IElement> elements,
+			IProgressMonitor monitor) {
+		monitor.beginTask("Building Intention Nodes", elements.size());
 
-		for (final IElement elem : database.getAllElements()) {
+		for (final IElement elem : elements) {
 			IntentionNode<IElement> node = new IntentionNode<IElement>(elem);
 			this.nodeSet.add(node);
 			this.elementToNodeMap.put(elem, node);
+			this.register(node);
 			monitor.worked(1);
 		}
 		monitor.done();
 	}
 
+	/**
+	 * @return a read-only view of all nodes and arcs, in ordinal order.
+	 */
 	public Set<IntentionElement<IElement>> flatten() {
-		final Set<IntentionElement<IElement>> ret = new LinkedHashSet<IntentionElement<IElement>>();
-		for (final IntentionNode<IElement> node : this.getNodes()) {
-			ret.add(node);
-			for (final IntentionArc<IElement> edge : node.getArcs())
-				ret.add(edge);
-		}
-		return ret;
+		this.materialize();
+		return this.index.getElements();
+	}
+
+	/**
+	 * Makes sure every node and arc of the graph has been created and
+	 * registered. Storages that create elements lazily override this.
+	 */
+	protected void materialize() {
 	}
 
+	/**
+	 * The relations from which intention arcs can be built, in the order in
+	 * which they are added to each node.
+	 */
+	private static final Relation[] ARC_RELATIONS = { Relation.GETS,
+			Relation.SETS, Relation.CALLS, Relation.OVERRIDES,
+			Relation.IMPLEMENTS_METHOD, Relation.DECLARES_METHOD,
+			Relation.DECLARES_FIELD, Relation.DECLARES_TYPE,
+			Relation.EXTENDS_CLASS, Relation.EXTENDS_INTERFACES,
+			Relation.IMPLEMENTS_INTERFACE, Relation.CONTAINS, Relation.ANNOTATES,
+			Relation.ADVISES };
+
+	/**
+	 * The number of work units handed to each worker thread when building arcs
+	 * concurrently. Smaller chunks balance better across uneven nodes.
+	 */
+	private static final int CHUNKS_PER_THREAD = 8;
+
+	/**
+	 * @return the relations from which arcs are built by default, i.e., all
+	 *         the relations a graph supports.
+	 */
+	public static EnumSet<Relation> getDefaultRelations() {
+		return EnumSet.copyOf(Arrays.asList(ARC_RELATIONS));
+	}
+
+	/**
+	 * @return the relations of the join points an advice may select, i.e.,
+	 *         those from which the suggested arc queries are seeded.
+	 */
+	public static EnumSet<Relation> getJoinPointRelations() {
+		return EnumSet.of(Relation.CALLS, Relation.GETS, Relation.SETS);
+	}
+
+	/**
+	 * The relations from which the arcs of this graph are built, in the order
+	 * of {@link #ARC_RELATIONS}.
+	 */
+	private final Relation[] arcRelations;
+
 	private void buildArcs(IProgressMonitor monitor) {
 
 		monitor.beginTask("Building Intention Arcs", this.nodeSet.size());
 		Set<IntentionNode<IElement>> nodesToAdd = new LinkedHashSet<IntentionNode<IElement>>();
 		for (IntentionNode<IElement> node : this.nodeSet) {
 			// now make the edges.
-			nodesToAdd.addAll(this.makeArcs(node, database, Relation.GETS));
-			nodesToAdd.addAll(this.makeArcs(node, database, Relation.SETS));
-			nodesToAdd.addAll(this.makeArcs(node, database, Relation.CALLS));
-			nodesToAdd
-					.addAll(this.makeArcs(node, database, Relation.OVERRIDES));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.IMPLEMENTS_METHOD));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.DECLARES_METHOD));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.DECLARES_FIELD));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.DECLARES_TYPE));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.EXTENDS_CLASS));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.EXTENDS_INTERFACES));
-			nodesToAdd.addAll(this.makeArcs(node, database,
-					Relation.IMPLEMENTS_INTERFACE));
-			nodesToAdd.addAll(this.makeArcs(node, database, Relation.CONTAINS));
-			nodesToAdd
-					.addAll(this.makeArcs(node, database, Relation.ANNOTATES));
-			nodesToAdd.addAll(this.makeArcs(node, database, Relation.ADVISES));
+			for (final Relation relation : this.arcRelations)
+				nodesToAdd.addAll(this.makeArcs(node, relation, this.database
+						.getRange(node.getElem(), relation)));
 
 			monitor.worked(1);
 		}
@@ -109,19 +166,205 @@ public class IntentionGraph {
 		monitor.done();
 	}
 
+	/**
+	 * Builds the arcs of the graph by resolving the fact database ranges of the
+	 * nodes on a pool of worker threads. The ranges are merged into the graph
+	 * on the calling thread in node order, so the resulting graph is identical
+	 * to the one built by {@link #buildArcs(IProgressMonitor)}.
+	 * 
+	 * @param monitor
+	 */
+	private void buildArcsConcurrently(IProgressMonitor monitor) {
+		final List<IntentionNode<IElement>> nodes = new ArrayList<IntentionNode<IElement>>(
+				this.nodeSet);
+
+		monitor.beginTask("Building Intention Arcs", nodes.size());
+
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final int chunkSize = Math.max(1, nodes.size()
+				/ (threads * CHUNKS_PER_THREAD));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<List<Set<IElement>>>> chunks = new ArrayList<Future<List<Set<IElement>>>>();
+			for (int start = 0; start < nodes.size(); start += chunkSize)
+				chunks.add(executor.submit(new RangeResolver(nodes.subList(
+						start, Math.min(start + chunkSize, nodes.size())))));
+
+			Set<IntentionNode<IElement>> nodesToAdd = new LinkedHashSet<IntentionNode<IElement>>();
+			int index = 0;
+			for (final Future<List<Set<IElement>>> chunk : chunks) {
+				final Iterator<Set<IElement>> ranges = chunk.get().iterator();
+				while (ranges.hasNext()) {
+					final IntentionNode<IElement> node = nodes.get(index++);
+					for (final Relation relation : this.arcRelations)
+						nodesToAdd.addAll(this.makeArcs(node, relation, ranges
+								.next()));
+					monitor.worked(1);
+				}
+			}
+			this.nodeSet.addAll(nodesToAdd);
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while building intention arcs.", e);
+		}
+		catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(
+					"Unable to build intention arcs.", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Resolves, for a chunk of nodes, the range of every arc relation. The
+	 * result holds one set per node and relation, in the order of the chunk
+	 * and of {@link #arcRelations}.
+	 */
+	private class RangeResolver implements Callable<List<Set<IElement>>> {
+
+		private final List<IntentionNode<IElement>> nodes;
+
+		public RangeResolver(final List<IntentionNode<IElement>> nodes) {
+			this.nodes = nodes;
+		}
+
+		public List<Set<IElement>> call() {
+			final List<Set<IElement>> ret = new ArrayList<Set<IElement>>(
+					this.nodes.size() * IntentionGraph.this.arcRelations.length);
+			for (final IntentionNode<IElement> node : this.nodes)
+				for (final Relation relation : IntentionGraph.this.arcRelations)
+					ret.add(IntentionGraph.this.database.getRange(node
+							.getElem(), relation));
+			return ret;
+		}
+	}
+
 	private JayFX database;
 
-	public IntentionGraph(final JayFX database, final IProgressMonitor monitor) {
+	/**
+	 * Creates an empty graph over the given database. Used by alternative
+	 * graph storages that build their own nodes and arcs.
+	 * 
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 */
+	protected IntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations) {
 		this.database = database;
-		buildNodes(new SubProgressMonitor(monitor, -1));
-		buildArcs(new SubProgressMonitor(monitor, -1));
+		final List<Relation> arcRelationList = new ArrayList<Relation>();
+		for (final Relation relation : ARC_RELATIONS)
+			if (relations.contains(relation))
+				arcRelationList.add(relation);
+		if (arcRelationList.size() != relations.size())
+			throw new IllegalArgumentException(
+					"Arcs can only be built from the relations "
+							+ getDefaultRelations() + ", not " + relations
+							+ ".");
+		this.arcRelations = arcRelationList
+				.toArray(new Relation[arcRelationList.size()]);
+	}
+
+	public IntentionGraph(final JayFX database, final IProgressMonitor monitor) {
+		this(database, monitor, false);
+	}
+
+	/**
+	 * @param database
+	 * @param monitor
+	 * @param concurrent
+	 *            whether the arcs should be resolved on multiple threads.
+	 */
+	public IntentionGraph(final JayFX database,
+			final IProgressMonitor monitor, final boolean concurrent) {
+		this(database, getDefaultRelations(), monitor, concurrent);
+	}
+
+	/**
+	 * Builds a graph projected onto the given relations; arcs of any other
+	 * relation are neither built nor enabled.
+	 * 
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 * @param monitor
+	 */
+	public IntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations, final IProgressMonitor monitor) {
+		this(database, relations, monitor, false);
+	}
+
+	/**
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 * @param monitor
+	 * @param concurrent
+	 *            whether the arcs should be resolved on multiple threads.
+	 */
+	public IntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations, final IProgressMonitor monitor,
+			final boolean concurrent) {
+		this(database, relations, database.getAllElements(), monitor,
+				concurrent);
+	}
+
+	/**
+	 * Builds a graph over the given elements only, e.g., a
+	 * {@link Neighbourhood} of the advised elements. Elements outside of it
+	 * appear only as the targets of arcs.
+	 * 
+	 * @param database
+	 * @param relations
+	 *            the relations from which arcs are built.
+	 * @param elements
+	 *            the elements whose arcs are built.
+	 * @param monitor
+	 * @param concurrent
+	 *            whether the arcs should be resolved on multiple threads.
+	 */
+	public IntentionGraph(final JayFX database,
+			final EnumSet<Relation> relations,
+			final Collection<IElement> elements,
+			final IProgressMonitor monitor, final boolean concurrent) {
+		this(database, relations);
+		buildNodes(elements, new SubProgressMonitor(monitor, -1));
+		if (concurrent)
+			buildArcsConcurrently(new SubProgressMonitor(monitor, -1));
+		else
+			buildArcs(new SubProgressMonitor(monitor, -1));
 	}
 
 	public void enableElementsAccordingTo(final AdviceElement advisingElement,
 			final IProgressMonitor monitor) throws JavaModelException,
 			ConversionException {
+		this.applyOverlay(this.createOverlay(advisingElement,
+				new SubProgressMonitor(monitor, -1)), new SubProgressMonitor(
+				monitor, -1));
+	}
 
-		this.resetAllElements(new SubProgressMonitor(monitor, -1));
+	/**
+	 * Computes the elements enabled by the pointcut of the given advice
+	 * without changing the enabled state of the graph.
+	 * 
+	 * @param advisingElement
+	 * @param monitor
+	 * @return the overlay of the elements the advice enables.
+	 * @throws JavaModelException
+	 * @throws ConversionException
+	 */
+	public EnablementOverlay createOverlay(
+			final AdviceElement advisingElement, final IProgressMonitor monitor)
+			throws JavaModelException, ConversionException {
+
+		final EnablementOverlay ret = new EnablementOverlay();
 		
 		Collection<IJavaElement> advisedJavaElements = AJUtil.getAdvisedJavaElements(advisingElement);
 
@@ -129,22 +372,24 @@ public class IntentionGraph {
 				advisedJavaElements.size());
 
 		for (final IJavaElement advisedElement: advisedJavaElements) {
-			enableElementsAccordingTo(advisedElement, new SubProgressMonitor(
-					monitor, -1));
+			enableElementsAccordingTo(advisedElement, ret,
+					new SubProgressMonitor(monitor, -1));
 			monitor.worked(1);
 		}
 		monitor.done();
+		return ret;
 	}
 
 	/**
 	 * @param target
+	 * @param overlay
 	 * @param monitor
 	 * @throws ConversionException
 	 * @throws JavaModelException
 	 */
 	private void enableElementsAccordingTo(IJavaElement advisedElement,
-			IProgressMonitor monitor) throws ConversionException,
-			JavaModelException {
+			EnablementOverlay overlay, IProgressMonitor monitor)
+			throws ConversionException, JavaModelException {
 
 		switch (advisedElement.getElementType()) {
 
@@ -161,20 +406,15 @@ public class IntentionGraph {
 				if (toEnableElement == null)
 					throw new IllegalStateException("In trouble!");
 
-				if (!this.elementToNodeMap.containsKey(toEnableElement)) {
-					IntentionNode<IElement> newNode = new IntentionNode<IElement>(
-							toEnableElement);
-					this.elementToNodeMap.put(toEnableElement, newNode);
-					this.nodeSet.add(newNode);
-					//					throw new IllegalStateException(
-					//							"No target node found for element "
-					//									+ toEnableElement);
-				}
-
-				IntentionNode<IElement> toEnableNode = this.elementToNodeMap
-						.get(toEnableElement);
+				IntentionNode<IElement> toEnableNode = this
+						.getNode(toEnableElement);
+				if (toEnableNode == null)
+					toEnableNode = this.addNode(toEnableElement);
+				//					throw new IllegalStateException(
+				//							"No target node found for element "
+				//									+ toEnableElement);
 
-				toEnableNode.enable();
+				overlay.enable(toEnableNode);
 
 				break;
 			}
@@ -195,9 +435,11 @@ public class IntentionGraph {
 						if (toEnableElement == null)
 							throw new IllegalStateException("In trouble!");
 
-						IntentionNode<IElement> toEnableNode = this.elementToNodeMap
-								.get(toEnableElement);
-						toEnableNode.enable();
+						IntentionNode<IElement> toEnableNode = this
+								.getNode(toEnableElement);
+						// the constructor may not be in the graph.
+						if (toEnableNode != null)
+							overlay.enable(toEnableNode);
 
 					}
 
@@ -219,25 +461,25 @@ public class IntentionGraph {
 				switch (joinPointType) {
 					case FIELD_GET: {
 						this.enableElementsAccordingToFieldGet(source,
-								targetString, monitor);
+								targetString, overlay, monitor);
 						break;
 					}
 
 					case FIELD_SET: {
 						this.enableElementsAccordingToFieldSet(source,
-								targetString, monitor);
+								targetString, overlay, monitor);
 						break;
 					}
 
 					case METHOD_CALL: {
 						this.enableElementsAccordingToMethodCall(source,
-								targetString, monitor);
+								targetString, overlay, monitor);
 						break;
 					}
 
 					case CONSTRUCTOR_CALL: {
 						this.enableElementsAccordingToConstructorCall(source,
-								targetString, monitor);
+								targetString, overlay, monitor);
 						break;
 					}
 
@@ -258,42 +500,50 @@ public class IntentionGraph {
 	}
 
 	private void enableElementsAccordingToFieldGet(IJavaElement parent,
-			String targetString, IProgressMonitor monitor)
+			String targetString, EnablementOverlay overlay,
+			IProgressMonitor monitor)
 			throws ConversionException {
 		String fieldNameTargetString = transformTargetStringToFieldName(targetString);
 		this.enableElementsAccordingToRelation(parent, fieldNameTargetString,
-				IJavaSearchConstants.FIELD, Relation.GETS, monitor);
+				IJavaSearchConstants.FIELD, Relation.GETS, overlay, monitor);
 	}
 
 	private void enableElementsAccordingToFieldSet(IJavaElement parent,
-			String targetString, IProgressMonitor monitor)
+			String targetString, EnablementOverlay overlay,
+			IProgressMonitor monitor)
 			throws ConversionException {
 		String fieldNameTargetString = transformTargetStringToFieldName(targetString);
 		this.enableElementsAccordingToRelation(parent, fieldNameTargetString,
-				IJavaSearchConstants.FIELD, Relation.SETS, monitor);
+				IJavaSearchConstants.FIELD, Relation.SETS, overlay, monitor);
 	}
 
 	private void enableElementsAccordingToConstructorCall(IJavaElement parent,
-			String targetString, IProgressMonitor monitor)
+			String targetString, EnablementOverlay overlay,
+			IProgressMonitor monitor)
 			throws ConversionException {
 		String constructorNameTargetString = transformTargetStringToConstructorName(targetString);
 		this.enableElementsAccordingToRelation(parent,
 				constructorNameTargetString, IJavaSearchConstants.CONSTRUCTOR,
-				Relation.CALLS, monitor);
+				Relation.CALLS, overlay, monitor);
 	}
 
 	private void enableElementsAccordingToMethodCall(IJavaElement parent,
-			String targetString, IProgressMonitor monitor)
+			String targetString, EnablementOverlay overlay,
+			IProgressMonitor monitor)
 			throws ConversionException {
 		String methodNameTargetString = transformTargetStringToMethodName(targetString);
 		this.enableElementsAccordingToRelation(parent, methodNameTargetString,
-				IJavaSearchConstants.METHOD, Relation.CALLS, monitor);
+				IJavaSearchConstants.METHOD, Relation.CALLS, overlay, monitor);
 	}
 
 	private void enableElementsAccordingToRelation(IJavaElement parent,
 			String targetString, final int javaSearchConstant,
-			Relation relation, IProgressMonitor monitor)
-			throws ConversionException {
+			Relation relation, EnablementOverlay overlay,
+			IProgressMonitor monitor) throws ConversionException {
+
+		//the relation was projected out of this graph.
+		if (!this.hasRelation(relation))
+			return;
 
 		final SearchPattern pattern = SearchPattern.createPattern(targetString,
 				javaSearchConstant, IJavaSearchConstants.DECLARATIONS,
@@ -303,16 +553,11 @@ public class IntentionGraph {
 				SearchEngine.createWorkspaceScope(), monitor);
 
 		IElement sourceElement = this.database.convertToElement(parent);
-		if (!this.elementToNodeMap.containsKey(sourceElement)) {
-			IntentionNode<IElement> newNode = new IntentionNode<IElement>(
-					sourceElement);
-			this.elementToNodeMap.put(sourceElement, newNode);
-			this.nodeSet.add(newNode);
-			//			throw new IllegalStateException("Can't find node for IElement "
-			//					+ sourceElement);
-		}
-		IntentionNode<IElement> sourceNode = this.elementToNodeMap
-				.get(sourceElement);
+		IntentionNode<IElement> sourceNode = this.getNode(sourceElement);
+		if (sourceNode == null)
+			sourceNode = this.addNode(sourceElement);
+		//			throw new IllegalStateException("Can't find node for IElement "
+		//					+ sourceElement);
 
 		for (final SearchMatch match : results) {
 
@@ -320,16 +565,11 @@ public class IntentionGraph {
 					.convertToElement((IJavaElement) match.getElement());
 
 			//find the edge connecting the source to the target and enable it.
-			if (!this.elementToNodeMap.containsKey(targetElement)) {
-				IntentionNode<IElement> newNode = new IntentionNode<IElement>(
-						targetElement);
-				this.elementToNodeMap.put(targetElement, newNode);
-				this.nodeSet.add(newNode);
-				//				throw new IllegalStateException("Can't find node for IElement "
-				//						+ targetElement);
-			}
-			IntentionNode<IElement> targetNode = this.elementToNodeMap
-					.get(targetElement);
+			IntentionNode<IElement> targetNode = this.getNode(targetElement);
+			if (targetNode == null)
+				targetNode = this.addNode(targetElement);
+			//				throw new IllegalStateException("Can't find node for IElement "
+			//						+ targetElement);
 
 			IntentionArc<IElement> arcToEnable = sourceNode.getArc(targetNode,
 					relation);
@@ -340,9 +580,9 @@ public class IntentionGraph {
 				//								+ " and relation " + relation);
 				arcToEnable = new IntentionArc<IElement>(sourceNode,
 						targetNode, relation);
-				sourceNode.addArc(arcToEnable);
+				this.addArc(arcToEnable);
 			}
-			arcToEnable.enable();
+			overlay.enable(arcToEnable);
 		}
 	}
 
@@ -372,79 +612,472 @@ public class IntentionGraph {
 	}
 
 	private void resetAllElements(IProgressMonitor monitor) {
-		// reset all elements.	
-		Set<IntentionElement<IElement>> allElements = this.flatten();
-		monitor.beginTask("Disabling intention elements.", allElements.size());
-		for (final IntentionElement<IElement> elem : allElements) {
-			elem.disable();
+		this.applyOverlay(new EnablementOverlay(), monitor);
+	}
+
+	/**
+	 * Sets the enabled flag of exactly the elements enabled in the given
+	 * overlay, so that {@link IntentionElement#isEnabled()} answers as the
+	 * overlay does until another one is applied. Only the elements whose state
+	 * differs from the currently applied overlay are touched.
+	 * 
+	 * @param overlay
+	 * @param monitor
+	 */
+	public void applyOverlay(final EnablementOverlay overlay,
+			final IProgressMonitor monitor) {
+		final BitSet changed = (BitSet) this.appliedEnablement.clone();
+		changed.xor(overlay.getBits());
+		monitor.beginTask("Applying enablement overlay.", changed
+				.cardinality());
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed
+				.nextSetBit(i + 1)) {
+			final IntentionElement<IElement> elem = this.index.get(i);
+			//the element was removed from the graph.
+			if (elem == null)
+				continue;
+			if (this.batchEnablement != null)
+				elem.setEnabled(overlay.getBits().get(i));
+			else if (overlay.getBits().get(i))
+				elem.enable();
+			else
+				elem.disable();
 			monitor.worked(1);
 		}
+		this.appliedEnablement = (BitSet) overlay.getBits().clone();
+		this.appliedEnablement.and(this.index.getBits());
 		monitor.done();
 	}
 
+	/**
+	 * Starts a batch of enablement changes. Until the batch ends, elements are
+	 * enabled and disabled without notifying their listeners.
+	 */
+	public void beginEnablementBatch() {
+		if (this.batchEnablement != null)
+			throw new IllegalStateException(
+					"An enablement batch is already in progress.");
+		this.batchEnablement = (BitSet) this.appliedEnablement.clone();
+	}
+
+	/**
+	 * Ends the current batch of enablement changes.
+	 * 
+	 * @return the elements whose enabled flag differs from when the batch
+	 *         began, in ordinal order. Their listeners were not notified.
+	 */
+	public Set<IntentionElement<IElement>> endEnablementBatch() {
+		if (this.batchEnablement == null)
+			throw new IllegalStateException(
+					"No enablement batch is in progress.");
+		final BitSet changed = this.batchEnablement;
+		this.batchEnablement = null;
+		changed.xor(this.appliedEnablement);
+		return this.getEnabledElements(new EnablementOverlay(changed));
+	}
+
+	/**
+	 * @return a copy of the currently applied overlay.
+	 */
+	public EnablementOverlay getAppliedOverlay() {
+		return new EnablementOverlay(this.appliedEnablement);
+	}
+
+	/**
+	 * @return the elements enabled in the currently applied overlay, in
+	 *         ordinal order.
+	 */
 	public Set<IntentionElement<IElement>> getEnabledElements() {
+		return this.getEnabledElements(this.getAppliedOverlay());
+	}
+
+	/**
+	 * @param overlay
+	 * @return the elements enabled in the given overlay, in ordinal order.
+	 */
+	public Set<IntentionElement<IElement>> getEnabledElements(
+			final EnablementOverlay overlay) {
 		final Set<IntentionElement<IElement>> ret = new LinkedHashSet<IntentionElement<IElement>>();
-		for (final IntentionNode<IElement> node : this.getNodes()) {
-			if (node.isEnabled())
-				ret.add(node);
-			for (final IntentionArc<IElement> arc : node.getArcs())
-				if (arc.isEnabled())
-					ret.add(arc);
-		}
+		final BitSet bits = overlay.getBits();
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+			if (this.index.get(i) != null)
+				ret.add(this.index.get(i));
 		return ret;
 	}
 
+	/**
+	 * @return the number of elements enabled in the currently applied
+	 *         overlay.
+	 */
+	public int getEnabledElementCount() {
+		return this.appliedEnablement.cardinality();
+	}
+
 	public Collection<IntentionNode<IElement>> getNodes() {
 		return this.nodeSet;
 	}
 
-	public String getProlog(final IProgressMonitor monitor) {
-		final StringBuilder ret = new StringBuilder();
-		monitor.beginTask("Writing nodes", this.nodeSet.size());
-		for (final IntentionNode<IElement> node : this.nodeSet) {
-			final SubProgressMonitor subMonitor = new SubProgressMonitor(
-					monitor, -1);
-			subMonitor.beginTask("Writing arcs", node.getArcs().size());
-			for (final IntentionArc<IElement> edge : node.getArcs()) {
-				ret.append(edge.getType().toString().toLowerCase());
-				ret.append('(');
-				ret.append("'" + edge.getFromNode().getElem() + "'");
-				ret.append(',');
-				ret.append("'" + edge.getToNode().getElem() + "'");
-				ret.append(')');
-				ret.append(". ");
-				subMonitor.worked(1);
+	/**
+	 * @param elem
+	 * @return the node representing the given element, or <code>null</code>
+	 *         if the element is not in the graph.
+	 */
+	public IntentionNode<IElement> getNode(final IElement elem) {
+		return this.elementToNodeMap.get(elem);
+	}
+
+	/*
+	 * The pattern engines walk the graph by node number so that a graph may
+	 * only create the nodes and arcs they end up reporting. The nodes of this
+	 * graph are numbered by their ordinals.
+	 */
+
+	/**
+	 * @return a number greater than every node number.
+	 */
+	public int getIdBound() {
+		return this.index.getOrdinalBound();
+	}
+
+	/**
+	 * @param from
+	 * @return the first node number from the given one on, or -1 if there is
+	 *         none.
+	 */
+	public int nextId(final int from) {
+		return this.index.getNodeBits().nextSetBit(from);
+	}
+
+	/**
+	 * @param elem
+	 * @return the node number of the given element, or -1 if it is not in the
+	 *         graph.
+	 */
+	public int getId(final IElement elem) {
+		final IntentionNode<IElement> node = this.getNode(elem);
+		return node == null ? -1 : node.getOrdinal();
+	}
+
+	/**
+	 * @param id
+	 * @return the program element of the given node.
+	 */
+	public IElement getElement(final int id) {
+		return this.getNode(id).getElem();
+	}
+
+	/**
+	 * @param id
+	 * @return the node with the given number, along with its arcs, or
+	 *         <code>null</code> if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public IntentionNode<IElement> getNode(final int id) {
+		return this.index.getNodeBits().get(id) ? (IntentionNode<IElement>) this.index
+				.get(id)
+				: null;
+	}
+
+	/**
+	 * @param id
+	 * @return the node with the given number, whose arcs may not have been
+	 *         created yet, or <code>null</code> if there is none.
+	 */
+	IntentionNode<IElement> getShell(final int id) {
+		return this.getNode(id);
+	}
+
+	/**
+	 * @param id
+	 * @param relation
+	 * @return the node numbers of the targets of the arcs of the given node
+	 *         and relation.
+	 */
+	public int[] getTargets(final int id, final Relation relation) {
+		final Set<IntentionArc<IElement>> arcs = this.getNode(id).getArcs(
+				relation);
+		final int[] ret = new int[arcs.size()];
+		int size = 0;
+		for (final IntentionArc<IElement> arc : arcs)
+			// the target may have been removed from the graph.
+			if (this.getNode(arc.getToNode().getOrdinal()) == arc.getToNode())
+				ret[size++] = arc.getToNode().getOrdinal();
+		if (size == ret.length)
+			return ret;
+		final int[] trimmed = new int[size];
+		System.arraycopy(ret, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	/**
+	 * @param from
+	 * @param relation
+	 * @param to
+	 * @return the arc of the given relation between the given nodes, or
+	 *         <code>null</code> if there is none.
+	 */
+	public IntentionArc<IElement> getArc(final int from,
+			final Relation relation, final int to) {
+		final IntentionNode<IElement> toNode = this.getShell(to);
+		return toNode == null ? null : this.getNode(from).getArc(toNode,
+				relation);
+	}
+
+	/**
+	 * Adds a new node representing the given element to the graph.
+	 * 
+	 * @param elem
+	 * @return the new node.
+	 */
+	protected IntentionNode<IElement> addNode(final IElement elem) {
+		final IntentionNode<IElement> node = new IntentionNode<IElement>(elem);
+		this.elementToNodeMap.put(elem, node);
+		this.nodeSet.add(node);
+		this.register(node);
+		return node;
+	}
+
+	/**
+	 * Adds the given arc to its source node.
+	 * 
+	 * @param arc
+	 */
+	protected void addArc(final IntentionArc<IElement> arc) {
+		arc.getFromNode().addArc(arc);
+		this.register(arc);
+	}
+
+	/**
+	 * Assigns the next ordinal to the given element.
+	 * 
+	 * @param elem
+	 */
+	protected void register(final IntentionElement<IElement> elem) {
+		this.index.add(elem);
+	}
+
+	/**
+	 * Removes the given node from the graph along with its outgoing arcs.
+	 * 
+	 * @param node
+	 */
+	protected void removeNode(final IntentionNode<IElement> node) {
+		for (final IntentionArc<IElement> arc : new ArrayList<IntentionArc<IElement>>(
+				node.getArcs()))
+			this.removeArc(arc);
+		this.elementToNodeMap.remove(node.getElem());
+		this.nodeSet.remove(node);
+		this.unregister(node);
+	}
+
+	/**
+	 * Removes the given arc from its source node.
+	 * 
+	 * @param arc
+	 */
+	protected void removeArc(final IntentionArc<IElement> arc) {
+		arc.getFromNode().removeArc(arc);
+		this.unregister(arc);
+	}
+
+	private void unregister(final IntentionElement<IElement> elem) {
+		this.appliedEnablement.clear(elem.getOrdinal());
+		this.index.remove(elem);
+	}
+
+	/**
+	 * Brings the graph up to date with its database after the relations of
+	 * the given elements changed, e.g., those returned by
+	 * {@link JayFX#update(Collection, IProgressMonitor)}. The arcs of each
+	 * element are made to match the database again, and the nodes of the
+	 * elements no longer in the database are removed.
+	 * 
+	 * @param elements
+	 * @param monitor
+	 */
+	public void update(final Collection<IElement> elements,
+			final IProgressMonitor monitor) {
+		monitor.beginTask("Updating Intention Graph", elements.size());
+		final Set<IElement> databaseElements = this.database.getAllElements();
+		for (final IElement elem : elements) {
+			IntentionNode<IElement> node = this.getNode(elem);
+			if (!databaseElements.contains(elem)) {
+				if (node != null)
+					this.removeNode(node);
+			}
+			else {
+				if (node == null)
+					node = this.addNode(elem);
+				this.updateArcs(node, databaseElements);
 			}
 			monitor.worked(1);
 		}
+		monitor.done();
+	}
+
+	/**
+	 * Removes the arcs of the given node that are no longer in the database
+	 * and adds the ones that are missing. Arcs to elements the database no
+	 * longer contains are never added.
+	 * 
+	 * @param node
+	 * @param databaseElements
+	 *            the elements of the database.
+	 */
+	private void updateArcs(final IntentionNode<IElement> node,
+			final Set<IElement> databaseElements) {
+		final Map<Relation, Set<IElement>> ranges = new EnumMap<Relation, Set<IElement>>(
+				Relation.class);
+		for (final Relation relation : this.arcRelations)
+			ranges.put(relation, this.database.getRange(node.getElem(),
+					relation));
+
+		for (final IntentionArc<IElement> arc : new ArrayList<IntentionArc<IElement>>(
+				node.getArcs())) {
+			final Set<IElement> range = ranges.get(arc.getType());
+			if (range != null && !range.remove(arc.getToNode().getElem()))
+				this.removeArc(arc);
+		}
+
+		// what is left are the arcs to add.
+		for (final Relation relation : this.arcRelations)
+			for (final IElement toElement : ranges.get(relation)) {
+				if (!databaseElements.contains(toElement))
+					continue;
+				IntentionNode<IElement> toNode = this.getNode(toElement);
+				if (toNode == null)
+					toNode = this.addNode(toElement);
+				this.addArc(new IntentionArc<IElement>(node, toNode, relation));
+			}
+	}
+
+	/**
+	 * @return a number that changes whenever a node or arc is added to or
+	 *         removed from the graph.
+	 */
+	public int getVersion() {
+		return this.index.getVersion();
+	}
+
+	public String getProlog(final IProgressMonitor monitor) {
+		final StringWriter ret = new StringWriter();
+		try {
+			this.writeProlog(ret, null, false, monitor);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
 		return ret.toString();
 	}
 
 	public String toDotFormat() {
-		final StringBuilder ret = new StringBuilder();
-		ret.append("digraph {");
-		ret.append('\n');
-		for (final IntentionNode<IElement> node : this.nodeSet) {
-			ret.append('\t');
-			ret.append(node.toDotFormat());
-			ret.append('\n');
+		final StringWriter ret = new StringWriter();
+		try {
+			this.writeDotFormat(ret, null, false, new NullProgressMonitor());
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
 		}
-		ret.append('}');
 		return ret.toString();
 	}
 
+	/**
+	 * Writes the arcs of the graph as Prolog facts, one per line, as the
+	 * nodes are iterated, so that the graph is never held as a string.
+	 * 
+	 * @param out
+	 *            where to write. Should be buffered.
+	 * @param elements
+	 *            the elements whose nodes are written, e.g., the
+	 *            {@link Neighbourhood} of an advice, or <code>null</code> for
+	 *            all of them. Arcs are written when both of their nodes are.
+	 * @param enabledOnly
+	 *            whether to only write enabled nodes and arcs.
+	 * @param monitor
+	 * @throws IOException
+	 */
+	public void writeProlog(final Writer out, final Set<IElement> elements,
+			final boolean enabledOnly, final IProgressMonitor monitor)
+			throws IOException {
+		final Collection<IntentionNode<IElement>> nodes = this.getNodes();
+		monitor.beginTask("Writing facts", nodes.size());
+		for (final IntentionNode<IElement> node : nodes) {
+			if (isExported(node, elements, enabledOnly))
+				for (final IntentionArc<IElement> arc : node.getArcs())
+					if (isExported(arc, elements, enabledOnly)) {
+						arc.writeProlog(out);
+						out.write('\n');
+					}
+			monitor.worked(1);
+		}
+		out.flush();
+		monitor.done();
+	}
+
+	/**
+	 * Writes the graph in the DOT format as the nodes are iterated, so that
+	 * the graph is never held as a string.
+	 * 
+	 * @param out
+	 *            where to write. Should be buffered.
+	 * @param elements
+	 *            the elements whose nodes are written, e.g., the
+	 *            {@link Neighbourhood} of an advice, or <code>null</code> for
+	 *            all of them. Arcs are written when both of their nodes are.
+	 * @param enabledOnly
+	 *            whether to only write enabled nodes and arcs.
+	 * @param monitor
+	 * @throws IOException
+	 */
+	public void writeDotFormat(final Writer out, final Set<IElement> elements,
+			final boolean enabledOnly, final IProgressMonitor monitor)
+			throws IOException {
+		final Collection<IntentionNode<IElement>> nodes = this.getNodes();
+		monitor.beginTask("Writing nodes", nodes.size());
+		out.write("digraph {\n");
+		for (final IntentionNode<IElement> node : nodes) {
+			if (isExported(node, elements, enabledOnly)) {
+				out.write('\t');
+				node.writeDotFormat(out);
+				out.write('\n');
+				for (final IntentionArc<IElement> arc : node.getArcs())
+					if (isExported(arc, elements, enabledOnly)) {
+						out.write('\t');
+						arc.writeDotFormat(out);
+						out.write('\n');
+					}
+			}
+			monitor.worked(1);
+		}
+		out.write("}\n");
+		out.flush();
+		monitor.done();
+	}
+
+	private static boolean isExported(final IntentionNode<IElement> node,
+			final Set<IElement> elements, final boolean enabledOnly) {
+		return (!enabledOnly || node.isEnabled())
+				&& (elements == null || elements.contains(node.getElem()));
+	}
+
+	private static boolean isExported(final IntentionArc<IElement> arc,
+			final Set<IElement> elements, final boolean enabledOnly) {
+		return (!enabledOnly || arc.isEnabled())
+				&& isExported(arc.getToNode(), elements, enabledOnly);
+	}
+
 	private Set<IntentionNode<IElement>> makeArcs(
-			final IntentionNode<IElement> fromNode, JayFX database,
-			final Relation relation) {
+			final IntentionNode<IElement> fromNode, final Relation relation,
+			final Set<IElement> range) {
 		Set<IntentionNode<IElement>> ret = new LinkedHashSet<IntentionNode<IElement>>();
 
-		for (final IElement toElement : database.getRange(fromNode.getElem(),
-				relation)) {
+		for (final IElement toElement : range) {
 
 			if (!this.elementToNodeMap.containsKey(toElement)) {
 				IntentionNode<IElement> node = new IntentionNode<IElement>(
 						toElement);
 				this.elementToNodeMap.put(toElement, node);
+				this.register(node);
 				ret.add(node);
 			}
 
@@ -453,7 +1086,7 @@ public class IntentionGraph {
 			final IntentionArc<IElement> arc = new IntentionArc<IElement>(
 					fromNode, toNode, relation);
 
-			fromNode.addArc(arc);
+			this.addArc(arc);
 		}
 
 		return ret;
@@ -462,61 +1095,113 @@ public class IntentionGraph {
 	public void enableElementsAccordingTo(
 			Collection<IJavaElement> advisedElements, IProgressMonitor monitor)
 			throws JavaModelException, ConversionException {
+		this.applyOverlay(this.createOverlay(advisedElements,
+				new SubProgressMonitor(monitor, -1)), new SubProgressMonitor(
+				monitor, -1));
+	}
+
+	/**
+	 * Computes the elements enabled by the given advised elements without
+	 * changing the enabled state of the graph.
+	 * 
+	 * @param advisedElements
+	 * @param monitor
+	 * @return the overlay of the elements to enable.
+	 * @throws JavaModelException
+	 * @throws ConversionException
+	 */
+	public EnablementOverlay createOverlay(
+			Collection<IJavaElement> advisedElements, IProgressMonitor monitor)
+			throws JavaModelException, ConversionException {
 
-		this.resetAllElements(new SubProgressMonitor(monitor, -1));
+		final EnablementOverlay ret = new EnablementOverlay();
 		
 		monitor.beginTask("Enabling graph according the advised elements.",
 				advisedElements.size());
 
 		for (IJavaElement elem : advisedElements) {
-			this.enableElementsAccordingTo(elem, new SubProgressMonitor(
+			this.enableElementsAccordingTo(elem, ret, new SubProgressMonitor(
 					monitor, -1));
 			monitor.worked(1);
 		}
+		monitor.done();
+		return ret;
 	}
 
 	/**
-	 * @return
+	 * @return a read-only view of all nodes and arcs, in ordinal order.
 	 */
 	public Collection<IntentionElement<IElement>> getAllElements() {
-		final Set<IntentionElement<IElement>> ret = new LinkedHashSet<IntentionElement<IElement>>();
-		for (final IntentionNode<IElement> node : this.getNodes()) {
-			ret.add(node);
-			for (final IntentionArc<IElement> arc : node.getArcs())
-				ret.add(arc);
-		}
-		return ret;
+		return this.flatten();
 	}
 	
+	/**
+	 * @return a read-only view of the advisable nodes and arcs, in ordinal
+	 *         order.
+	 */
 	public Collection<IntentionElement<IElement>> getAllAdvisableElements() {
-		final Set<IntentionElement<IElement>> ret = new LinkedHashSet<IntentionElement<IElement>>();
-		for (final IntentionNode<IElement> node : this.getNodes()) {
-			if ( node.isAdvisable() )
-				ret.add(node);
-			for (final IntentionArc<IElement> arc : node.getArcs())
-				if ( arc.isAdvisable() )
-					ret.add(arc);
-		}
-		return ret;
+		this.materialize();
+		return this.index.getAdvisableElements();
+	}
+
+	/**
+	 * @return the number of nodes and arcs.
+	 */
+	public int getElementCount() {
+		this.materialize();
+		return this.index.size();
+	}
+
+	/**
+	 * @return the number of advisable nodes and arcs.
+	 */
+	public int getAdvisableElementCount() {
+		this.materialize();
+		return this.index.getAdvisableCount();
 	}
 
 	/**
 	 * @param subProgressMonitor
 	 */
 	public void enableAllElements(IProgressMonitor monitor) {
-		Collection<IntentionElement<IElement>> allElements = this.getAllElements();
-		monitor.beginTask("Enabling all graph elements.", allElements.size());
-		for ( IntentionElement elem : allElements )
-			elem.enable();
-		monitor.done();
+		this.materialize();
+		EnablementOverlay overlay = new EnablementOverlay(this.index.getBits());
+		monitor.setTaskName("Enabling all graph elements.");
+		this.applyOverlay(overlay, monitor);
 	}
 	
 	public void enableAllAdvisableElements(IProgressMonitor monitor) {
-		Collection<IntentionElement<IElement>> allAdvisableElements = this.getAllAdvisableElements();
-		monitor.beginTask("Enabling all advisable graph elements.", allAdvisableElements.size());
-		for ( IntentionElement elem : allAdvisableElements )
-			elem.enable();
-		monitor.done();
+		this.materialize();
+		EnablementOverlay overlay = new EnablementOverlay(this.index
+				.getAdvisableBits());
+		monitor.setTaskName("Enabling all advisable graph elements.");
+		this.applyOverlay(overlay, monitor);
+	}
+
+	/**
+	 * @return the relations from which the arcs of this graph are built.
+	 */
+	public EnumSet<Relation> getRelations() {
+		return EnumSet.copyOf(Arrays.asList(this.arcRelations));
+	}
+
+	/**
+	 * @return the relations from which the arcs of this graph are built, in
+	 *         the order they are added to each node. Not to be modified.
+	 */
+	protected Relation[] getArcRelations() {
+		return this.arcRelations;
+	}
+
+	/**
+	 * @param relation
+	 * @return whether arcs of the given relation are part of this graph.
+	 */
+	public boolean hasRelation(final Relation relation) {
+		for (final Relation arcRelation : this.arcRelations)
+			if (arcRelation == relation)
+				return true;
+		return false;
 	}
 
 	public JayFX getDatabase() {
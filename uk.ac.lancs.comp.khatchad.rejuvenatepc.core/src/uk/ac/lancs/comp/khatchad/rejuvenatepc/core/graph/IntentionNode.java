@@ -3,8 +3,12 @@
  */
 package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -39,17 +43,18 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 
 	private E elem;
 	
-	private final Set<IntentionArc<E>> arcs = new HashSet<IntentionArc<E>>();
+	/**
+	 * The outgoing arcs, created on the first arc added since most nodes of a
+	 * large graph have none.
+	 */
+	private Set<IntentionArc<E>> arcs;
 	
-	private final Map<Relation, Set<IntentionArc<E>>> relationToArcSetMap = new LinkedHashMap<Relation, Set<IntentionArc<E>>>();
+	/**
+	 * The outgoing arcs by relation, created on the first arc added.
+	 */
+	private Map<Relation, Set<IntentionArc<E>>> relationToArcSetMap;
 	
 	private IntentionNode() {
-		initializeRelationToArcSetMap();
-	}
-	
-	private void initializeRelationToArcSetMap() {
-		for ( Relation relation : Relation.values() )
-			this.relationToArcSetMap.put(relation, new LinkedHashSet<IntentionArc<E>>());
 	}
 
 	/**
@@ -77,13 +82,17 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 		super(xmlElem);
 		Element elementXML = xmlElem.getChild(IElement.class.getSimpleName());
 		this.elem = FlyweightElementFactory.getElement(elementXML);
-		initializeRelationToArcSetMap();
 	}
 
 	/**
 	 * @param intentionNode
 	 */
 	public void addArc(final IntentionArc<E> intentionArc) {
+		if ( this.arcs == null ) {
+			this.arcs = new HashSet<IntentionArc<E>>();
+			this.relationToArcSetMap = new EnumMap<Relation, Set<IntentionArc<E>>>(Relation.class);
+		}
+		
 		this.arcs.add(intentionArc);
 		
 		if ( !this.relationToArcSetMap.containsKey(intentionArc.getType()) )
@@ -92,6 +101,20 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 		this.relationToArcSetMap.get(intentionArc.getType()).add(intentionArc);
 	}
 
+	/**
+	 * @param intentionArc
+	 */
+	void removeArc(final IntentionArc<E> intentionArc) {
+		if ( this.arcs == null )
+			return;
+		
+		this.arcs.remove(intentionArc);
+		
+		final Set<IntentionArc<E>> relationArcs = this.relationToArcSetMap.get(intentionArc.getType());
+		if ( relationArcs != null )
+			relationArcs.remove(intentionArc);
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
@@ -106,9 +129,21 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 	 * @return the arcs
 	 */
 	public Set<IntentionArc<E>> getArcs() {
+		if ( this.arcs == null )
+			return Collections.emptySet();
 		return this.arcs;
 	}
 
+	/**
+	 * @param relation
+	 * @return the arcs of the given relation, in the order they were added.
+	 */
+	Set<IntentionArc<E>> getArcs(final Relation relation) {
+		if ( this.relationToArcSetMap == null || !this.relationToArcSetMap.containsKey(relation) )
+			return Collections.emptySet();
+		return this.relationToArcSetMap.get(relation);
+	}
+
 	/**
 	 * @return the elem
 	 */
@@ -144,25 +179,40 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 	}
 
 	public String toDotFormat() {
-		final StringBuilder ret = new StringBuilder();
-		ret.append(this.hashCode());
-		ret.append(" [label=\"");
-		ret.append(this.elem.getShortName());
-		ret.append('"');
-		if (this.isEnabled())
-			ret.append(",style=filled,color=red,fontcolor=white");
-		ret.append("];");
-		ret.append('\n');
-		
-		int edgeCount = 0;
-		for (final IntentionArc<E> edge : this.arcs) {
-			ret.append(edge.toDotFormat());
-			if ( edgeCount++ < this.arcs.size()-1 )
-				ret.append('\n');
+		final StringWriter ret = new StringWriter();
+		try {
+			this.writeDotFormat(ret);
+			ret.write('\n');
+			boolean first = true;
+			for (final IntentionArc<E> edge : this.getArcs()) {
+				if (!first)
+					ret.write('\n');
+				edge.writeDotFormat(ret);
+				first = false;
+			}
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
 		}
 		return ret.toString();
 	}
 
+	/**
+	 * Writes the DOT statement of this node, without its arcs.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeDotFormat(final Writer out) throws IOException {
+		out.write(String.valueOf(this.hashCode()));
+		out.write(" [label=\"");
+		out.write(this.elem.getShortName());
+		out.write('"');
+		if (this.isEnabled())
+			out.write(",style=filled,color=red,fontcolor=white");
+		out.write("];");
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder ret = new StringBuilder();
@@ -208,6 +258,8 @@ public class IntentionNode<E extends IElement> extends IntentionElement<E> {
 	 */
 	public IntentionArc<E> getArc(IntentionNode<IElement> targetNode,
 			Relation relation) {	
+		if ( this.relationToArcSetMap == null || !this.relationToArcSetMap.containsKey(relation) )
+			return null;
 		for ( IntentionArc<E> arc : this.relationToArcSetMap.get(relation)) 
 			if ( arc.getToNode().equals(targetNode) )
 				return arc;
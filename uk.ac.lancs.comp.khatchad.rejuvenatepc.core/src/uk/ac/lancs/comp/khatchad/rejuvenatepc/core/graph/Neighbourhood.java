@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.ClassElement;
+import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Computes the program elements within a number of hops of a set of seed
+ * elements, e.g., the shadows of an advice, so that an intention graph can
+ * be built for that part of the program only.
+ *
+ * @author raffi
+ *
+ */
+public class Neighbourhood {
+
+	private Neighbourhood() {
+	}
+
+	/**
+	 * Expands the given seeds breadth first along the given relations, in
+	 * both directions, for at most <code>radius</code> hops.
+	 *
+	 * @param database
+	 * @param seeds
+	 * @param relations
+	 *            the relations to follow.
+	 * @param radius
+	 *            the number of hops to expand.
+	 * @return the seeds and the elements reached from them, in the order of
+	 *         {@link JayFX#getAllElements()} followed by the reached elements
+	 *         that are not in the database.
+	 */
+	public static Set<IElement> expand(final JayFX database,
+			final Collection<IElement> seeds,
+			final EnumSet<Relation> relations, final int radius) {
+		final Set<IElement> reached = new HashSet<IElement>(seeds);
+		final List<IElement> reachedOrder = new ArrayList<IElement>(reached);
+		List<IElement> frontier = reachedOrder;
+
+		for (int hop = 0; hop < radius && !frontier.isEmpty(); hop++) {
+			final List<IElement> next = new ArrayList<IElement>();
+			for (final IElement elem : frontier)
+				for (final Relation relation : relations) {
+					for (final IElement neighbour : database.getRange(elem,
+							relation))
+						if (reached.add(neighbour))
+							next.add(neighbour);
+					for (final IElement neighbour : getInverseRange(database,
+							elem, relation))
+						if (reached.add(neighbour))
+							next.add(neighbour);
+				}
+			reachedOrder.addAll(next);
+			frontier = next;
+		}
+
+		final Set<IElement> ret = new LinkedHashSet<IElement>();
+		for (final IElement elem : database.getAllElements())
+			if (reached.contains(elem))
+				ret.add(elem);
+		ret.addAll(reachedOrder);
+		return ret;
+	}
+
+	/**
+	 * @param database
+	 * @param elem
+	 * @param relation
+	 * @return the elements related to the given element by the given
+	 *         relation. Declarations and containment are not stored
+	 *         transposed in the database, so they are recovered from the
+	 *         element itself, and gets and sets are recovered from the
+	 *         accesses.
+	 */
+	private static Set<IElement> getInverseRange(final JayFX database,
+			final IElement elem, final Relation relation) {
+		switch (relation) {
+			case DECLARES_METHOD:
+			case DECLARES_FIELD:
+			case DECLARES_TYPE: {
+				final ClassElement declaringClass = elem.getDeclaringClass();
+				if (declaringClass == null)
+					return Collections.emptySet();
+				return Collections.<IElement> singleton(declaringClass);
+			}
+
+			case CONTAINS: {
+				if (elem.getCategory() != Category.CLASS
+						&& elem.getCategory() != Category.ASPECT)
+					return Collections.emptySet();
+				return Collections.singleton(FlyweightElementFactory
+						.getElement(Category.PACKAGE, elem.getPackageName()));
+			}
+
+			default: {
+				final Relation inverse = relation.getInverseRelation();
+				if (inverse == null)
+					return Collections.emptySet();
+				final Set<IElement> range = database.getRange(elem, inverse);
+				if (inverse.getInverseRelation() == relation)
+					return range;
+
+				// gets and sets share the transpose of accesses.
+				final Set<IElement> ret = new HashSet<IElement>();
+				for (final IElement neighbour : range)
+					if (database.getRange(neighbour, relation).contains(elem))
+						ret.add(neighbour);
+				return ret;
+			}
+		}
+	}
+}
@@ -4,10 +4,13 @@
 package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 import org.drools.ObjectFilter;
 import org.jdom.DataConversionException;
@@ -17,11 +20,16 @@ import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
 import ca.mcgill.cs.swevo.jayfx.model.IElement;
 
 /**
+ * A sequence of connected arcs, backed by an array. Paths cannot be changed
+ * once built but are extended with {@link #extend(IntentionArc)}, which
+ * returns a new path, so that they can be shared as facts and map keys and
+ * read without locking; their hash code is computed as they are extended.
+ * 
  * @author raffi
  * 
  */
-public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
-		Serializable {
+public class Path<E extends IntentionArc<IElement>> extends AbstractList<E>
+		implements RandomAccess, Cloneable, Serializable {
 
 	/**
 	 * 
@@ -43,29 +51,113 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 	 */
 	private static final long serialVersionUID = -456698317927297139L;
 
+	private static final Object[] NO_ARCS = new Object[0];
+
+	private Object[] arcs = NO_ARCS;
+
+	private int size;
+
+	/**
+	 * The hash code of the arcs, as that of a {@link java.util.List}.
+	 */
+	private int hash = 1;
+
+	/**
+	 * The signature of this path, computed when first asked for.
+	 */
+	private transient RelationSignature signature;
+
 	/**
 	 * @param patternElem
 	 * @throws DataConversionException 
 	 */
-	@SuppressWarnings("unchecked")
 	public Path(Element pathElem) throws DataConversionException {
-		for (Object intentionEdgeElemObj : pathElem
-				.getChildren(IntentionArc.class.getSimpleName())) {
+		final List<?> children = pathElem.getChildren(IntentionArc.class
+				.getSimpleName());
+		this.arcs = new Object[children.size()];
+		for (Object intentionEdgeElemObj : children) {
 			Element intentionEdgeXMLElem = (Element) intentionEdgeElemObj;
 			IntentionArc<IElement> intentionEdge = new IntentionArc<IElement>(intentionEdgeXMLElem);
-			this.add((E)intentionEdge);
+			this.arcs[this.size++] = intentionEdge;
+			this.hash = 31 * this.hash + intentionEdge.hashCode();
 		}
 	}
 
 	public Path() {
 	}
 
-	/* (non-Javadoc)
-	 * @see java.util.Vector#equals(java.lang.Object)
+	/**
+	 * @param arc
+	 *            the only arc of the path.
 	 */
+	public Path(final E arc) {
+		this(new Object[] { arc });
+	}
+
+	/**
+	 * @param arcs
+	 *            the arcs of the path, which are copied.
+	 */
+	Path(final Object[] arcs) {
+		this.arcs = copyOf(arcs, arcs.length, arcs.length);
+		this.size = arcs.length;
+		for (final Object arc : arcs)
+			this.hash = 31 * this.hash + arc.hashCode();
+	}
+
+	/**
+	 * @param arc
+	 *            an arc from the last node of this path.
+	 * @return a new path made of the arcs of this path followed by the given
+	 *         arc. This path is left unchanged.
+	 */
+	@SuppressWarnings("unchecked")
+	public Path<E> extend(final E arc) {
+		if (this.size > 0 && !this.getLastNode().equals(arc.getFromNode()))
+			throw new IllegalArgumentException("Not connectable: " + arc);
+		final Object[] arcs = copyOf(this.arcs, this.size, this.size + 1);
+		arcs[this.size] = arc;
+		final Path<E> ret;
+		try {
+			ret = (Path<E>) super.clone();
+		}
+		catch (final CloneNotSupportedException e) {
+			throw new InternalError(e.toString());
+		}
+		ret.arcs = arcs;
+		ret.size = arcs.length;
+		ret.hash = 31 * this.hash + arc.hashCode();
+		ret.signature = null;
+		return ret;
+	}
+
 	@Override
-	public synchronized boolean equals(final Object o) {
-		// TODO Auto-generated method stub
+	@SuppressWarnings("unchecked")
+	public E get(final int index) {
+		if (index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ this.size);
+		return (E) this.arcs[index];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o)
+			return true;
+		if (o instanceof Path) {
+			final Path<?> rhs = (Path<?>) o;
+			if (this.size != rhs.size || this.hash != rhs.hash)
+				return false;
+			for (int i = 0; i < this.size; i++)
+				if (!this.arcs[i].equals(rhs.arcs[i]))
+					return false;
+			return true;
+		}
 		return super.equals(o);
 	}
 
@@ -73,50 +165,53 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 			final IntentionNode<IElement> commonNode,
 			IntentionArc<IElement> enabledEdge) {
 
-		final Pattern<IntentionArc<IElement>> ret = new Pattern<IntentionArc<IElement>>();
-		for (final IntentionArc<IElement> edge : this)
+		final Object[] ret = new Object[this.size];
+		for (int i = 0; i < this.size; i++) {
+			final IntentionArc<IElement> edge = this.get(i);
 			if (edge.getFromNode().equals(commonNode)) {
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
 						edge.getFromNode(), IntentionNode.DISABLED_WILDCARD,
 						edge.getType(), edge.equals(enabledEdge));
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
 			else if (edge.getToNode().equals(commonNode)) {
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
 						IntentionNode.DISABLED_WILDCARD, edge.getToNode(), edge
 								.getType(), edge.equals(enabledEdge));
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
 			else {
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
 						IntentionNode.DISABLED_WILDCARD,
 						IntentionNode.DISABLED_WILDCARD, edge.getType(), edge
 								.equals(enabledEdge));
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
-		return ret;
+		}
+		return new Pattern<IntentionArc<IElement>>(ret);
 	}
 
 	public Pattern<IntentionArc<IElement>> extractPattern(
 			final IntentionNode<IElement> commonNode,
 			IntentionNode<IElement> enabledNode) {
 
-		final Pattern<IntentionArc<IElement>> ret = new Pattern<IntentionArc<IElement>>();
-		for (final IntentionArc<IElement> edge : this)
+		final Object[] ret = new Object[this.size];
+		for (int i = 0; i < this.size; i++) {
+			final IntentionArc<IElement> edge = this.get(i);
 			if (edge.getFromNode().equals(commonNode)) { //upwards pattern?
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
 						edge.getFromNode(),
 						edge.getToNode().equals(enabledNode) ? IntentionNode.ENABLED_WILDCARD
 								: IntentionNode.DISABLED_WILDCARD, edge
 								.getType(), false);
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
 			else if (edge.getToNode().equals(commonNode)) {
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
 						edge.getFromNode().equals(enabledNode) ? IntentionNode.ENABLED_WILDCARD
 								: IntentionNode.DISABLED_WILDCARD, edge
 								.getToNode(), edge.getType(), false);
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
 			else {
 				final IntentionArc<IElement> newEdge = new IntentionArc<IElement>(
@@ -125,14 +220,99 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 						edge.getToNode().equals(enabledNode) ? IntentionNode.ENABLED_WILDCARD
 								: IntentionNode.DISABLED_WILDCARD, edge
 								.getType(), false);
-				ret.add(newEdge);
+				ret[i] = newEdge;
 			}
-		return ret;
+		}
+		return new Pattern<IntentionArc<IElement>>(ret);
+	}
+
+	/**
+	 * The key of the patterns that cannot be encoded.
+	 */
+	static final long NO_PATTERN_KEY = -1;
+
+	private static final int MAX_KEY_LENGTH = 3;
+
+	private static final int COMMON_NODE = 0;
+
+	private static final int ENABLED_WILDCARD = 1;
+
+	private static final int DISABLED_WILDCARD = 2;
+
+	/**
+	 * @param commonNode
+	 * @param enabledNode
+	 *            the enabled node, or <code>null</code> for the pattern of an
+	 *            enabled arc.
+	 * @return the key of the pattern extracted from this path, which is equal
+	 *         for equal patterns, or {@link #NO_PATTERN_KEY}.
+	 * @see #getPatternKey(Object[], int, IntentionNode, IntentionNode)
+	 */
+	long getPatternKey(final IntentionNode<IElement> commonNode,
+			final IntentionNode<IElement> enabledNode) {
+		return getPatternKey(this.arcs, this.size, commonNode, enabledNode);
+	}
+
+	/**
+	 * Encodes the pattern that would be extracted from the given arcs without
+	 * building it: the length of the pattern in the two highest bits, then
+	 * the ordinal of the common node, then, for each arc, the ordinal of its
+	 * relation and whether each of its nodes is the common node, the enabled
+	 * wildcard or the disabled wildcard. The arcs of a pattern are equal
+	 * whether they are enabled or not, and so that is left out.
+	 * 
+	 * @param arcs
+	 * @param size
+	 *            the number of arcs.
+	 * @param commonNode
+	 * @param enabledNode
+	 *            the enabled node, or <code>null</code> for the pattern of an
+	 *            enabled arc.
+	 * @return the key of the pattern, or {@link #NO_PATTERN_KEY} if the path
+	 *         is longer than three arcs or the common node is not in a
+	 *         graph.
+	 */
+	@SuppressWarnings("unchecked")
+	static long getPatternKey(final Object[] arcs, final int size,
+			final IntentionNode<IElement> commonNode,
+			final IntentionNode<IElement> enabledNode) {
+		if (size == 0 || size > MAX_KEY_LENGTH || commonNode.getOrdinal() < 0)
+			return NO_PATTERN_KEY;
+		long ret = (long) size << 31 | commonNode.getOrdinal();
+		for (int i = 0; i < size; i++) {
+			final IntentionArc<IElement> arc = (IntentionArc<IElement>) arcs[i];
+			final int relation = arc.getType().ordinal();
+			if (relation >= 1 << 6)
+				return NO_PATTERN_KEY;
+			final int from;
+			final int to;
+			if (arc.getFromNode().equals(commonNode)) {
+				from = COMMON_NODE;
+				to = getWildcard(arc.getToNode(), enabledNode);
+			}
+			else if (arc.getToNode().equals(commonNode)) {
+				from = getWildcard(arc.getFromNode(), enabledNode);
+				to = COMMON_NODE;
+			}
+			else {
+				from = getWildcard(arc.getFromNode(), enabledNode);
+				to = getWildcard(arc.getToNode(), enabledNode);
+			}
+			ret = ret << 10 | relation << 4 | from << 2 | to;
+		}
+		return ret << 10 * (MAX_KEY_LENGTH - size);
+	}
+
+	private static int getWildcard(final IntentionNode<IElement> node,
+			final IntentionNode<IElement> enabledNode) {
+		return enabledNode != null && node.equals(enabledNode) ? ENABLED_WILDCARD
+				: DISABLED_WILDCARD;
 	}
 
 	public IntentionArc<?>[] getArcs() {
-		final IntentionArc<?>[] ret = new IntentionArc[this.size()];
-		return this.toArray(ret);
+		final IntentionArc<?>[] ret = new IntentionArc[this.size];
+		System.arraycopy(this.arcs, 0, ret, 0, this.size);
+		return ret;
 	}
 
 	public IntentionArc<?> getFirstArc() {
@@ -152,40 +332,58 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 	}
 
 	public Collection<IntentionNode<IElement>> getNodes() {
-		final Collection<IntentionNode<IElement>> ret = new ArrayList<IntentionNode<IElement>>();
-		if (!this.isEmpty()) {
+		final Collection<IntentionNode<IElement>> ret = new ArrayList<IntentionNode<IElement>>(
+				this.size + 1);
+		if (this.size > 0) {
 			ret.add(this.firstElement().getFromNode());
-			for (final IntentionArc<IElement> edge : this)
-				ret.add(edge.getToNode());
+			for (int i = 0; i < this.size; i++)
+				ret.add(this.get(i).getToNode());
 		}
 		return ret;
 	}
 
+	/**
+	 * @return the nodes of this path, in order.
+	 */
 	public PathElements<IntentionNode<?>> getPathElements() {
 		final PathElements<IntentionNode<?>> ret = new PathElements<IntentionNode<?>>(
 				this);
-		ret.add(this.getTopNode());
-		ret.addAll(this.getTailNodes());
+		if (this.size > 0) {
+			ret.add(this.getTopNode());
+			ret.addAll(this.getTailNodes());
+		}
 		return ret;
 	}
 
+	/**
+	 * @return the nodes of this path after its first, in order.
+	 */
 	public Collection<IntentionNode<?>> getTailNodes() {
-		final Collection<IntentionNode<?>> ret = new ArrayList<IntentionNode<?>>();
-
-		if (!this.isEmpty())
-			ret.add(this.get(0).getToNode());
+		final Collection<IntentionNode<?>> ret = new ArrayList<IntentionNode<?>>(
+				this.size);
+		for (int i = 0; i < this.size; i++)
+			ret.add(this.get(i).getToNode());
+		return ret;
+	}
 
-		for (int i = 1; i < this.size(); i++) {
-			final IntentionArc<?> edge = this.get(i);
-			ret.add(edge.getFromNode());
-			ret.add(edge.getToNode());
+	/**
+	 * @return the relation types of the arcs of this path, in order.
+	 */
+	public RelationSignature getSignature() {
+		RelationSignature ret = this.signature;
+		if (ret == null) {
+			// signatures are immutable, so racing to compute one is harmless.
+			ret = new RelationSignature(this);
+			this.signature = ret;
 		}
-
 		return ret;
 	}
 
+	/**
+	 * @return the first node of this path.
+	 */
 	public IntentionNode<?> getTopNode() {
-		return this.peek().getFromNode();
+		return this.getFirstNode();
 	}
 
 	public Collection<IntentionNode<IElement>> getWildcardNodes() {
@@ -199,29 +397,67 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 		return ret;
 	}
 
-	/* (non-Javadoc)
-	 * @see java.util.Vector#hashCode()
+	/**
+	 * @return the hash code of the arcs, computed as the path was built.
 	 */
 	@Override
-	public synchronized int hashCode() {
-		// TODO Auto-generated method stub
-		return super.hashCode();
+	public int hashCode() {
+		return this.hash;
+	}
+
+	private static Object[] copyOf(final Object[] arcs, final int size,
+			final int length) {
+		final Object[] ret = new Object[length];
+		System.arraycopy(arcs, 0, ret, 0, size);
+		return ret;
 	}
 
 	@Override
-	public E push(final E o) {
-		if (!this.isEmpty() && !this.getTopNode().equals(o.getToNode()))
-			throw new IllegalArgumentException("Not connectable: " + o);
-		return super.push(o);
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		try {
+			final Path<E> ret = (Path<E>) super.clone();
+			ret.arcs = copyOf(this.arcs, this.size, this.size);
+			ret.signature = null;
+			return ret;
+		}
+		catch (final CloneNotSupportedException e) {
+			throw new InternalError(e.toString());
+		}
+	}
+
+	/**
+	 * @return the last arc.
+	 */
+	public E peek() {
+		return this.lastElement();
+	}
+
+	/**
+	 * @return the first arc.
+	 */
+	public E firstElement() {
+		if (this.size == 0)
+			throw new NoSuchElementException();
+		return this.get(0);
+	}
+
+	/**
+	 * @return the last arc.
+	 */
+	public E lastElement() {
+		if (this.size == 0)
+			throw new NoSuchElementException();
+		return this.get(this.size - 1);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see java.util.Vector#toString()
+	 * @see java.util.AbstractCollection#toString()
 	 */
 	@Override
-	public synchronized String toString() {
+	public String toString() {
 		final StringBuilder buf = new StringBuilder();
 		buf.append("[");
 
@@ -248,12 +484,7 @@ public class Path<E extends IntentionArc<IElement>> extends Stack<E> implements
 	}
 
 	public boolean typeEquivalent(final Path<E> rhs) {
-		if (this.size() != rhs.size())
-			return false;
-		for (int i = 0; i < this.size(); i++)
-			if (!this.get(i).getType().equals(rhs.get(i).getType()))
-				return false;
-		return true;
+		return this.getSignature().equals(rhs.getSignature());
 	}
 
 	public Element getXML() {
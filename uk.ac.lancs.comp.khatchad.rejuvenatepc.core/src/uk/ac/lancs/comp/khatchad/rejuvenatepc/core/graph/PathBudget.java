@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.EnumSet;
+
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Bounds the paths built from an intention graph: how long they may be, which
+ * arcs they may go through, and how many may be built in total. Once the
+ * budget is exhausted, no more paths are admitted, so the suggestions are
+ * computed from the paths built so far. A budget is used for a single run.
+ *
+ * @author raffi
+ *
+ */
+public class PathBudget {
+
+	/**
+	 * The length of the paths built by the node rules before paths could be
+	 * made longer.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 1;
+
+	private final int maxLength;
+
+	private final int maxPaths;
+
+	private final EnumSet<Relation> relations;
+
+	private final EnumSet<Category> categories;
+
+	private int pathCount;
+
+	private boolean exhausted;
+
+	/**
+	 * A budget admitting the paths the node rules always built.
+	 */
+	public PathBudget() {
+		this(DEFAULT_MAX_LENGTH, Integer.MAX_VALUE, null, null);
+	}
+
+	/**
+	 * @param maxLength
+	 *            the maximum number of arcs of a path.
+	 * @param maxPaths
+	 *            the maximum number of paths built.
+	 * @param relations
+	 *            the types of the arcs paths may go through, or
+	 *            <code>null</code> for all of them.
+	 * @param categories
+	 *            the categories of the nodes paths may go through, or
+	 *            <code>null</code> for all of them.
+	 */
+	public PathBudget(final int maxLength, final int maxPaths,
+			final EnumSet<Relation> relations, final EnumSet<Category> categories) {
+		if (maxLength < 1)
+			throw new IllegalArgumentException("Paths have at least one arc.");
+		this.maxLength = maxLength;
+		this.maxPaths = maxPaths;
+		this.relations = relations == null ? null : EnumSet.copyOf(relations);
+		this.categories = categories == null ? null : EnumSet
+				.copyOf(categories);
+	}
+
+	/**
+	 * A budget with the same bounds as the given one, none of which is spent.
+	 * 
+	 * @param budget
+	 */
+	protected PathBudget(final PathBudget budget) {
+		this(budget.maxLength, budget.maxPaths, budget.relations,
+				budget.categories);
+	}
+
+	/**
+	 * @return a new budget with the same bounds, none of which is spent.
+	 */
+	public PathBudget copy() {
+		return new PathBudget(this);
+	}
+
+	/**
+	 * @param arc
+	 * @return whether paths may go through the given arc.
+	 */
+	public final boolean admits(final IntentionArc<?> arc) {
+		return this.admits(arc.getFromNode().getElem(), arc.getType(), arc
+				.getToNode().getElem());
+	}
+
+	/**
+	 * @param from
+	 * @param relation
+	 * @param to
+	 * @return whether paths may go through the arc of the given relation
+	 *         between the given elements.
+	 */
+	public boolean admits(final IElement from, final Relation relation,
+			final IElement to) {
+		return (this.relations == null || this.relations.contains(relation))
+				&& this.admits(from) && this.admits(to);
+	}
+
+	private boolean admits(final IElement elem) {
+		return this.categories == null
+				|| this.categories.contains(elem.getCategory());
+	}
+
+	/**
+	 * Spends one path of the budget.
+	 *
+	 * @return whether the path may be built, i.e., the budget was not
+	 *         exhausted.
+	 */
+	public boolean spend() {
+		if (this.pathCount >= this.maxPaths) {
+			this.exhausted = true;
+			return false;
+		}
+		this.pathCount++;
+		return true;
+	}
+
+	/**
+	 * @return the maximum number of arcs of a path.
+	 */
+	public int getMaxLength() {
+		return this.maxLength;
+	}
+
+	/**
+	 * @return the maximum number of paths built.
+	 */
+	public int getMaxPaths() {
+		return this.maxPaths;
+	}
+
+	/**
+	 * @return the number of paths built so far.
+	 */
+	public int getPathCount() {
+		return this.pathCount;
+	}
+
+	/**
+	 * @return whether a path was refused because the budget was spent.
+	 */
+	public boolean isExhausted() {
+		return this.exhausted;
+	}
+}
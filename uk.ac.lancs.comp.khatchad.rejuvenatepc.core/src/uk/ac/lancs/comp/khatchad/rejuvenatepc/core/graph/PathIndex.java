@@ -0,0 +1,362 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Answers the suggestion queries of the node rules without a rule engine.
+ * The paths of a graph are enumerated once, in their final orientation, and
+ * indexed by their first and last nodes and the relation types of their
+ * arcs, so that the paths intersecting an enabled path are found by hash
+ * lookups rather than by joining every pair of paths. Paths are walked and
+ * held as node numbers; only the enabled paths and the suggested elements are
+ * asked of the graph as nodes and arcs.
+ *
+ * @author raffi
+ *
+ */
+public class PathIndex {
+
+	private final IntentionGraph graph;
+
+	/**
+	 * The paths by the number of their first node and their signature. A path
+	 * is held as the numbers of its nodes.
+	 */
+	private final Map<Integer, Map<RelationSignature, List<int[]>>> firstNodeToPathsMap = new HashMap<Integer, Map<RelationSignature, List<int[]>>>();
+
+	/**
+	 * The paths by the number of their last node and their signature.
+	 */
+	private final Map<Integer, Map<RelationSignature, List<int[]>>> lastNodeToPathsMap = new HashMap<Integer, Map<RelationSignature, List<int[]>>>();
+
+	private int size;
+
+	/**
+	 * Indexes the paths of the given graph as the node rules build them.
+	 *
+	 * @param graph
+	 * @param monitor
+	 */
+	public PathIndex(final IntentionGraph graph, final IProgressMonitor monitor) {
+		this(graph, new PathBudget(), monitor);
+	}
+
+	/**
+	 * Indexes the paths of the given graph admitted by the given budget.
+	 * Paths do not visit a node twice, except for single arcs from a node to
+	 * itself. Once the budget is exhausted, the paths indexed so far are
+	 * kept.
+	 *
+	 * @param graph
+	 * @param budget
+	 * @param monitor
+	 */
+	public PathIndex(final IntentionGraph graph, final PathBudget budget,
+			final IProgressMonitor monitor) {
+		this.graph = graph;
+		final int[] nodes = new int[budget.getMaxLength() + 1];
+		final Relation[] relations = new Relation[budget.getMaxLength()];
+		monitor.beginTask("Indexing paths.", graph.getNodes().size());
+		for (int id = graph.nextId(0); id >= 0; id = graph.nextId(id + 1)) {
+			nodes[0] = id;
+			if (!this.extend(nodes, relations, 0, budget))
+				break;
+			monitor.worked(1);
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Indexes the given paths, e.g., those built by the node rules.
+	 *
+	 * @param graph
+	 * @param paths
+	 */
+	public PathIndex(final IntentionGraph graph,
+			final Collection<Path<IntentionArc<IElement>>> paths) {
+		this.graph = graph;
+		for (final Path<IntentionArc<IElement>> path : paths) {
+			final int[] nodes = new int[path.size() + 1];
+			nodes[0] = graph.getId(path.get(0).getFromNode().getElem());
+			for (int i = 0; i < path.size(); i++)
+				nodes[i + 1] = graph.getId(path.get(i).getToNode().getElem());
+			this.index(nodes, path.getSignature());
+		}
+	}
+
+	/**
+	 * Indexes the path of the given length held in the given arrays, unless
+	 * it has no arcs, and its extensions.
+	 *
+	 * @param nodes
+	 *            the node numbers of the path.
+	 * @param relations
+	 *            the relation types of its arcs.
+	 * @param length
+	 * @param budget
+	 * @return whether the budget still admits paths.
+	 */
+	private boolean extend(final int[] nodes, final Relation[] relations,
+			final int length, final PathBudget budget) {
+		if (length > 0) {
+			if (!budget.spend())
+				return false;
+			final int[] path = new int[length + 1];
+			System.arraycopy(nodes, 0, path, 0, length + 1);
+			this.index(path, new RelationSignature(relations, length));
+		}
+		if (length == relations.length)
+			return true;
+		final IElement from = this.graph.getElement(nodes[length]);
+		for (final Relation relation : this.graph.getArcRelations())
+			for (final int to : this.graph.getTargets(nodes[length], relation))
+				if ((length == 0 || !contains(nodes, length + 1, to))
+						&& budget.admits(from, relation, this.graph
+								.getElement(to))) {
+					nodes[length + 1] = to;
+					relations[length] = relation;
+					if (!this.extend(nodes, relations, length + 1, budget))
+						return false;
+				}
+		return true;
+	}
+
+	private static boolean contains(final int[] array, final int size,
+			final int value) {
+		for (int i = 0; i < size; i++)
+			if (array[i] == value)
+				return true;
+		return false;
+	}
+
+	private void index(final int[] path, final RelationSignature signature) {
+		add(this.firstNodeToPathsMap, path[0], signature, path);
+		add(this.lastNodeToPathsMap, path[path.length - 1], signature, path);
+		this.size++;
+	}
+
+	private static void add(
+			final Map<Integer, Map<RelationSignature, List<int[]>>> map,
+			final int node, final RelationSignature signature,
+			final int[] path) {
+		Map<RelationSignature, List<int[]>> signatureToPathsMap = map
+				.get(node);
+		if (signatureToPathsMap == null) {
+			signatureToPathsMap = new HashMap<RelationSignature, List<int[]>>();
+			map.put(node, signatureToPathsMap);
+		}
+		List<int[]> paths = signatureToPathsMap.get(signature);
+		if (paths == null) {
+			paths = new ArrayList<int[]>();
+			signatureToPathsMap.put(signature, paths);
+		}
+		paths.add(path);
+	}
+
+	private static Map<RelationSignature, List<int[]>> getPaths(
+			final Map<Integer, Map<RelationSignature, List<int[]>>> map,
+			final int node) {
+		final Map<RelationSignature, List<int[]>> ret = map.get(node);
+		return ret == null ? Collections
+				.<RelationSignature, List<int[]>> emptyMap() : ret;
+	}
+
+	private static List<int[]> getPaths(
+			final Map<Integer, Map<RelationSignature, List<int[]>>> map,
+			final int node, final RelationSignature signature) {
+		final List<int[]> ret = getPaths(map, node).get(signature);
+		return ret == null ? Collections.<int[]> emptyList() : ret;
+	}
+
+	/**
+	 * @return the path of the given node numbers and signature, made of the
+	 *         arcs of the graph.
+	 */
+	private Path<IntentionArc<IElement>> getPath(final int[] nodes,
+			final RelationSignature signature) {
+		final Object[] arcs = new Object[signature.size()];
+		for (int i = 0; i < arcs.length; i++)
+			arcs[i] = this.graph.getArc(nodes[i], signature.get(i),
+					nodes[i + 1]);
+		return new Path<IntentionArc<IElement>>(arcs);
+	}
+
+	/**
+	 * @return the number of paths indexed.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Answers every query of the node rules in a single walk of the enabled
+	 * elements: the forward and backward suggested execution nodes, and the
+	 * forward and backward suggested arcs of each of the given types.
+	 *
+	 * @param relations
+	 *            the types of the enabled arcs.
+	 * @param patternTable
+	 *            where the rows are aggregated.
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	public void executeQueries(
+			final Set<Relation> relations,
+			final PatternTable patternTable,
+			final IProgressMonitor monitor) {
+		final Set<IntentionElement<IElement>> enabledElements = this.graph
+				.getEnabledElements();
+		monitor.beginTask("Executing suggestion queries.", enabledElements
+				.size());
+		for (final IntentionElement<IElement> elem : enabledElements) {
+			if (elem instanceof IntentionNode)
+				for (final boolean forward : new boolean[] { true, false })
+					this.queryNode(forward, (IntentionNode<IElement>) elem,
+							patternTable);
+			else if (elem instanceof IntentionArc
+					&& relations.contains(((IntentionArc<IElement>) elem)
+							.getType()))
+				for (final boolean forward : new boolean[] { true, false })
+					this.queryArc(forward, (IntentionArc<IElement>) elem,
+							patternTable);
+			monitor.worked(1);
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Answers the "forward suggested execution nodes" or "backward suggested
+	 * execution nodes" query of the node rules.
+	 *
+	 * @param forward
+	 * @param patternTable
+	 *            where the rows are aggregated.
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	public void executeNodeQuery(
+			final boolean forward,
+			final PatternTable patternTable,
+			final IProgressMonitor monitor) {
+		final Set<IntentionElement<IElement>> enabledElements = this.graph
+				.getEnabledElements();
+		monitor.beginTask("Executing "
+				+ (forward ? "forward" : "backward")
+				+ " suggested execution nodes query.", enabledElements.size());
+		for (final IntentionElement<IElement> elem : enabledElements) {
+			if (elem instanceof IntentionNode)
+				this.queryNode(forward, (IntentionNode<IElement>) elem,
+						patternTable);
+			monitor.worked(1);
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Answers the "forward suggested X arcs" or "backward suggested X arcs"
+	 * query of the node rules.
+	 *
+	 * @param forward
+	 * @param relation
+	 *            the type of the enabled arcs.
+	 * @param patternTable
+	 *            where the rows are aggregated.
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	public void executeArcQuery(
+			final boolean forward,
+			final Relation relation,
+			final PatternTable patternTable,
+			final IProgressMonitor monitor) {
+		final Set<IntentionElement<IElement>> enabledElements = this.graph
+				.getEnabledElements();
+		monitor.beginTask("Executing " + (forward ? "forward" : "backward")
+				+ " suggested " + relation + " arcs query.", enabledElements
+				.size());
+		for (final IntentionElement<IElement> elem : enabledElements) {
+			if (elem instanceof IntentionArc
+					&& ((IntentionArc<IElement>) elem).getType() == relation)
+				this.queryArc(forward, (IntentionArc<IElement>) elem,
+						patternTable);
+			monitor.worked(1);
+		}
+		monitor.done();
+	}
+
+	private void queryNode(
+			final boolean forward,
+			final IntentionNode<IElement> enabledNode,
+			final PatternTable patternTable) {
+		for (final Map.Entry<RelationSignature, List<int[]>> entry : getPaths(
+				forward ? this.firstNodeToPathsMap : this.lastNodeToPathsMap,
+				this.graph.getId(enabledNode.getElem())).entrySet())
+			for (final int[] enabledPath : entry.getValue()) {
+				final int commonId = forward ? enabledPath[enabledPath.length - 1]
+						: enabledPath[0];
+				final IntentionNode<IElement> commonNode = this.graph
+						.getShell(commonId);
+				// the enabled path intersects itself, so the pattern is used.
+				final int patternId = patternTable.intern(this.getPath(
+						enabledPath, entry.getKey()), commonNode, enabledNode);
+				for (final int[] intersectingPath : getPaths(
+						forward ? this.lastNodeToPathsMap
+								: this.firstNodeToPathsMap, commonId, entry
+								.getKey()))
+					patternTable.record(patternId, this.graph
+							.getShell(forward ? intersectingPath[0]
+									: intersectingPath[intersectingPath.length - 1]),
+							enabledNode);
+			}
+	}
+
+	private void queryArc(
+			final boolean forward,
+			final IntentionArc<IElement> enabledArc,
+			final PatternTable patternTable) {
+		final int fromId = this.graph.getId(enabledArc.getFromNode().getElem());
+		final int toId = this.graph.getId(enabledArc.getToNode().getElem());
+		for (final Map.Entry<RelationSignature, List<int[]>> entry : getPaths(
+				forward ? this.firstNodeToPathsMap : this.lastNodeToPathsMap,
+				forward ? fromId : toId).entrySet()) {
+			final RelationSignature signature = entry.getKey();
+			final int last = signature.size();
+			if (signature.get(forward ? 0 : last - 1) != enabledArc.getType())
+				continue;
+			for (final int[] enabledPath : entry.getValue()) {
+				if (forward ? enabledPath[1] != toId
+						: enabledPath[last - 1] != fromId)
+					continue;
+				final int commonId = forward ? enabledPath[last]
+						: enabledPath[0];
+				final IntentionNode<IElement> commonNode = this.graph
+						.getShell(commonId);
+				final int patternId = patternTable.intern(this.getPath(
+						enabledPath, signature), commonNode, enabledArc);
+				for (final int[] intersectingPath : getPaths(
+						forward ? this.lastNodeToPathsMap
+								: this.firstNodeToPathsMap, commonId, signature))
+					patternTable.record(patternId, forward ? this.graph.getArc(
+							intersectingPath[0], signature.get(0),
+							intersectingPath[1]) : this.graph.getArc(
+							intersectingPath[last - 1], signature
+									.get(last - 1), intersectingPath[last]),
+							enabledArc);
+			}
+		}
+	}
+}
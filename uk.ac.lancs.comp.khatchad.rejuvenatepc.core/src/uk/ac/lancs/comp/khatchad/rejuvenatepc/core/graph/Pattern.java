@@ -37,6 +37,22 @@ public class Pattern<E extends IntentionArc<IElement>> extends Path<E> {
 	public Pattern() {
 	}
 
+	/**
+	 * @param arc
+	 *            the only arc of the pattern.
+	 */
+	public Pattern(final E arc) {
+		super(arc);
+	}
+
+	/**
+	 * @param arcs
+	 *            the arcs of the pattern, which are copied.
+	 */
+	Pattern(final Object[] arcs) {
+		super(arcs);
+	}
+
 	public static double calculateConfidence(final double precision, final double coverage,
 			final double concreteness) {
 		return (precision * concreteness) + (coverage * (1 - concreteness));
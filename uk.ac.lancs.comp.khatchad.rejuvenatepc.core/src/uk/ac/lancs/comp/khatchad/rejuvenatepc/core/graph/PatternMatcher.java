@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Answers the suggestion queries of the node rules for given patterns only.
+ * A pattern fixes its common node and the relation types of its arcs, so
+ * rather than enumerating every path of the graph, only the paths of its
+ * signature through its common node are walked. A pattern is found, with
+ * the same suggested and enabled elements as the node rules would find,
+ * when one of these paths extracts it from an enabled element. Paths are
+ * walked as node numbers; only their end elements are asked of the graph as
+ * nodes and arcs, and the whole path when its end element is enabled.
+ *
+ * @author raffi
+ *
+ */
+public class PatternMatcher {
+
+	private final IntentionGraph graph;
+
+	private final PathBudget budget;
+
+	/**
+	 * The arcs into each node, by relation type, indexed for the types of the
+	 * patterns walked backwards as they are first met. The sources of the
+	 * arcs into node <code>i</code> are from <code>[0][i]</code> (inclusive)
+	 * to <code>[0][i + 1]</code> (exclusive) in <code>[1]</code>.
+	 */
+	private final Map<Relation, int[][]> relationToIncomingArcsMap = new EnumMap<Relation, int[][]>(
+			Relation.class);
+
+	/**
+	 * @param graph
+	 * @param budget
+	 *            the bounds of the paths, as used to derive the patterns. The
+	 *            number of paths is not bounded.
+	 */
+	public PatternMatcher(final IntentionGraph graph, final PathBudget budget) {
+		this.graph = graph;
+		this.budget = budget;
+	}
+
+	/**
+	 * Looks for the given patterns in the graph.
+	 *
+	 * @param patterns
+	 * @param relations
+	 *            the types of the enabled arcs.
+	 * @param patternTable
+	 *            where the rows of the patterns found are aggregated.
+	 * @param monitor
+	 */
+	public void executeQueries(
+			final Collection<Pattern<IntentionArc<IElement>>> patterns,
+			final Set<Relation> relations,
+			final PatternTable patternTable,
+			final IProgressMonitor monitor) {
+		monitor.beginTask("Matching patterns.", patterns.size());
+		for (final Pattern<IntentionArc<IElement>> pattern : patterns) {
+			if (!pattern.isEmpty()
+					&& pattern.size() <= this.budget.getMaxLength())
+				if (!isWildcard(pattern.getLastNode()))
+					this.match(pattern, true, relations, patternTable);
+				else if (!isWildcard(pattern.getFirstNode()))
+					this.match(pattern, false, relations, patternTable);
+			monitor.worked(1);
+		}
+		monitor.done();
+	}
+
+	private static boolean isWildcard(final IntentionNode<?> node) {
+		return node.getElem() instanceof WildcardElement;
+	}
+
+	/**
+	 * @param forward
+	 *            whether the common node is the last node of the pattern, and
+	 *            thus the enabled element at the start of its paths.
+	 */
+	private void match(final Pattern<IntentionArc<IElement>> pattern,
+			final boolean forward, final Set<Relation> relations,
+			final PatternTable patternTable) {
+		final int commonId = this.graph.getId((forward ? pattern.getLastNode()
+				: pattern.getFirstNode()).getElem());
+		if (commonId < 0)
+			return;
+		final Relation[] signature = new Relation[pattern.size()];
+		for (int i = 0; i < signature.length; i++)
+			signature[i] = pattern.get(i).getType();
+		final boolean nodePattern = pattern.getNodes().contains(
+				IntentionNode.ENABLED_WILDCARD);
+
+		// the paths are walked as node numbers.
+		final List<int[]> paths = new ArrayList<int[]>();
+		final int[] nodes = new int[signature.length + 1];
+		if (forward) {
+			nodes[signature.length] = commonId;
+			this.walkBackward(signature, signature.length - 1, nodes, paths);
+		}
+		else {
+			nodes[0] = commonId;
+			this.walkForward(signature, 0, nodes, paths);
+		}
+
+		final IntentionNode<IElement> commonNode = this.graph
+				.getShell(commonId);
+		final int last = signature.length;
+		final Set<IntentionElement<IElement>> suggestedElements = new LinkedHashSet<IntentionElement<IElement>>();
+		final Set<IntentionElement<IElement>> enabledElements = new LinkedHashSet<IntentionElement<IElement>>();
+		for (final int[] path : paths)
+			if (nodePattern) {
+				final IntentionNode<IElement> enabledNode = this.graph
+						.getShell(forward ? path[0] : path[last]);
+				suggestedElements.add(enabledNode);
+				if (enabledNode.isEnabled()
+						&& this.getPath(path, signature).extractPattern(
+								commonNode, enabledNode).equals(pattern))
+					enabledElements.add(enabledNode);
+			}
+			else {
+				final IntentionArc<IElement> enabledArc = forward ? this.graph
+						.getArc(path[0], signature[0], path[1]) : this.graph
+						.getArc(path[last - 1], signature[last - 1], path[last]);
+				suggestedElements.add(enabledArc);
+				if (enabledArc.isEnabled()
+						&& relations.contains(enabledArc.getType())
+						&& this.getPath(path, signature).extractPattern(
+								commonNode, enabledArc).equals(pattern))
+					enabledElements.add(enabledArc);
+			}
+		if (enabledElements.isEmpty())
+			return;
+
+		// every pair is recorded by pairing each element once.
+		final int patternId = patternTable.intern(pattern);
+		final List<IntentionElement<IElement>> suggested = new ArrayList<IntentionElement<IElement>>(
+				suggestedElements);
+		final List<IntentionElement<IElement>> enabled = new ArrayList<IntentionElement<IElement>>(
+				enabledElements);
+		for (int i = 0; i < Math.max(suggested.size(), enabled.size()); i++)
+			patternTable.record(patternId, suggested.get(Math.min(i,
+					suggested.size() - 1)), enabled.get(Math.min(i, enabled
+					.size() - 1)));
+	}
+
+	/**
+	 * @return the path of the given node numbers and relation types, made of
+	 *         the arcs of the graph.
+	 */
+	private Path<IntentionArc<IElement>> getPath(final int[] nodes,
+			final Relation[] signature) {
+		final Object[] arcs = new Object[signature.length];
+		for (int i = 0; i < arcs.length; i++)
+			arcs[i] = this.graph.getArc(nodes[i], signature[i], nodes[i + 1]);
+		return new Path<IntentionArc<IElement>>(arcs);
+	}
+
+	/**
+	 * Collects the paths of the given signature starting at the node at the
+	 * given position.
+	 */
+	private void walkForward(final Relation[] signature, final int position,
+			final int[] nodes, final List<int[]> paths) {
+		if (position == signature.length) {
+			collect(nodes, paths);
+			return;
+		}
+		final IElement from = this.graph.getElement(nodes[position]);
+		for (final int to : this.graph.getTargets(nodes[position],
+				signature[position]))
+			if (this.budget.admits(from, signature[position], this.graph
+					.getElement(to))) {
+				nodes[position + 1] = to;
+				this.walkForward(signature, position + 1, nodes, paths);
+			}
+	}
+
+	/**
+	 * Collects the paths of the given signature ending at the node after the
+	 * given position.
+	 */
+	private void walkBackward(final Relation[] signature, final int position,
+			final int[] nodes, final List<int[]> paths) {
+		if (position < 0) {
+			collect(nodes, paths);
+			return;
+		}
+		final IElement to = this.graph.getElement(nodes[position + 1]);
+		for (final int from : this.getSources(nodes[position + 1],
+				signature[position]))
+			if (this.budget.admits(this.graph.getElement(from),
+					signature[position], to)) {
+				nodes[position] = from;
+				this.walkBackward(signature, position - 1, nodes, paths);
+			}
+	}
+
+	/**
+	 * Adds a path of the given nodes if the node rules would build it, i.e.,
+	 * if no arc after the first leads to a node already visited.
+	 */
+	private static void collect(final int[] nodes, final List<int[]> paths) {
+		for (int i = 2; i < nodes.length; i++)
+			for (int j = 0; j < i; j++)
+				if (nodes[i] == nodes[j])
+					return;
+		paths.add(nodes.clone());
+	}
+
+	/**
+	 * @return the node numbers of the sources of the arcs of the given type
+	 *         into the given node.
+	 */
+	private int[] getSources(final int id, final Relation relation) {
+		int[][] incomingArcs = this.relationToIncomingArcsMap.get(relation);
+		if (incomingArcs == null) {
+			incomingArcs = this.indexIncomingArcs(relation);
+			this.relationToIncomingArcsMap.put(relation, incomingArcs);
+		}
+		final int[] offsets = incomingArcs[0];
+		// the node was added after the arcs were indexed.
+		if (id + 1 >= offsets.length)
+			return new int[0];
+		final int[] ret = new int[offsets[id + 1] - offsets[id]];
+		System.arraycopy(incomingArcs[1], offsets[id], ret, 0, ret.length);
+		return ret;
+	}
+
+	/**
+	 * @return the sources of the arcs of the given type by their target
+	 *         nodes, found in two walks of the graph.
+	 */
+	private int[][] indexIncomingArcs(final Relation relation) {
+		final int bound = this.graph.getIdBound();
+		final int[] offsets = new int[bound + 1];
+		for (int id = this.graph.nextId(0); id >= 0; id = this.graph
+				.nextId(id + 1))
+			for (final int to : this.graph.getTargets(id, relation))
+				offsets[to + 1]++;
+		for (int i = 0; i < bound; i++)
+			offsets[i + 1] += offsets[i];
+
+		final int[] sources = new int[offsets[bound]];
+		final int[] next = offsets.clone();
+		for (int id = this.graph.nextId(0); id >= 0; id = this.graph
+				.nextId(id + 1))
+			for (final int to : this.graph.getTargets(id, relation))
+				sources[next[to]++] = id;
+		return new int[][] { offsets, sources };
+	}
+}
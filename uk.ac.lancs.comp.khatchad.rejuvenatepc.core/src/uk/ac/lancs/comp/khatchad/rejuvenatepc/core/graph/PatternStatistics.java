@@ -0,0 +1,145 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * The precision, coverage, concreteness and confidence of all the patterns
+ * found for an advice, computed in one pass into arrays indexed like the
+ * patterns. The number of enabled elements is given once rather than counted
+ * for each pattern, and the concreteness is counted off the arcs without
+ * collecting the nodes.
+ *
+ * @author raffi
+ *
+ */
+public class PatternStatistics {
+
+	private final List<Pattern<IntentionArc<IElement>>> patterns;
+
+	private final double[] precisions;
+
+	private final double[] coverages;
+
+	private final double[] concretenesses;
+
+	private final double[] confidences;
+
+	/**
+	 * @param patternToResultMap
+	 * @param patternToEnabledElementMap
+	 * @param enabledElementCount
+	 *            the number of elements enabled in the graph.
+	 */
+	public PatternStatistics(
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap,
+			final int enabledElementCount) {
+		this.patterns = new ArrayList<Pattern<IntentionArc<IElement>>>(
+				patternToResultMap.keySet());
+		final int size = this.patterns.size();
+		this.precisions = new double[size];
+		this.coverages = new double[size];
+		this.concretenesses = new double[size];
+		this.confidences = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			final Pattern<IntentionArc<IElement>> pattern = this.patterns
+					.get(i);
+			final int enabledCount = patternToEnabledElementMap.get(pattern)
+					.size();
+			this.precisions[i] = (double) enabledCount
+					/ patternToResultMap.get(pattern).size();
+			this.coverages[i] = enabledCount / enabledElementCount;
+			this.concretenesses[i] = calculateConcreteness(pattern);
+			this.confidences[i] = Pattern.calculateConfidence(
+					this.precisions[i], this.coverages[i],
+					this.concretenesses[i]);
+		}
+	}
+
+	/**
+	 * @param pattern
+	 * @return the concreteness of the given pattern, as
+	 *         {@link Pattern#calculateConcreteness(Path)}.
+	 */
+	static double calculateConcreteness(
+			final Path<IntentionArc<IElement>> pattern) {
+		final int size = pattern.size();
+		if (size == 0)
+			return Double.NaN;
+		int wildcardCount = isWildcard(pattern.get(0).getFromNode()) ? 1 : 0;
+		for (int i = 0; i < size; i++)
+			if (isWildcard(pattern.get(i).getToNode()))
+				wildcardCount++;
+		return (double) (size + 1 - wildcardCount) / (size + 1);
+	}
+
+	private static boolean isWildcard(final IntentionNode<IElement> node) {
+		return node.getElem() instanceof WildcardElement;
+	}
+
+	/**
+	 * @return the number of patterns.
+	 */
+	public int size() {
+		return this.patterns.size();
+	}
+
+	/**
+	 * @param index
+	 * @return the pattern at the given index.
+	 */
+	public Pattern<IntentionArc<IElement>> getPattern(final int index) {
+		return this.patterns.get(index);
+	}
+
+	/**
+	 * @param index
+	 * @return the precision of the pattern at the given index.
+	 */
+	public double getPrecision(final int index) {
+		return this.precisions[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the coverage of the pattern at the given index.
+	 */
+	public double getCoverage(final int index) {
+		return this.coverages[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the concreteness of the pattern at the given index.
+	 */
+	public double getConcreteness(final int index) {
+		return this.concretenesses[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the confidence of the pattern at the given index.
+	 */
+	public double getConfidence(final int index) {
+		return this.confidences[index];
+	}
+
+	/**
+	 * @return the sum of the confidences of the patterns.
+	 */
+	public double getTotalConfidence() {
+		double ret = 0;
+		for (final double confidence : this.confidences)
+			ret += confidence;
+		return ret;
+	}
+}
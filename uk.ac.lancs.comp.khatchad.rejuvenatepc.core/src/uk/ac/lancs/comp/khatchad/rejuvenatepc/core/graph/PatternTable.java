@@ -0,0 +1,291 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.LongHashSet;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.LongIntHashMap;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Aggregates the rows of the suggestion queries by pattern. Each distinct
+ * pattern is interned once and given a small integer id, and so is each
+ * element. The suggested and enabled elements of a pattern are then kept as
+ * arrays of element ids, in the order they were first found, so that a row
+ * only costs a lookup of its pattern and of its elements. The patterns of
+ * short paths are moreover looked up by a primitive key encoding them, so
+ * that a pattern is only built the first time it is found.
+ *
+ * @author raffi
+ *
+ */
+public class PatternTable {
+
+	private final Map<Pattern<IntentionArc<IElement>>, Integer> patternIds = new HashMap<Pattern<IntentionArc<IElement>>, Integer>();
+
+	private final List<Pattern<IntentionArc<IElement>>> patterns = new ArrayList<Pattern<IntentionArc<IElement>>>();
+
+	private final Map<IntentionElement<IElement>, Integer> elementIds = new HashMap<IntentionElement<IElement>, Integer>();
+
+	private final List<IntentionElement<IElement>> elements = new ArrayList<IntentionElement<IElement>>();
+
+	/**
+	 * The element ids of the suggested elements, by pattern id.
+	 */
+	private int[][] results = new int[16][];
+
+	private int[] resultCounts = new int[16];
+
+	/**
+	 * The element ids of the enabled elements, by pattern id.
+	 */
+	private int[][] enabledElements = new int[16][];
+
+	private int[] enabledElementCounts = new int[16];
+
+	/**
+	 * The pattern ids by pattern key.
+	 * 
+	 * @see Path#getPatternKey(Object[], int, IntentionNode, IntentionNode)
+	 */
+	private final LongIntHashMap patternKeyIds = new LongIntHashMap(256, -1);
+
+	/**
+	 * The pairs of pattern and element ids recorded, the suggested ones
+	 * being positive and the enabled ones negative.
+	 */
+	private final LongHashSet recorded = new LongHashSet(1024);
+
+	/**
+	 * @param pattern
+	 * @return the id of the given pattern, which is interned if it is new.
+	 */
+	public int intern(final Pattern<IntentionArc<IElement>> pattern) {
+		Integer ret = this.patternIds.get(pattern);
+		if (ret == null) {
+			ret = this.patterns.size();
+			this.patterns.add(pattern);
+			this.patternIds.put(pattern, ret);
+			if (ret == this.results.length) {
+				this.results = copyOf(this.results, 2 * ret);
+				this.resultCounts = copyOf(this.resultCounts, 2 * ret);
+				this.enabledElements = copyOf(this.enabledElements, 2 * ret);
+				this.enabledElementCounts = copyOf(this.enabledElementCounts,
+						2 * ret);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param path
+	 * @param commonNode
+	 * @param enabledNode
+	 * @return the id of the pattern extracted from the given path for the
+	 *         given enabled node, which is only built if it is new.
+	 * @see Path#extractPattern(IntentionNode, IntentionNode)
+	 */
+	public int intern(final Path<IntentionArc<IElement>> path,
+			final IntentionNode<IElement> commonNode,
+			final IntentionNode<IElement> enabledNode) {
+		final long key = path.getPatternKey(commonNode, enabledNode);
+		int ret = this.getPatternId(key);
+		if (ret < 0) {
+			ret = this.intern(path.extractPattern(commonNode, enabledNode));
+			this.putPatternId(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param path
+	 * @param commonNode
+	 * @param enabledArc
+	 * @return the id of the pattern extracted from the given path for the
+	 *         given enabled arc, which is only built if it is new.
+	 * @see Path#extractPattern(IntentionNode, IntentionArc)
+	 */
+	public int intern(final Path<IntentionArc<IElement>> path,
+			final IntentionNode<IElement> commonNode,
+			final IntentionArc<IElement> enabledArc) {
+		final long key = path.getPatternKey(commonNode, null);
+		int ret = this.getPatternId(key);
+		if (ret < 0) {
+			ret = this.intern(path.extractPattern(commonNode, enabledArc));
+			this.putPatternId(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param patternKey
+	 * @return the id of the pattern with the given key, or -1 if it is not
+	 *         interned yet.
+	 */
+	int getPatternId(final long patternKey) {
+		return patternKey == Path.NO_PATTERN_KEY ? -1 : this.patternKeyIds
+				.get(patternKey);
+	}
+
+	/**
+	 * @param patternKey
+	 * @param patternId
+	 */
+	void putPatternId(final long patternKey, final int patternId) {
+		if (patternKey != Path.NO_PATTERN_KEY)
+			this.patternKeyIds.put(patternKey, patternId);
+	}
+
+	private int getId(final IntentionElement<IElement> element) {
+		Integer ret = this.elementIds.get(element);
+		if (ret == null) {
+			ret = this.elements.size();
+			this.elements.add(element);
+			this.elementIds.put(element, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Records that the given pattern suggests the given element from the
+	 * given enabled element.
+	 *
+	 * @param pattern
+	 * @param suggestedElement
+	 * @param enabledElement
+	 */
+	public void record(final Pattern<IntentionArc<IElement>> pattern,
+			final IntentionElement<IElement> suggestedElement,
+			final IntentionElement<IElement> enabledElement) {
+		this.record(this.intern(pattern), suggestedElement, enabledElement);
+	}
+
+	/**
+	 * @param patternId
+	 * @param suggestedElement
+	 * @param enabledElement
+	 */
+	public void record(final int patternId,
+			final IntentionElement<IElement> suggestedElement,
+			final IntentionElement<IElement> enabledElement) {
+		final int suggestedId = this.getId(suggestedElement);
+		if (this.recorded.add(getKey(patternId, suggestedId))) {
+			this.results[patternId] = add(this.results[patternId],
+					this.resultCounts[patternId], suggestedId);
+			this.resultCounts[patternId]++;
+		}
+		final int enabledId = this.getId(enabledElement);
+		if (this.recorded.add(-getKey(patternId, enabledId) - 1)) {
+			this.enabledElements[patternId] = add(
+					this.enabledElements[patternId],
+					this.enabledElementCounts[patternId], enabledId);
+			this.enabledElementCounts[patternId]++;
+		}
+	}
+
+	private static long getKey(final int patternId, final int elementId) {
+		return (long) patternId << 32 | elementId;
+	}
+
+	private static int[] add(final int[] ids, final int count, final int id) {
+		int[] ret = ids;
+		if (ret == null)
+			ret = new int[4];
+		else if (count == ret.length)
+			ret = copyOf(ret, 2 * count);
+		ret[count] = id;
+		return ret;
+	}
+
+	private static int[] copyOf(final int[] array, final int length) {
+		final int[] ret = new int[length];
+		System.arraycopy(array, 0, ret, 0, Math.min(array.length, length));
+		return ret;
+	}
+
+	private static int[][] copyOf(final int[][] array, final int length) {
+		final int[][] ret = new int[length][];
+		System.arraycopy(array, 0, ret, 0, Math.min(array.length, length));
+		return ret;
+	}
+
+	/**
+	 * @return the number of patterns.
+	 */
+	public int size() {
+		return this.patterns.size();
+	}
+
+	/**
+	 * @param patternId
+	 * @return the pattern with the given id.
+	 */
+	public Pattern<IntentionArc<IElement>> getPattern(final int patternId) {
+		return this.patterns.get(patternId);
+	}
+
+	/**
+	 * @param patternId
+	 * @return the elements suggested by the pattern with the given id.
+	 */
+	public Set<IntentionElement<IElement>> getResults(final int patternId) {
+		return this.getElements(this.results[patternId],
+				this.resultCounts[patternId]);
+	}
+
+	/**
+	 * @param patternId
+	 * @return the enabled elements the pattern with the given id was found
+	 *         from.
+	 */
+	public Set<IntentionElement<IElement>> getEnabledElements(
+			final int patternId) {
+		return this.getElements(this.enabledElements[patternId],
+				this.enabledElementCounts[patternId]);
+	}
+
+	private Set<IntentionElement<IElement>> getElements(final int[] ids,
+			final int count) {
+		final Set<IntentionElement<IElement>> ret = new LinkedHashSet<IntentionElement<IElement>>(
+				2 * count);
+		for (int i = 0; i < count; i++)
+			ret.add(this.elements.get(ids[i]));
+		return ret;
+	}
+
+	/**
+	 * Adds the patterns of this table, in the order they were found, and
+	 * their elements to the given maps.
+	 *
+	 * @param patternToResultMap
+	 * @param patternToEnabledElementMap
+	 */
+	public void addTo(
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToResultMap,
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> patternToEnabledElementMap) {
+		for (int id = 0; id < this.patterns.size(); id++) {
+			final Pattern<IntentionArc<IElement>> pattern = this.patterns
+					.get(id);
+			final Set<IntentionElement<IElement>> results = patternToResultMap
+					.get(pattern);
+			if (results == null)
+				patternToResultMap.put(pattern, this.getResults(id));
+			else
+				results.addAll(this.getResults(id));
+			final Set<IntentionElement<IElement>> enabledElements = patternToEnabledElementMap
+					.get(pattern);
+			if (enabledElements == null)
+				patternToEnabledElementMap.put(pattern, this
+						.getEnabledElements(id));
+			else
+				enabledElements.addAll(this.getEnabledElements(id));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * The relation types of the arcs of a path, in order. Two paths are type
+ * equivalent exactly when their signatures are equal, so signatures can be
+ * used as hash keys to find the paths intersecting a given one.
+ *
+ * @author raffi
+ *
+ */
+public final class RelationSignature implements Serializable {
+
+	private static final long serialVersionUID = 2915434317420858466L;
+
+	private final Relation[] relations;
+
+	private final int hash;
+
+	/**
+	 * @param path
+	 */
+	public RelationSignature(final Path<?> path) {
+		this.relations = new Relation[path.size()];
+		for (int i = 0; i < this.relations.length; i++)
+			this.relations[i] = path.get(i).getType();
+		this.hash = Arrays.hashCode(this.relations);
+	}
+
+	/**
+	 * @param relations
+	 *            the relation types of the arcs, of which the first
+	 *            <code>size</code> are copied.
+	 * @param size
+	 */
+	RelationSignature(final Relation[] relations, final int size) {
+		this.relations = new Relation[size];
+		System.arraycopy(relations, 0, this.relations, 0, size);
+		this.hash = Arrays.hashCode(this.relations);
+	}
+
+	/**
+	 * @return the number of relations.
+	 */
+	public int size() {
+		return this.relations.length;
+	}
+
+	/**
+	 * @param index
+	 * @return the relation type of the arc at the given index.
+	 */
+	public Relation get(final int index) {
+		return this.relations[index];
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RelationSignature))
+			return false;
+		final RelationSignature rhs = (RelationSignature) obj;
+		return this.hash == rhs.hash
+				&& Arrays.equals(this.relations, rhs.relations);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(this.relations);
+	}
+}
@@ -0,0 +1,416 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph;
+
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.Atom;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.Database;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.FactFilter;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.Program;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.Rule;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.datalog.Table;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Answers the suggestion queries with the rules of <code>rules.pl</code>
+ * evaluated bottom-up as Datalog. Nodes, arcs and relation types are
+ * numbered, and the graph is given as <code>arc(Arc, From, To, Type)</code>
+ * facts read from the node numbers of the graph; only the arcs of the
+ * answers are asked of the graph as objects. Datalog has no lists, so <code>path/3</code> and
+ * <code>travel/4</code> are unrolled into a <code>pathK</code> predicate for
+ * each length K admitted by the budget, holding the nodes, arcs and types of
+ * the path. <code>distance/4</code> is the length K, so that
+ * <code>suggested/1</code> joins paths of the same predicate, and their types
+ * as the node rules do.
+ *
+ * @author raffi
+ *
+ */
+public class SuggestionProgram {
+
+	private static final String ARC = "arc";
+
+	private static final String ENABLED_NODE = "enabledNode";
+
+	private static final String ENABLED_ARC = "enabledArc";
+
+	private static final String QUERIED = "queried";
+
+	private static final String PATH = "path";
+
+	private static final String FORWARD_NODE = "forwardNode";
+
+	private static final String BACKWARD_NODE = "backwardNode";
+
+	private static final String FORWARD_ARC = "forwardArc";
+
+	private static final String BACKWARD_ARC = "backwardArc";
+
+	private final IntentionGraph graph;
+
+	private final int maxLength;
+
+	/*
+	 * The arcs admitted by the budget, numbered in the order of their source
+	 * nodes. Nodes are numbered by the graph.
+	 */
+
+	private int arcCount;
+
+	private int[] arcFrom = new int[16];
+
+	private int[] arcTo = new int[16];
+
+	private Relation[] arcRelations = new Relation[16];
+
+	/**
+	 * The arcs of node <code>i</code> are numbered from
+	 * <code>arcStart[i]</code> (inclusive) to <code>arcStart[i + 1]</code>
+	 * (exclusive).
+	 */
+	private final int[] arcStart;
+
+	private final Database database = new Database();
+
+	private final Program queryProgram;
+
+	/**
+	 * Derives the paths of the given graph admitted by the given budget. Once
+	 * the budget is exhausted, the paths derived so far are kept.
+	 *
+	 * @param graph
+	 * @param budget
+	 * @param monitor
+	 */
+	public SuggestionProgram(final IntentionGraph graph,
+			final PathBudget budget, final IProgressMonitor monitor) {
+		this.graph = graph;
+		this.maxLength = budget.getMaxLength();
+		monitor.beginTask("Deriving paths.", 2);
+		this.arcStart = new int[graph.getIdBound() + 1];
+		int start = 0;
+		for (int id = graph.nextId(0); id >= 0; id = graph.nextId(id + 1)) {
+			while (start <= id)
+				this.arcStart[start++] = this.arcCount;
+			final IElement from = graph.getElement(id);
+			for (final Relation relation : graph.getArcRelations())
+				for (final int to : graph.getTargets(id, relation))
+					if (budget.admits(from, relation, graph.getElement(to))) {
+						this.database.add(ARC, this.arcCount, id, to, relation
+								.ordinal());
+						this.addArc(id, relation, to);
+					}
+		}
+		while (start < this.arcStart.length)
+			this.arcStart[start++] = this.arcCount;
+		monitor.worked(1);
+
+		this.getPathProgram().evaluate(this.database, new FactFilter() {
+			public boolean admits(final String predicate, final int[] tuple) {
+				return !predicate.startsWith(PATH) || budget.spend();
+			}
+		});
+		this.queryProgram = this.getQueryProgram();
+		monitor.done();
+	}
+
+	private void addArc(final int from, final Relation relation, final int to) {
+		if (this.arcCount == this.arcFrom.length) {
+			final int length = 2 * this.arcCount;
+			final int[] arcFrom = new int[length];
+			System.arraycopy(this.arcFrom, 0, arcFrom, 0, this.arcCount);
+			this.arcFrom = arcFrom;
+			final int[] arcTo = new int[length];
+			System.arraycopy(this.arcTo, 0, arcTo, 0, this.arcCount);
+			this.arcTo = arcTo;
+			final Relation[] arcRelations = new Relation[length];
+			System.arraycopy(this.arcRelations, 0, arcRelations, 0,
+					this.arcCount);
+			this.arcRelations = arcRelations;
+		}
+		this.arcFrom[this.arcCount] = from;
+		this.arcTo[this.arcCount] = to;
+		this.arcRelations[this.arcCount] = relation;
+		this.arcCount++;
+	}
+
+	/**
+	 * @param arc
+	 * @return the number of the given arc, or -1 if it was not admitted.
+	 */
+	private int getId(final IntentionArc<IElement> arc) {
+		final int from = this.graph.getId(arc.getFromNode().getElem());
+		final int to = this.graph.getId(arc.getToNode().getElem());
+		if (from < 0 || from + 1 >= this.arcStart.length)
+			return -1;
+		for (int i = this.arcStart[from]; i < this.arcStart[from + 1]; i++)
+			if (this.arcTo[i] == to && this.arcRelations[i] == arc.getType())
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @param id
+	 * @return the arc of the graph with the given number.
+	 */
+	private IntentionArc<IElement> getArc(final int id) {
+		return this.graph.getArc(this.arcFrom[id], this.arcRelations[id],
+				this.arcTo[id]);
+	}
+
+	/*
+	 * The variables of the rules: the nodes, arcs and types of a first path,
+	 * then those of a second one, then the enabled and suggested elements.
+	 */
+
+	private int node(final int path, final int index) {
+		return Atom.var(path * 3 * (this.maxLength + 1) + index);
+	}
+
+	private int arc(final int path, final int index) {
+		return Atom.var(path * 3 * (this.maxLength + 1) + this.maxLength + 1
+				+ index);
+	}
+
+	private int type(final int path, final int index) {
+		return Atom.var(path * 3 * (this.maxLength + 1) + 2
+				* (this.maxLength + 1) + index);
+	}
+
+	/**
+	 * @param path
+	 *            which path of the rule.
+	 * @param length
+	 * @param first
+	 *            the term of the first node, or 0 for its variable.
+	 * @param last
+	 *            the term of the last node, or 0 for its variable.
+	 * @param firstArc
+	 *            the term of the first arc, or 0 for its variable.
+	 * @param lastArc
+	 *            the term of the last arc, or 0 for its variable.
+	 * @return <code>pathK(N0, ..., NK, A1, ..., AK, T1, ..., TK)</code>, where
+	 *         the types are those of the first path of the rule.
+	 */
+	private Atom getPathAtom(final int path, final int length,
+			final int first, final int last, final int firstArc,
+			final int lastArc) {
+		final int[] terms = new int[3 * length + 1];
+		for (int i = 0; i <= length; i++)
+			terms[i] = this.node(path, i);
+		for (int i = 1; i <= length; i++) {
+			terms[length + i] = this.arc(path, i);
+			terms[2 * length + i] = this.type(0, i);
+		}
+		if (first != 0)
+			terms[0] = first;
+		if (last != 0)
+			terms[length] = last;
+		if (firstArc != 0)
+			terms[length + 1] = firstArc;
+		if (lastArc != 0)
+			terms[2 * length] = lastArc;
+		return new Atom(PATH + length, terms);
+	}
+
+	/**
+	 * <pre>
+	 * path1(N0, N1, A1, T1) :- arc(A1, N0, N1, T1).
+	 * pathK(N0, ..., NK, A1, ..., AK, T1, ..., TK) :-
+	 *     pathJ(N0, ..., NJ, A1, ..., AJ, T1, ..., TJ),
+	 *     arc(AK, NJ, NK, TK), NK \== N0, ..., NK \== NJ.
+	 * </pre>
+	 *
+	 * where J is K - 1, as <code>travel/4</code> does not visit a node twice.
+	 */
+	private Program getPathProgram() {
+		final Program ret = new Program();
+		for (int length = 1; length <= this.maxLength; length++) {
+			final Atom arc = new Atom(ARC, this.arc(0, length), this.node(0,
+					length - 1), this.node(0, length), this.type(0, length));
+			if (length == 1)
+				ret.addRule(new Rule(this.getPathAtom(0, length, 0, 0, 0, 0),
+						arc));
+			else {
+				final Rule rule = new Rule(this.getPathAtom(0, length, 0, 0,
+						0, 0), this.getPathAtom(0, length - 1, 0, 0, 0, 0), arc);
+				for (int i = 0; i < length; i++)
+					rule.addInequality(this.node(0, length), this.node(0, i));
+				ret.addRule(rule);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * For each length K, the enabled path is the first path of a rule and the
+	 * intersecting path, of the same types, the second one:
+	 *
+	 * <pre>
+	 * forwardNodeK(Y, X, A1, ..., AK) :- enabledNode(Y),
+	 *     pathK(Y, ..., Z, A1, ..., AK, T1, ..., TK),
+	 *     pathK(X, ..., Z, B1, ..., BK, T1, ..., TK).
+	 * forwardArcK(A1, B1, A1, ..., AK) :- enabledArc(A1),
+	 *     pathK(N0, ..., Z, A1, ..., AK, T1, ..., TK), queried(T1),
+	 *     pathK(M0, ..., Z, B1, ..., BK, T1, ..., TK).
+	 * </pre>
+	 *
+	 * and the backward rules likewise from the other end of the paths.
+	 */
+	private Program getQueryProgram() {
+		final Program ret = new Program();
+		final int enabled = Atom.var(6 * (this.maxLength + 1));
+		final int suggested = Atom.var(6 * (this.maxLength + 1) + 1);
+		for (int length = 1; length <= this.maxLength; length++) {
+			final int[] enabledArcs = new int[length];
+			for (int i = 0; i < length; i++)
+				enabledArcs[i] = this.arc(0, i + 1);
+
+			ret.addRule(new Rule(getAnswerAtom(FORWARD_NODE, length,
+					enabled, suggested, enabledArcs), new Atom(ENABLED_NODE,
+					enabled), this.getPathAtom(0, length, enabled, 0, 0, 0),
+					this.getPathAtom(1, length, suggested, this.node(0,
+							length), 0, 0)));
+
+			ret.addRule(new Rule(getAnswerAtom(BACKWARD_NODE, length,
+					enabled, suggested, enabledArcs), new Atom(ENABLED_NODE,
+					enabled), this.getPathAtom(0, length, 0, enabled, 0, 0),
+					this.getPathAtom(1, length, this.node(0, 0), suggested, 0,
+							0)));
+
+			final int[] forwardArcs = enabledArcs.clone();
+			forwardArcs[0] = enabled;
+			ret.addRule(new Rule(getAnswerAtom(FORWARD_ARC, length,
+					enabled, suggested, forwardArcs), new Atom(ENABLED_ARC,
+					enabled), this.getPathAtom(0, length, 0, 0, enabled, 0),
+					new Atom(QUERIED, this.type(0, 1)), this.getPathAtom(1,
+							length, 0, this.node(0, length), suggested, 0)));
+
+			final int[] backwardArcs = enabledArcs.clone();
+			backwardArcs[length - 1] = enabled;
+			ret.addRule(new Rule(getAnswerAtom(BACKWARD_ARC, length,
+					enabled, suggested, backwardArcs), new Atom(ENABLED_ARC,
+					enabled), this.getPathAtom(0, length, 0, 0, 0, enabled),
+					new Atom(QUERIED, this.type(0, length)), this.getPathAtom(
+							1, length, this.node(0, 0), 0, 0, suggested)));
+		}
+		return ret;
+	}
+
+	private static Atom getAnswerAtom(final String predicate, final int length,
+			final int enabled, final int suggested, final int[] enabledArcs) {
+		final int[] terms = new int[length + 2];
+		terms[0] = enabled;
+		terms[1] = suggested;
+		System.arraycopy(enabledArcs, 0, terms, 2, length);
+		return new Atom(predicate + length, terms);
+	}
+
+	/**
+	 * Answers every query of the node rules: the forward and backward
+	 * suggested execution nodes, and the forward and backward suggested arcs
+	 * of each of the given types.
+	 *
+	 * @param relations
+	 *            the types of the enabled arcs.
+	 * @param patternTable
+	 *            where the rows are aggregated.
+	 * @param monitor
+	 */
+	@SuppressWarnings("unchecked")
+	public void executeQueries(
+			final Set<Relation> relations,
+			final PatternTable patternTable,
+			final IProgressMonitor monitor) {
+		monitor.beginTask("Executing suggestion queries.",
+				4 * this.maxLength + 1);
+		for (final String predicate : this.queryProgram.getDerivedPredicates()) {
+			final Table answers = this.database.getTable(predicate);
+			if (answers != null)
+				answers.clear();
+		}
+		this.database.getTable(ENABLED_NODE, 1).clear();
+		this.database.getTable(ENABLED_ARC, 1).clear();
+		this.database.getTable(QUERIED, 1).clear();
+
+		for (final IntentionElement<IElement> elem : this.graph
+				.getEnabledElements())
+			if (elem instanceof IntentionNode) {
+				final int id = this.graph
+						.getId(((IntentionNode<IElement>) elem).getElem());
+				if (id >= 0)
+					this.database.add(ENABLED_NODE, id);
+			}
+			else {
+				final int id = this.getId((IntentionArc<IElement>) elem);
+				if (id >= 0)
+					this.database.add(ENABLED_ARC, id);
+			}
+		for (final Relation relation : relations)
+			this.database.add(QUERIED, relation.ordinal());
+
+		this.queryProgram.evaluate(this.database);
+		monitor.worked(1);
+
+		final String[] predicates = new String[] { FORWARD_NODE,
+				BACKWARD_NODE, FORWARD_ARC, BACKWARD_ARC };
+		for (int length = 1; length <= this.maxLength; length++)
+			for (int kind = 0; kind < predicates.length; kind++) {
+				final boolean forward = kind % 2 == 0;
+				final Table answers = this.database.getTable(predicates[kind]
+						+ length);
+				if (answers == null) {
+					monitor.worked(1);
+					continue;
+				}
+				// the arcs of each answer are only copied into a path when its
+				// pattern is new.
+				final Object[] enabledArcs = new Object[length];
+				for (final int[] answer : answers.getTuples()) {
+					for (int i = 0; i < length; i++)
+						enabledArcs[i] = this.getArc(answer[i + 2]);
+					final IntentionNode<IElement> commonNode = forward ? ((IntentionArc<IElement>) enabledArcs[length - 1])
+							.getToNode()
+							: ((IntentionArc<IElement>) enabledArcs[0])
+									.getFromNode();
+					if (kind < 2) {
+						final IntentionNode<IElement> enabledNode = this.graph
+								.getShell(answer[0]);
+						final long key = Path.getPatternKey(enabledArcs,
+								length, commonNode, enabledNode);
+						int patternId = patternTable.getPatternId(key);
+						if (patternId < 0) {
+							patternId = patternTable.intern(new Path<IntentionArc<IElement>>(
+									enabledArcs.clone()).extractPattern(
+									commonNode, enabledNode));
+							patternTable.putPatternId(key, patternId);
+						}
+						patternTable.record(patternId, this.graph
+								.getShell(answer[1]), enabledNode);
+					}
+					else {
+						final IntentionArc<IElement> enabledArc = this
+								.getArc(answer[0]);
+						final long key = Path.getPatternKey(enabledArcs,
+								length, commonNode, null);
+						int patternId = patternTable.getPatternId(key);
+						if (patternId < 0) {
+							patternId = patternTable.intern(new Path<IntentionArc<IElement>>(
+									enabledArcs.clone()).extractPattern(
+									commonNode, enabledArc));
+							patternTable.putPatternId(key, patternId);
+						}
+						patternTable.record(patternId, this
+								.getArc(answer[1]), enabledArc);
+					}
+				}
+				monitor.worked(1);
+			}
+		monitor.done();
+	}
+}
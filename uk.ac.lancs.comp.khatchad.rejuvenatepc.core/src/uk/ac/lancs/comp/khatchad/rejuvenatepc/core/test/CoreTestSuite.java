@@ -0,0 +1,28 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * @author raffi
+ *
+ */
+public class CoreTestSuite extends TestSuite {
+	public static Test suite() {
+		final TestSuite lSuite = new TestSuite(
+				"RejuvenatePC suite for the core plug-in");
+		lSuite.addTestSuite(TestCompactIntentionGraph.class);
+		lSuite.addTestSuite(TestConcurrentIntentionGraph.class);
+		lSuite.addTestSuite(TestIntentionGraphUpdate.class);
+		lSuite.addTestSuite(TestLongHashSet.class);
+		lSuite.addTestSuite(TestLongIntHashMap.class);
+		lSuite.addTestSuite(TestPatternEngines.class);
+		lSuite.addTestSuite(TestPatternMatcher.class);
+		lSuite.addTestSuite(TestPatternTable.class);
+		lSuite.addTestSuite(TestQueryResultCache.class);
+		return lSuite;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.ProgramDatabase;
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * A small program of two classes whose methods call each other, one of them
+ * recursively, and access their fields, and the elements an advice on it
+ * would enable.
+ *
+ * @author raffi
+ *
+ */
+class ExampleProgram {
+
+	private final ProgramDatabase aDB = new ProgramDatabase();
+
+	private final IElement[] aMethods = new IElement[6];
+
+	private final IElement[] aFields = new IElement[2];
+
+	public ExampleProgram() {
+		final IElement lClassA = this.addElement(Category.CLASS, "p.A");
+		final IElement lClassB = this.addElement(Category.CLASS, "p.B");
+		final IElement lField1 = this.addElement(Category.FIELD, "p.A.aField1");
+		final IElement lField2 = this.addElement(Category.FIELD, "p.B.aField2");
+		this.aFields[0] = lField1;
+		this.aFields[1] = lField2;
+		for (int i = 0; i < this.aMethods.length; i++)
+			this.aMethods[i] = this.addElement(Category.METHOD, (i < 3 ? "p.A"
+					: "p.B")
+					+ ".method" + i + "()");
+
+		for (int i = 0; i < this.aMethods.length; i++)
+			this.aDB.addRelation(i < 3 ? lClassA : lClassB,
+					Relation.DECLARES_METHOD, this.aMethods[i]);
+		this.aDB.addRelation(lClassA, Relation.DECLARES_FIELD, lField1);
+		this.aDB.addRelation(lClassB, Relation.DECLARES_FIELD, lField2);
+		this.addRelation(0, Relation.CALLS, this.aMethods[1]);
+		this.addRelation(0, Relation.CALLS, this.aMethods[2]);
+		this.addRelation(3, Relation.CALLS, this.aMethods[1]);
+		this.addRelation(3, Relation.CALLS, this.aMethods[4]);
+		this.addRelation(5, Relation.CALLS, this.aMethods[2]);
+		this.addRelation(2, Relation.CALLS, this.aMethods[2]);
+		this.addRelation(1, Relation.GETS, lField1);
+		this.addRelation(2, Relation.GETS, lField1);
+		this.addRelation(4, Relation.SETS, lField2);
+		this.addRelation(5, Relation.SETS, lField2);
+	}
+
+	private IElement addElement(final Category pCategory, final String pId) {
+		final IElement lRet = FlyweightElementFactory.getElement(pCategory,
+				pId);
+		this.aDB.addElement(lRet, 0);
+		return lRet;
+	}
+
+	private void addRelation(final int pMethod, final Relation pRelation,
+			final IElement pRange) {
+		this.aDB.addRelationAndTranspose(this.aMethods[pMethod], pRelation,
+				pRange);
+	}
+
+	/**
+	 * @return a database of the program.
+	 */
+	public JayFX getDatabase() {
+		return new MemoryJayFX(this.aDB);
+	}
+
+	/**
+	 * @param pIndex
+	 * @return the method of the given index.
+	 */
+	public IElement getMethod(final int pIndex) {
+		return this.aMethods[pIndex];
+	}
+
+	/**
+	 * @param pIndex
+	 * @return the field of the given index.
+	 */
+	public IElement getField(final int pIndex) {
+		return this.aFields[pIndex];
+	}
+
+	/**
+	 * Removes the given element from the program, as updating the unit
+	 * declaring it would.
+	 *
+	 * @param pElement
+	 * @return the elements whose relations changed, including the given one.
+	 */
+	public Set<IElement> removeElement(final IElement pElement) {
+		final Set<IElement> lRet = new HashSet<IElement>();
+		lRet.add(pElement);
+		// the declaring class is analyzed again without the element.
+		for (final IElement lElement : this.aDB.getAllElements())
+			for (final Relation lRelation : new Relation[] {
+					Relation.DECLARES_METHOD, Relation.DECLARES_FIELD })
+				if (this.aDB.getRange(lElement, lRelation).contains(pElement)) {
+					this.aDB.removeRelationAndTranspose(lElement, lRelation,
+							pElement);
+					lRet.add(lElement);
+				}
+		for (final Relation lRelation : this.aDB.getRelations(pElement))
+			lRet.addAll(this.aDB.getRange(pElement, lRelation));
+		this.aDB.removeElement(pElement);
+		return lRet;
+	}
+
+	/**
+	 * As if an advice selected the execution of method1 and the calls to it
+	 * from method0.
+	 *
+	 * @param pGraph
+	 *            a graph of the program.
+	 * @return the elements of the given graph the advice enables.
+	 */
+	public EnablementOverlay createOverlay(final IntentionGraph pGraph) {
+		final EnablementOverlay lRet = new EnablementOverlay();
+		lRet.enable(pGraph.getNode(this.aMethods[1]));
+		lRet.enable(pGraph.getNode(this.aMethods[0]).getArc(
+				pGraph.getNode(this.aMethods[1]), Relation.CALLS));
+		return lRet;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+/**
+ * Finds <code>long</code> keys that start probing at the same slot of the
+ * open-addressed tables of the util package, so that collisions can be
+ * tested directly.
+ *
+ * @author raffi
+ *
+ */
+class HashSlots {
+
+	/**
+	 * The number of slots of a table created for few keys.
+	 */
+	public static final int INITIAL_CAPACITY = 16;
+
+	private HashSlots() {
+	}
+
+	/**
+	 * @param pKey
+	 * @param pCapacity
+	 * @return the slot at which the given key starts probing in a table of
+	 *         the given capacity.
+	 */
+	public static int getSlot(final long pKey, final int pCapacity) {
+		final long lHash = pKey * 0x9E3779B97F4A7C15L;
+		return (int) (lHash ^ (lHash >>> 32)) & (pCapacity - 1);
+	}
+
+	/**
+	 * @param pCount
+	 * @param pSlot
+	 * @param pCapacity
+	 * @return the first positive keys starting to probe at the given slot of
+	 *         a table of the given capacity.
+	 */
+	public static long[] getKeys(final int pCount, final int pSlot,
+			final int pCapacity) {
+		final long[] lRet = new long[pCount];
+		int lCount = 0;
+		for (long lKey = 1; lCount < pCount; lKey++)
+			if (getSlot(lKey, pCapacity) == pSlot)
+				lRet[lCount++] = lKey;
+		return lRet;
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.Set;
+
+import ca.mcgill.cs.swevo.jayfx.JayFX;
+import ca.mcgill.cs.swevo.jayfx.ProgramDatabase;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * A program database held in memory rather than extracted from a workspace.
+ *
+ * @author raffi
+ *
+ */
+class MemoryJayFX extends JayFX {
+
+	private final ProgramDatabase aDB;
+
+	public MemoryJayFX(final ProgramDatabase pDB) {
+		this.aDB = pDB;
+	}
+
+	@Override
+	public Set<IElement> getAllElements() {
+		return this.aDB.getAllElements();
+	}
+
+	@Override
+	public Set<IElement> getRange(final IElement pElement,
+			final Relation pRelation) {
+		return this.aDB.getRange(pElement, pRelation);
+	}
+}
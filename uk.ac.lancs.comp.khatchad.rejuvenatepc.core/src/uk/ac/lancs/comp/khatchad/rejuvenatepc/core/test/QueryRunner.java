@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.WorkingMemory;
+import org.eclipse.ajdt.core.javaelements.AdviceElement;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PointcutProcessor;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Runs the suggestion queries once over a given graph, with the given
+ * elements enabled.
+ *
+ * @author raffi
+ *
+ */
+class QueryRunner extends PointcutProcessor {
+
+	private final IntentionGraph aGraph;
+
+	private final EnablementOverlay aOverlay;
+
+	private Set<Pattern<IntentionArc<IElement>>> aPatterns;
+
+	private final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> aPatternToResultMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
+
+	private final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> aPatternToEnabledElementMap = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
+
+	public QueryRunner(final IntentionGraph pGraph,
+			final EnablementOverlay pOverlay) {
+		this.aGraph = pGraph;
+		this.aOverlay = pOverlay;
+	}
+
+	@Override
+	protected IntentionGraph generateIntentionGraph(
+			final Collection<? extends AdviceElement> pAdviceCol,
+			final IProgressMonitor pMonitor) {
+		return this.aGraph;
+	}
+
+	@Override
+	protected void analyzeAdviceCollection(
+			final Collection<? extends AdviceElement> pAdviceCol,
+			final IProgressMonitor pMonitor, final IntentionGraph pGraph,
+			final WorkingMemory pWorkingMemory) {
+		pGraph.beginEnablementBatch();
+		try {
+			pGraph.applyOverlay(this.aOverlay, pMonitor);
+		}
+		finally {
+			updateFacts(pWorkingMemory, pGraph.endEnablementBatch());
+		}
+		if (this.aPatterns != null)
+			this.executeQueries(pMonitor, pGraph, this.aPatterns,
+					this.aPatternToResultMap, this.aPatternToEnabledElementMap);
+		else
+			this.executeQueries(pMonitor, pWorkingMemory,
+					this.aPatternToResultMap, this.aPatternToEnabledElementMap);
+	}
+
+	@Override
+	protected boolean isDirected() {
+		return this.aPatterns != null;
+	}
+
+	/**
+	 * @param pPatterns
+	 *            the only patterns looked for, as by a directed
+	 *            rejuvenator, or <code>null</code> for all of them.
+	 */
+	public void setPatterns(final Set<Pattern<IntentionArc<IElement>>> pPatterns) {
+		this.aPatterns = pPatterns;
+	}
+
+	/**
+	 * Runs the queries with the current settings.
+	 *
+	 * @return this runner.
+	 * @throws Exception
+	 */
+	public QueryRunner run() throws Exception {
+		this.analyze(Collections.<AdviceElement> emptySet(),
+				new NullProgressMonitor());
+		return this;
+	}
+
+	/**
+	 * @return the suggested elements of each pattern found.
+	 */
+	public Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> getResults() {
+		return this.aPatternToResultMap;
+	}
+
+	/**
+	 * @return the enabled elements of each pattern found.
+	 */
+	public Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> getEnabledElements() {
+		return this.aPatternToEnabledElementMap;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PatternEngine;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.CompactIntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathBudget;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternMatcher;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternTable;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Checks that a compact graph holds the same nodes and arcs as a graph built
+ * over the same database, that every pattern engine finds the same patterns
+ * in both, and that the engines walking the arrays leave most nodes
+ * unmaterialized.
+ *
+ * @author raffi
+ *
+ */
+public class TestCompactIntentionGraph extends TestCase {
+
+	private ExampleProgram aProgram;
+
+	private IntentionGraph aGraph;
+
+	private CompactIntentionGraph aCompactGraph;
+
+	/**
+	 * Walking the arrays finds the arcs of the graph without creating them.
+	 */
+	public void testTargets() {
+		for (final IntentionNode<IElement> lNode : this.aGraph.getNodes()) {
+			final int lId = this.aCompactGraph.getId(lNode.getElem());
+			Assert.assertTrue(lId >= 0);
+			for (final Relation lRelation : this.aGraph.getRelations())
+				Assert.assertEquals(this.getTargets(this.aGraph, this.aGraph
+						.getId(lNode.getElem()), lRelation), this.getTargets(
+						this.aCompactGraph, lId, lRelation));
+		}
+		Assert.assertEquals(0, this.aCompactGraph.getMaterializedNodeCount());
+	}
+
+	public void testElements() {
+		Assert.assertEquals(new HashSet<IntentionNode<IElement>>(this.aGraph
+				.getNodes()), new HashSet<IntentionNode<IElement>>(
+				this.aCompactGraph.getNodes()));
+		Assert.assertEquals(new HashSet<IntentionElement<IElement>>(
+				this.aGraph.flatten()), new HashSet<IntentionElement<IElement>>(
+				this.aCompactGraph.flatten()));
+		Assert.assertEquals(this.aCompactGraph.getNodeCount(),
+				this.aCompactGraph.getMaterializedNodeCount());
+	}
+
+	/**
+	 * Each run is on a new compact graph, since the node rules materialize
+	 * every node.
+	 */
+	public void testQueries() throws Exception {
+		for (final PatternEngine lEngine : PatternEngine.values())
+			for (int lLength = 1; lLength <= 3; lLength++) {
+				final QueryRunner lExpected = this.run(this.aGraph, lEngine,
+						lLength);
+				final QueryRunner lActual = this.run(new CompactIntentionGraph(
+						this.aProgram.getDatabase(), new NullProgressMonitor()),
+						lEngine, lLength);
+				Assert.assertFalse(lExpected.getResults().isEmpty());
+				Assert.assertEquals(lExpected.getResults(), lActual
+						.getResults());
+				Assert.assertEquals(lExpected.getEnabledElements(), lActual
+						.getEnabledElements());
+			}
+	}
+
+	/**
+	 * Only the nodes around the enabled elements are created.
+	 */
+	public void testMaterialization() throws Exception {
+		for (final PatternEngine lEngine : new PatternEngine[] {
+				PatternEngine.PATH_INDEX, PatternEngine.DATALOG }) {
+			final CompactIntentionGraph lGraph = new CompactIntentionGraph(
+					this.aProgram.getDatabase(), new NullProgressMonitor());
+			Assert.assertFalse(this.run(lGraph, lEngine, 1).getResults()
+					.isEmpty());
+			Assert.assertTrue(lGraph.getMaterializedNodeCount() < lGraph
+					.getNodeCount());
+		}
+	}
+
+	public void testPatternMatcher() throws Exception {
+		final Set<Pattern<IntentionArc<IElement>>> lPatterns = this.run(
+				this.aGraph, PatternEngine.PATH_INDEX, 2).getResults().keySet();
+		final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> lExpected = this
+				.match(this.aGraph, lPatterns);
+		Assert.assertFalse(lExpected.isEmpty());
+		Assert.assertEquals(lExpected, this.match(this.aCompactGraph,
+				lPatterns));
+	}
+
+	private QueryRunner run(final IntentionGraph pGraph,
+			final PatternEngine pEngine, final int pLength) throws Exception {
+		final QueryRunner lRet = new QueryRunner(pGraph, this.aProgram
+				.createOverlay(pGraph));
+		lRet.setPatternEngine(pEngine);
+		lRet.setPathBudget(new PathBudget(pLength, Integer.MAX_VALUE, null,
+				null));
+		return lRet.run();
+	}
+
+	/**
+	 * @return the suggested elements of the given patterns found in the given
+	 *         graph.
+	 */
+	private Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> match(
+			final IntentionGraph pGraph,
+			final Set<Pattern<IntentionArc<IElement>>> pPatterns) {
+		pGraph.applyOverlay(this.aProgram.createOverlay(pGraph),
+				new NullProgressMonitor());
+		final PatternTable lTable = new PatternTable();
+		new PatternMatcher(pGraph, new PathBudget(2, Integer.MAX_VALUE, null,
+				null)).executeQueries(pPatterns, IntentionGraph
+				.getJoinPointRelations(), lTable, new NullProgressMonitor());
+		final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> lRet = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
+		lTable.addTo(lRet,
+				new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>());
+		return lRet;
+	}
+
+	private Set<IElement> getTargets(final IntentionGraph pGraph,
+			final int pId, final Relation pRelation) {
+		final Set<IElement> lRet = new HashSet<IElement>();
+		for (final int lTarget : pGraph.getTargets(pId, pRelation))
+			lRet.add(pGraph.getElement(lTarget));
+		return lRet;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.aProgram = new ExampleProgram();
+		this.aGraph = new IntentionGraph(this.aProgram.getDatabase(),
+				new NullProgressMonitor());
+		this.aCompactGraph = new CompactIntentionGraph(this.aProgram
+				.getDatabase(), new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Checks that a graph whose arcs are built on worker threads is identical to
+ * one built on the calling thread.
+ *
+ * @author raffi
+ *
+ */
+public class TestConcurrentIntentionGraph extends TestCase {
+
+	private ExampleProgram aProgram;
+
+	private IntentionGraph aGraph;
+
+	private IntentionGraph aConcurrentGraph;
+
+	/**
+	 * The nodes are created in the same order, so they get the same ids.
+	 */
+	public void testNodes() {
+		Assert.assertEquals(new ArrayList<IntentionNode<IElement>>(this.aGraph
+				.getNodes()), new ArrayList<IntentionNode<IElement>>(
+				this.aConcurrentGraph.getNodes()));
+		for (final IntentionNode<IElement> lNode : this.aGraph.getNodes())
+			Assert.assertEquals(this.aGraph.getId(lNode.getElem()),
+					this.aConcurrentGraph.getId(lNode.getElem()));
+	}
+
+	public void testArcs() {
+		Assert.assertFalse(this.aGraph.flatten().size() == this.aGraph
+				.getNodes().size());
+		for (final IntentionNode<IElement> lNode : this.aGraph.getNodes())
+			Assert.assertEquals(new HashSet<IntentionArc<IElement>>(lNode
+					.getArcs()), new HashSet<IntentionArc<IElement>>(
+					this.aConcurrentGraph.getNode(lNode.getElem()).getArcs()));
+		Assert.assertEquals(new HashSet<IntentionElement<IElement>>(
+				this.aGraph.flatten()), new HashSet<IntentionElement<IElement>>(
+				this.aConcurrentGraph.flatten()));
+	}
+
+	public void testEnabledElements() {
+		this.aGraph.applyOverlay(this.aProgram.createOverlay(this.aGraph),
+				new NullProgressMonitor());
+		this.aConcurrentGraph.applyOverlay(this.aProgram
+				.createOverlay(this.aConcurrentGraph), new NullProgressMonitor());
+		Assert.assertEquals(2, this.aGraph.getEnabledElementCount());
+		Assert.assertEquals(new HashSet<IntentionElement<IElement>>(
+				this.aGraph.getEnabledElements()),
+				new HashSet<IntentionElement<IElement>>(this.aConcurrentGraph
+						.getEnabledElements()));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.aProgram = new ExampleProgram();
+		this.aGraph = new IntentionGraph(this.aProgram.getDatabase(),
+				new NullProgressMonitor(), false);
+		this.aConcurrentGraph = new IntentionGraph(this.aProgram.getDatabase(),
+				new NullProgressMonitor(), true);
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.HashSet;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.CompactIntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Checks that updating a graph after an element is removed from its database
+ * gives the graph a full rebuild would.
+ *
+ * @author raffi
+ *
+ */
+public class TestIntentionGraphUpdate extends TestCase {
+
+	/**
+	 * The field is accessed by methods whose relations are otherwise
+	 * unchanged.
+	 */
+	public void testRemoveField() {
+		this.checkRemove(false, new ExampleProgram().getField(0));
+		this.checkRemove(true, new ExampleProgram().getField(0));
+	}
+
+	/**
+	 * The method is called from both classes.
+	 */
+	public void testRemoveMethod() {
+		this.checkRemove(false, new ExampleProgram().getMethod(1));
+		this.checkRemove(true, new ExampleProgram().getMethod(1));
+	}
+
+	private void checkRemove(final boolean pCompact, final IElement pElement) {
+		final ExampleProgram lProgram = new ExampleProgram();
+		final IntentionGraph lGraph = pCompact ? new CompactIntentionGraph(
+				lProgram.getDatabase(), new NullProgressMonitor())
+				: new IntentionGraph(lProgram.getDatabase(),
+						new NullProgressMonitor());
+		Assert.assertNotNull(lGraph.getNode(pElement));
+
+		lGraph.update(lProgram.removeElement(pElement),
+				new NullProgressMonitor());
+		Assert.assertNull(lGraph.getNode(pElement));
+		Assert.assertEquals(new HashSet<IntentionElement<IElement>>(
+				new IntentionGraph(lProgram.getDatabase(),
+						new NullProgressMonitor()).flatten()),
+				new HashSet<IntentionElement<IElement>>(lGraph.flatten()));
+	}
+}
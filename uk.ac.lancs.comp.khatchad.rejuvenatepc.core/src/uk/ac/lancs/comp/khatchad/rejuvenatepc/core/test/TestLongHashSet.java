@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.LongHashSet;
+
+/**
+ * @author raffi
+ *
+ */
+public class TestLongHashSet extends TestCase {
+
+	/**
+	 * Values starting at the same slot are probed past each other, and a
+	 * value missing from the chain is not found.
+	 */
+	public void testCollisions() {
+		final long[] lValues = HashSlots.getKeys(9, 3,
+				HashSlots.INITIAL_CAPACITY);
+		final LongHashSet lSet = new LongHashSet();
+		// half the slots are filled without growing.
+		for (int i = 0; i < 8; i++)
+			Assert.assertTrue(lSet.add(lValues[i]));
+		for (int i = 0; i < 8; i++) {
+			Assert.assertTrue(lSet.contains(lValues[i]));
+			Assert.assertFalse(lSet.add(lValues[i]));
+		}
+		Assert.assertFalse(lSet.contains(lValues[8]));
+		Assert.assertEquals(8, lSet.size());
+	}
+
+	/**
+	 * A chain starting at the last slot goes on at the first one, where a
+	 * value starting there is then probed past.
+	 */
+	public void testWrapAround() {
+		final long[] lLast = HashSlots.getKeys(3, 15,
+				HashSlots.INITIAL_CAPACITY);
+		final long[] lFirst = HashSlots.getKeys(2, 0,
+				HashSlots.INITIAL_CAPACITY);
+		final LongHashSet lSet = new LongHashSet();
+		for (final long lValue : lLast)
+			lSet.add(lValue);
+		Assert.assertFalse(lSet.contains(lFirst[0]));
+		Assert.assertTrue(lSet.add(lFirst[0]));
+		for (final long lValue : lLast)
+			Assert.assertTrue(lSet.contains(lValue));
+		Assert.assertTrue(lSet.contains(lFirst[0]));
+		Assert.assertFalse(lSet.contains(lFirst[1]));
+	}
+
+	/**
+	 * The colliding values are all kept while the table grows twice, from 16
+	 * slots at the ninth value and from 32 at the seventeenth.
+	 */
+	public void testResize() {
+		final long[] lValues = HashSlots.getKeys(20, 5,
+				HashSlots.INITIAL_CAPACITY);
+		final LongHashSet lSet = new LongHashSet(1);
+		for (int i = 0; i < lValues.length; i++) {
+			Assert.assertTrue(lSet.add(lValues[i]));
+			Assert.assertEquals(i + 1, lSet.size());
+			for (int j = 0; j <= i; j++)
+				Assert.assertTrue(lSet.contains(lValues[j]));
+			for (int j = i + 1; j < lValues.length; j++)
+				Assert.assertFalse(lSet.contains(lValues[j]));
+		}
+	}
+
+	/**
+	 * The value marking the free slots is kept aside, through growths and
+	 * clears, and is not found in a full chain.
+	 */
+	public void testFreeValue() {
+		final LongHashSet lSet = new LongHashSet();
+		for (final long lValue : HashSlots.getKeys(8,
+				HashSlots.getSlot(Long.MIN_VALUE, HashSlots.INITIAL_CAPACITY),
+				HashSlots.INITIAL_CAPACITY))
+			lSet.add(lValue);
+		Assert.assertFalse(lSet.contains(Long.MIN_VALUE));
+		Assert.assertTrue(lSet.add(Long.MIN_VALUE));
+		Assert.assertFalse(lSet.add(Long.MIN_VALUE));
+		Assert.assertEquals(9, lSet.size());
+
+		for (long i = 0; i < 100; i++)
+			lSet.add(i);
+		Assert.assertTrue(lSet.contains(Long.MIN_VALUE));
+
+		lSet.clear();
+		Assert.assertFalse(lSet.contains(Long.MIN_VALUE));
+		Assert.assertEquals(0, lSet.size());
+		Assert.assertTrue(lSet.add(Long.MIN_VALUE));
+		Assert.assertEquals(1, lSet.size());
+	}
+
+	/**
+	 * Clearing frees the slots of a chain, which can then be filled again.
+	 */
+	public void testClear() {
+		final long[] lValues = HashSlots.getKeys(4, 7,
+				HashSlots.INITIAL_CAPACITY);
+		final LongHashSet lSet = new LongHashSet();
+		for (final long lValue : lValues)
+			lSet.add(lValue);
+		lSet.clear();
+		Assert.assertEquals(0, lSet.size());
+		for (final long lValue : lValues)
+			Assert.assertFalse(lSet.contains(lValue));
+		Assert.assertTrue(lSet.add(lValues[3]));
+		Assert.assertTrue(lSet.contains(lValues[3]));
+		Assert.assertFalse(lSet.contains(lValues[0]));
+	}
+}
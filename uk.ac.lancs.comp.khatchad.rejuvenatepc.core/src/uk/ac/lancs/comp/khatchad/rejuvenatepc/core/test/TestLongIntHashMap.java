@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util.LongIntHashMap;
+
+/**
+ * @author raffi
+ *
+ */
+public class TestLongIntHashMap extends TestCase {
+
+	/**
+	 * Putting a key in the middle of a chain replaces its value only.
+	 */
+	public void testCollisions() {
+		final long[] lKeys = HashSlots.getKeys(5, 9,
+				HashSlots.INITIAL_CAPACITY);
+		final LongIntHashMap lMap = new LongIntHashMap(-1);
+		for (int i = 0; i < 4; i++)
+			lMap.put(lKeys[i], i);
+		lMap.put(lKeys[2], 20);
+		Assert.assertEquals(4, lMap.size());
+		Assert.assertEquals(0, lMap.get(lKeys[0]));
+		Assert.assertEquals(1, lMap.get(lKeys[1]));
+		Assert.assertEquals(20, lMap.get(lKeys[2]));
+		Assert.assertEquals(3, lMap.get(lKeys[3]));
+		Assert.assertEquals(-1, lMap.get(lKeys[4]));
+	}
+
+	/**
+	 * Each value moves with its key when the table grows, including a value
+	 * replaced before the growth.
+	 */
+	public void testResize() {
+		final long[] lKeys = HashSlots.getKeys(20, 11,
+				HashSlots.INITIAL_CAPACITY);
+		final LongIntHashMap lMap = new LongIntHashMap(1, -1);
+		for (int i = 0; i < 8; i++)
+			lMap.put(lKeys[i], i);
+		lMap.put(lKeys[0], 100);
+		for (int i = 8; i < lKeys.length; i++)
+			lMap.put(lKeys[i], i);
+		Assert.assertEquals(lKeys.length, lMap.size());
+		Assert.assertEquals(100, lMap.get(lKeys[0]));
+		for (int i = 1; i < lKeys.length; i++)
+			Assert.assertEquals(i, lMap.get(lKeys[i]));
+	}
+
+	/**
+	 * The key marking the free slots has its value kept aside, through
+	 * growths and clears.
+	 */
+	public void testFreeKey() {
+		final LongIntHashMap lMap = new LongIntHashMap(-1);
+		Assert.assertEquals(-1, lMap.get(Long.MIN_VALUE));
+		lMap.put(Long.MIN_VALUE, 0);
+		lMap.put(Long.MIN_VALUE, 7);
+		Assert.assertEquals(1, lMap.size());
+		for (int i = 0; i < 100; i++)
+			lMap.put(i, i);
+		Assert.assertEquals(7, lMap.get(Long.MIN_VALUE));
+		Assert.assertEquals(101, lMap.size());
+
+		lMap.clear();
+		Assert.assertEquals(-1, lMap.get(Long.MIN_VALUE));
+		Assert.assertEquals(0, lMap.size());
+	}
+
+	/**
+	 * The value given for missing keys can also be put, and is then counted
+	 * as a key.
+	 */
+	public void testNoValue() {
+		final LongIntHashMap lMap = new LongIntHashMap(Integer.MIN_VALUE);
+		lMap.put(3, Integer.MIN_VALUE);
+		Assert.assertEquals(Integer.MIN_VALUE, lMap.get(3));
+		Assert.assertEquals(Integer.MIN_VALUE, lMap.get(4));
+		Assert.assertEquals(1, lMap.size());
+	}
+
+	/**
+	 * No value of a cleared key is got back, even if its slot is filled
+	 * again.
+	 */
+	public void testClear() {
+		final long[] lKeys = HashSlots.getKeys(3, 13,
+				HashSlots.INITIAL_CAPACITY);
+		final LongIntHashMap lMap = new LongIntHashMap(-1);
+		for (int i = 0; i < lKeys.length; i++)
+			lMap.put(lKeys[i], i);
+		lMap.clear();
+		lMap.put(lKeys[2], 42);
+		Assert.assertEquals(1, lMap.size());
+		Assert.assertEquals(-1, lMap.get(lKeys[0]));
+		Assert.assertEquals(-1, lMap.get(lKeys[1]));
+		Assert.assertEquals(42, lMap.get(lKeys[2]));
+	}
+}
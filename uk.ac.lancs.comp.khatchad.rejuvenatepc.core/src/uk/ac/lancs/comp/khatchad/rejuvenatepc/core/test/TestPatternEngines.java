@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PatternEngine;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathBudget;
+
+/**
+ * Checks that every pattern engine finds the same patterns, with the same
+ * suggested and enabled elements, as the node rules fired in a working
+ * memory.
+ *
+ * @author raffi
+ *
+ */
+public class TestPatternEngines extends TestCase {
+
+	private IntentionGraph aGraph;
+
+	private EnablementOverlay aOverlay;
+
+	public void testCombinedQueries() throws Exception {
+		for (int lLength = 1; lLength <= 3; lLength++) {
+			final QueryRunner lExpected = this.run(PatternEngine.DROOLS,
+					false, lLength);
+			this.assertSameResults(lExpected, this.run(PatternEngine.DROOLS,
+					true, lLength));
+		}
+	}
+
+	public void testDatalog() throws Exception {
+		for (int lLength = 1; lLength <= 3; lLength++)
+			this.assertSameResults(this.run(PatternEngine.DROOLS, false,
+					lLength), this.run(PatternEngine.DATALOG, false, lLength));
+	}
+
+	public void testPathIndex() throws Exception {
+		for (int lLength = 1; lLength <= 3; lLength++) {
+			final QueryRunner lExpected = this.run(PatternEngine.DROOLS,
+					false, lLength);
+			this.assertSameResults(lExpected, this.run(
+					PatternEngine.PATH_INDEX, false, lLength));
+			this.assertSameResults(lExpected, this.run(
+					PatternEngine.PATH_INDEX, true, lLength));
+		}
+	}
+
+	/**
+	 * The budget a run ran out of is handed to the caller.
+	 */
+	public void testPathBudget() throws Exception {
+		for (final PatternEngine lEngine : PatternEngine.values()) {
+			QueryRunner lRunner = this.run(lEngine, false, 2, Integer.MAX_VALUE);
+			Assert.assertFalse(lRunner.getLastPathBudget().isExhausted());
+			Assert.assertTrue(lRunner.getLastPathBudget().getPathCount() > 3);
+
+			lRunner = this.run(lEngine, false, 2, 3);
+			Assert.assertTrue(lRunner.getLastPathBudget().isExhausted());
+			Assert.assertEquals(3, lRunner.getLastPathBudget().getPathCount());
+		}
+	}
+
+	private QueryRunner run(final PatternEngine pEngine,
+			final boolean pCombined, final int pLength) throws Exception {
+		return this.run(pEngine, pCombined, pLength, Integer.MAX_VALUE);
+	}
+
+	private QueryRunner run(final PatternEngine pEngine,
+			final boolean pCombined, final int pLength, final int pMaxPaths)
+			throws Exception {
+		final QueryRunner lRet = new QueryRunner(this.aGraph, this.aOverlay);
+		lRet.setPatternEngine(pEngine);
+		lRet.setCombinedQueries(pCombined);
+		lRet.setPathBudget(new PathBudget(pLength, pMaxPaths, null, null));
+		return lRet.run();
+	}
+
+	private void assertSameResults(final QueryRunner pExpected,
+			final QueryRunner pActual) {
+		Assert.assertFalse(pExpected.getResults().isEmpty());
+		Assert.assertEquals(pExpected.getResults(), pActual.getResults());
+		Assert.assertEquals(pExpected.getEnabledElements(), pActual
+				.getEnabledElements());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		final ExampleProgram lProgram = new ExampleProgram();
+		this.aGraph = new IntentionGraph(lProgram.getDatabase(),
+				new NullProgressMonitor());
+		this.aOverlay = lProgram.createOverlay(this.aGraph);
+	}
+}
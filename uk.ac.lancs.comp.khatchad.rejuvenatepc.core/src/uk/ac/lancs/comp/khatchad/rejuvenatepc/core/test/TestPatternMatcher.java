@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PatternEngine;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PathBudget;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+
+/**
+ * Checks that looking for given patterns only finds the patterns, with the
+ * suggested and enabled elements, that deriving every pattern and then
+ * keeping the given ones finds.
+ *
+ * @author raffi
+ *
+ */
+public class TestPatternMatcher extends TestCase {
+
+	private IntentionGraph aGraph;
+
+	private EnablementOverlay aOverlay;
+
+	public void testSavedPatterns() throws Exception {
+		for (int lLength = 1; lLength <= 3; lLength++) {
+			final QueryRunner lDerived = this.run(null, lLength);
+			final Set<Pattern<IntentionArc<IElement>>> lPatterns = new LinkedHashSet<Pattern<IntentionArc<IElement>>>();
+			int i = 0;
+			for (final Pattern<IntentionArc<IElement>> lPattern : lDerived
+					.getResults().keySet())
+				if (i++ % 2 == 0)
+					lPatterns.add(lPattern);
+			Assert.assertFalse(lPatterns.isEmpty());
+			this.assertIntersection(lDerived, lPatterns, this.run(lPatterns,
+					lLength));
+		}
+	}
+
+	/**
+	 * Patterns longer than the paths admitted are never found.
+	 */
+	public void testLongerPatterns() throws Exception {
+		final Set<Pattern<IntentionArc<IElement>>> lPatterns = this.run(null,
+				3).getResults().keySet();
+		for (int lLength = 1; lLength <= 3; lLength++)
+			this.assertIntersection(this.run(null, lLength), lPatterns, this
+					.run(lPatterns, lLength));
+	}
+
+	/**
+	 * The budget of the patterns looked for is handed to the caller.
+	 */
+	public void testPathBudget() throws Exception {
+		final Set<Pattern<IntentionArc<IElement>>> lPatterns = this.run(null,
+				2).getResults().keySet();
+		Assert.assertFalse(this.run(lPatterns, 2).getLastPathBudget()
+				.isExhausted());
+	}
+
+	private QueryRunner run(
+			final Set<Pattern<IntentionArc<IElement>>> pPatterns,
+			final int pLength) throws Exception {
+		final QueryRunner lRet = new QueryRunner(this.aGraph, this.aOverlay);
+		lRet.setPatternEngine(PatternEngine.PATH_INDEX);
+		lRet.setPatterns(pPatterns);
+		lRet.setPathBudget(new PathBudget(pLength, Integer.MAX_VALUE, null,
+				null));
+		return lRet.run();
+	}
+
+	private void assertIntersection(final QueryRunner pDerived,
+			final Set<Pattern<IntentionArc<IElement>>> pPatterns,
+			final QueryRunner pActual) {
+		Assert.assertEquals(this.intersect(pDerived.getResults(), pPatterns),
+				pActual.getResults());
+		Assert.assertEquals(this.intersect(pDerived.getEnabledElements(),
+				pPatterns), pActual.getEnabledElements());
+	}
+
+	private Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> intersect(
+			final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> pMap,
+			final Set<Pattern<IntentionArc<IElement>>> pPatterns) {
+		final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> lRet = new HashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>(
+				pMap);
+		lRet.keySet().retainAll(pPatterns);
+		return lRet;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		final ExampleProgram lProgram = new ExampleProgram();
+		this.aGraph = new IntentionGraph(lProgram.getDatabase(),
+				new NullProgressMonitor());
+		this.aOverlay = lProgram.createOverlay(this.aGraph);
+	}
+}
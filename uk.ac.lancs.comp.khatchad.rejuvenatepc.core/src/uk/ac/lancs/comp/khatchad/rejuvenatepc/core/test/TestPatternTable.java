@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionElement;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Path;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternTable;
+import ca.mcgill.cs.swevo.jayfx.ProgramDatabase;
+import ca.mcgill.cs.swevo.jayfx.model.Category;
+import ca.mcgill.cs.swevo.jayfx.model.FlyweightElementFactory;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * @author raffi
+ *
+ */
+public class TestPatternTable extends TestCase {
+
+	private IntentionNode<IElement> aMethod1;
+
+	private IntentionNode<IElement> aMethod2;
+
+	private IntentionNode<IElement> aField1;
+
+	private IntentionArc<IElement> aCalls;
+
+	private IntentionArc<IElement> aGets;
+
+	private Pattern<IntentionArc<IElement>> aCallsPattern;
+
+	private Pattern<IntentionArc<IElement>> aGetsPattern;
+
+	public void testIntern() {
+		final PatternTable lTable = new PatternTable();
+		Assert.assertEquals(0, lTable.intern(this.aCallsPattern));
+		Assert.assertEquals(1, lTable.intern(this.aGetsPattern));
+		Assert.assertEquals(0, lTable.intern(this.aCallsPattern));
+		Assert.assertEquals(0, lTable.intern(this.newPattern(
+				IntentionNode.DISABLED_WILDCARD, this.aMethod2,
+				Relation.CALLS)));
+		Assert.assertEquals(2, lTable.size());
+		Assert.assertSame(this.aCallsPattern, lTable.getPattern(0));
+		Assert.assertSame(this.aGetsPattern, lTable.getPattern(1));
+	}
+
+	/**
+	 * Interns more patterns than fit in the initial arrays.
+	 */
+	public void testInternMany() {
+		final PatternTable lTable = new PatternTable();
+		final List<Pattern<IntentionArc<IElement>>> lPatterns = new ArrayList<Pattern<IntentionArc<IElement>>>();
+		for (int i = 0; i < 100; i++) {
+			final Pattern<IntentionArc<IElement>> lPattern = this.newPattern(
+					IntentionNode.DISABLED_WILDCARD, this.newNode("p.A.method"
+							+ i + "()"), Relation.CALLS);
+			lPatterns.add(lPattern);
+			Assert.assertEquals(i, lTable.intern(lPattern));
+			lTable.record(i, this.aMethod1, lPattern.get(0).getToNode());
+		}
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(i, lTable.intern(lPatterns.get(i)));
+			Assert.assertEquals(this.setOf(this.aMethod1), lTable
+					.getResults(i));
+		}
+	}
+
+	/**
+	 * The elements of a pattern are kept once each, in the order they were
+	 * first recorded, and an element may be both suggested and enabled.
+	 */
+	public void testRecord() {
+		final PatternTable lTable = new PatternTable();
+		lTable.record(this.aCallsPattern, this.aMethod2, this.aCalls);
+		lTable.record(this.aCallsPattern, this.aMethod1, this.aCalls);
+		lTable.record(this.aCallsPattern, this.aMethod2, this.aMethod2);
+		lTable.record(this.aGetsPattern, this.aGets, this.aMethod2);
+
+		Assert.assertEquals(this.setOf(this.aMethod2, this.aMethod1), lTable
+				.getResults(0));
+		Assert.assertEquals(Arrays.asList(this.aMethod2, this.aMethod1),
+				new ArrayList<IntentionElement<IElement>>(lTable.getResults(0)));
+		Assert.assertEquals(Arrays.asList(this.aCalls, this.aMethod2),
+				new ArrayList<IntentionElement<IElement>>(lTable
+						.getEnabledElements(0)));
+		Assert.assertEquals(this.setOf(this.aGets), lTable.getResults(1));
+		Assert.assertEquals(this.setOf(this.aMethod2), lTable
+				.getEnabledElements(1));
+	}
+
+	public void testAddTo() {
+		final PatternTable lTable = new PatternTable();
+		lTable.record(this.aGetsPattern, this.aGets, this.aGets);
+		lTable.record(this.aCallsPattern, this.aCalls, this.aCalls);
+
+		final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> lResults = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
+		final Map<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>> lEnabledElements = new LinkedHashMap<Pattern<IntentionArc<IElement>>, Set<IntentionElement<IElement>>>();
+		lResults.put(this.aCallsPattern, this.setOf(this.aMethod1));
+		lEnabledElements.put(this.aCallsPattern, this.setOf(this.aMethod1));
+		lTable.addTo(lResults, lEnabledElements);
+
+		Assert.assertEquals(Arrays.asList(this.aCallsPattern,
+				this.aGetsPattern), new ArrayList<Pattern<IntentionArc<IElement>>>(
+				lResults.keySet()));
+		Assert.assertEquals(this.setOf(this.aMethod1, this.aCalls), lResults
+				.get(this.aCallsPattern));
+		Assert.assertEquals(this.setOf(this.aMethod1, this.aCalls),
+				lEnabledElements.get(this.aCallsPattern));
+		Assert.assertEquals(this.setOf(this.aGets), lResults
+				.get(this.aGetsPattern));
+		Assert.assertEquals(this.setOf(this.aGets), lEnabledElements
+				.get(this.aGetsPattern));
+	}
+
+	/**
+	 * Interns the patterns of every path of up to three arcs of a small
+	 * graph, for every common node and enabled element, both by their keys
+	 * and as built, and checks that both give the same id.
+	 */
+	public void testInternPath() {
+		final ProgramDatabase lDB = new ProgramDatabase();
+		final IElement[] lMethods = new IElement[4];
+		for (int i = 0; i < lMethods.length; i++) {
+			lMethods[i] = FlyweightElementFactory.getElement(Category.METHOD,
+					"p.A.method" + i + "()");
+			lDB.addElement(lMethods[i], 0);
+		}
+		final IElement lField = FlyweightElementFactory.getElement(
+				Category.FIELD, "p.A.aField");
+		lDB.addElement(lField, 0);
+		lDB.addRelationAndTranspose(lMethods[0], Relation.CALLS, lMethods[1]);
+		lDB.addRelationAndTranspose(lMethods[0], Relation.CALLS, lMethods[2]);
+		lDB.addRelationAndTranspose(lMethods[1], Relation.CALLS, lMethods[2]);
+		lDB.addRelationAndTranspose(lMethods[3], Relation.CALLS, lMethods[1]);
+		lDB.addRelationAndTranspose(lMethods[1], Relation.GETS, lField);
+		lDB.addRelationAndTranspose(lMethods[2], Relation.SETS, lField);
+		final IntentionGraph lGraph = new IntentionGraph(new MemoryJayFX(lDB),
+				new NullProgressMonitor());
+
+		final List<Path<IntentionArc<IElement>>> lPaths = new ArrayList<Path<IntentionArc<IElement>>>();
+		for (final IntentionNode<IElement> lNode : lGraph.getNodes())
+			for (final IntentionArc<IElement> lArc : lNode.getArcs())
+				lPaths.add(new Path<IntentionArc<IElement>>(lArc));
+		for (int i = 0; i < lPaths.size(); i++)
+			if (lPaths.get(i).size() < 3)
+				for (final IntentionArc<IElement> lArc : lPaths.get(i)
+						.lastElement().getToNode().getArcs())
+					lPaths.add(lPaths.get(i).extend(lArc));
+
+		final PatternTable lTable = new PatternTable();
+		for (final Path<IntentionArc<IElement>> lPath : lPaths)
+			for (final IntentionNode<IElement> lCommonNode : lPath.getNodes()) {
+				Assert.assertTrue(lCommonNode.getOrdinal() >= 0);
+				for (final IntentionNode<IElement> lEnabledNode : lPath
+						.getNodes())
+					if (!lEnabledNode.equals(lCommonNode))
+						Assert.assertEquals(lTable.intern(lPath
+								.extractPattern(lCommonNode, lEnabledNode)),
+								lTable.intern(lPath, lCommonNode,
+										lEnabledNode));
+				for (final IntentionArc<IElement> lEnabledArc : lPath)
+					Assert.assertEquals(lTable.intern(lPath.extractPattern(
+							lCommonNode, lEnabledArc)), lTable.intern(lPath,
+							lCommonNode, lEnabledArc));
+			}
+		Assert.assertTrue(lTable.size() > 1);
+	}
+
+	private Set<IntentionElement<IElement>> setOf(
+			final IntentionElement<IElement>... pElements) {
+		return new LinkedHashSet<IntentionElement<IElement>>(Arrays
+				.asList(pElements));
+	}
+
+	private IntentionNode<IElement> newNode(final String pId) {
+		return new IntentionNode<IElement>(FlyweightElementFactory.getElement(
+				Category.METHOD, pId));
+	}
+
+	private Pattern<IntentionArc<IElement>> newPattern(
+			final IntentionNode<IElement> pFrom,
+			final IntentionNode<IElement> pTo, final Relation pRelation) {
+		return new Pattern<IntentionArc<IElement>>(new IntentionArc<IElement>(
+				pFrom, pTo, pRelation));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.aMethod1 = this.newNode("p.A.method1()");
+		this.aMethod2 = this.newNode("p.A.method2()");
+		this.aField1 = new IntentionNode<IElement>(FlyweightElementFactory
+				.getElement(Category.FIELD, "p.A.aField1"));
+		this.aCalls = new IntentionArc<IElement>(this.aMethod1, this.aMethod2,
+				Relation.CALLS);
+		this.aGets = new IntentionArc<IElement>(this.aMethod2, this.aField1,
+				Relation.GETS);
+		this.aCallsPattern = this.newPattern(IntentionNode.DISABLED_WILDCARD,
+				this.aMethod2, Relation.CALLS);
+		this.aGetsPattern = this.newPattern(this.aMethod2,
+				IntentionNode.DISABLED_WILDCARD, Relation.GETS);
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.PatternEngine;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.QueryResultCache;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.SuggestionQuery;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.EnablementOverlay;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionArc;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionNode;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.PatternTable;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
+import ca.mcgill.cs.swevo.jayfx.model.Relation;
+
+/**
+ * Checks that the rows of a query are reused exactly for the enablement,
+ * query and patterns they were found for, and only while the graph is
+ * unchanged.
+ *
+ * @author raffi
+ *
+ */
+public class TestQueryResultCache extends TestCase {
+
+	private ExampleProgram aProgram;
+
+	private IntentionGraph aGraph;
+
+	private QueryResultCache aCache;
+
+	public void testMiss() {
+		this.apply(this.aProgram.createOverlay(this.aGraph));
+		Assert.assertNull(this.aCache.get(SuggestionQuery.FORWARD_CALLS_ARCS));
+		Assert.assertEquals(0, this.aCache.getHitCount());
+		Assert.assertEquals(1, this.aCache.getMissCount());
+	}
+
+	public void testHit() {
+		this.apply(this.aProgram.createOverlay(this.aGraph));
+		final PatternTable lTable = new PatternTable();
+		this.aCache.put(SuggestionQuery.FORWARD_CALLS_ARCS, lTable);
+		Assert.assertSame(lTable, this.aCache
+				.get(SuggestionQuery.FORWARD_CALLS_ARCS));
+		Assert.assertNull(this.aCache.get(SuggestionQuery.BACKWARD_CALLS_ARCS));
+		Assert.assertEquals(1, this.aCache.getHitCount());
+		Assert.assertEquals(1, this.aCache.getMissCount());
+		Assert.assertEquals(0.5, this.aCache.getHitRatio(), 0);
+	}
+
+	/**
+	 * An overlay built separately for the same elements finds the rows.
+	 */
+	public void testEqualOverlay() {
+		this.apply(this.aProgram.createOverlay(this.aGraph));
+		final PatternTable lTable = new PatternTable();
+		this.aCache.put(SuggestionQuery.ALL, lTable);
+		this.apply(new EnablementOverlay());
+		this.apply(this.aProgram.createOverlay(this.aGraph));
+		Assert.assertSame(lTable, this.aCache.get(SuggestionQuery.ALL));
+	}
+
+	/**
+	 * Enabling another element between two queries hides the rows of the
+	 * first enablement until it is applied again.
+	 */
+	public void testEnablementChange() {
+		final EnablementOverlay lOverlay = this.aProgram
+				.createOverlay(this.aGraph);
+		this.apply(lOverlay);
+		final PatternTable lTable = new PatternTable();
+		this.aCache.put(SuggestionQuery.ALL, lTable);
+
+		final EnablementOverlay lOther = this.aProgram
+				.createOverlay(this.aGraph);
+		lOther.enable(this.aGraph.getNode(this.aProgram.getMethod(2)));
+		this.apply(lOther);
+		Assert.assertNull(this.aCache.get(SuggestionQuery.ALL));
+		final PatternTable lOtherTable = new PatternTable();
+		this.aCache.put(SuggestionQuery.ALL, lOtherTable);
+
+		this.apply(lOverlay);
+		Assert.assertSame(lTable, this.aCache.get(SuggestionQuery.ALL));
+		this.apply(lOther);
+		Assert.assertSame(lOtherTable, this.aCache.get(SuggestionQuery.ALL));
+	}
+
+	/**
+	 * The patterns are copied when the rows are kept, and rows for some
+	 * patterns are not those for all of them.
+	 */
+	public void testPatterns() {
+		this.apply(this.aProgram.createOverlay(this.aGraph));
+		final Set<Pattern<IntentionArc<IElement>>> lPatterns = new HashSet<Pattern<IntentionArc<IElement>>>();
+		lPatterns.add(this.newPattern(1, Relation.CALLS));
+		final PatternTable lTable = new PatternTable();
+		this.aCache.put(SuggestionQuery.ALL, lPatterns, lTable);
+		final Set<Pattern<IntentionArc<IElement>>> lCopy = new HashSet<Pattern<IntentionArc<IElement>>>(
+				lPatterns);
+
+		lPatterns.add(this.newPattern(2, Relation.CALLS));
+		Assert.assertNull(this.aCache.get(SuggestionQuery.ALL, lPatterns));
+		Assert.assertNull(this.aCache.get(SuggestionQuery.ALL));
+		Assert.assertSame(lTable, this.aCache.get(SuggestionQuery.ALL, lCopy));
+	}
+
+	/**
+	 * The ordinals of the removed elements may be given to others, so no
+	 * rows are kept across an update.
+	 */
+	public void testGraphUpdate() {
+		final EnablementOverlay lOverlay = this.aProgram
+				.createOverlay(this.aGraph);
+		this.apply(lOverlay);
+		this.aCache.put(SuggestionQuery.ALL, new PatternTable());
+
+		this.aGraph.update(this.aProgram.removeElement(this.aProgram
+				.getField(1)), new NullProgressMonitor());
+		this.apply(lOverlay);
+		Assert.assertEquals(lOverlay, this.aGraph.getAppliedOverlay());
+		Assert.assertNull(this.aCache.get(SuggestionQuery.ALL));
+	}
+
+	/**
+	 * Caching does not change what an analysis finds.
+	 */
+	public void testAnalysis() throws Exception {
+		for (final PatternEngine lEngine : PatternEngine.values()) {
+			final QueryRunner lExpected = this.newRunner(lEngine, false)
+					.run();
+			final QueryRunner lActual = this.newRunner(lEngine, true).run();
+			Assert.assertNull(lExpected.getQueryResultCache());
+			Assert.assertFalse(lExpected.getResults().isEmpty());
+			Assert.assertEquals(lExpected.getResults(), lActual.getResults());
+			Assert.assertEquals(lExpected.getEnabledElements(), lActual
+					.getEnabledElements());
+			Assert.assertEquals(0, lActual.getQueryResultCache()
+					.getHitCount());
+			Assert.assertTrue(lActual.getQueryResultCache().getMissCount() > 0);
+		}
+	}
+
+	private QueryRunner newRunner(final PatternEngine pEngine,
+			final boolean pCaching) {
+		final IntentionGraph lGraph = new IntentionGraph(this.aProgram
+				.getDatabase(), new NullProgressMonitor());
+		final QueryRunner lRet = new QueryRunner(lGraph, this.aProgram
+				.createOverlay(lGraph));
+		lRet.setPatternEngine(pEngine);
+		lRet.setQueryResultCaching(pCaching);
+		return lRet;
+	}
+
+	private void apply(final EnablementOverlay pOverlay) {
+		this.aGraph.applyOverlay(pOverlay, new NullProgressMonitor());
+	}
+
+	/**
+	 * @return a pattern of a single arc from any enabled node to the method
+	 *         of the given index.
+	 */
+	private Pattern<IntentionArc<IElement>> newPattern(final int pMethod,
+			final Relation pRelation) {
+		return new Pattern<IntentionArc<IElement>>(new IntentionArc<IElement>(
+				IntentionNode.ENABLED_WILDCARD, this.aGraph.getNode(this.aProgram
+						.getMethod(pMethod)), pRelation));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.aProgram = new ExampleProgram();
+		this.aGraph = new IntentionGraph(this.aProgram.getDatabase(),
+				new NullProgressMonitor());
+		this.aCache = new QueryResultCache(this.aGraph);
+	}
+}
@@ -34,6 +34,17 @@ public class FileUtil {
 	 * @throws Exception
 	 */
 	public static RuleBase readRule(final Reader source) throws Exception {
+		//add the package to a rulebase (deploy the rule package).
+		final RuleBase ruleBase = RuleBaseFactory.newRuleBase();
+		ruleBase.addPackage(readPackage(source));
+		return ruleBase;
+	}
+
+	/**
+	 * @return the package compiled from the given rules.
+	 * @throws Exception
+	 */
+	public static Package readPackage(final Reader source) throws Exception {
 		//Use package builder to build up a rule package.
 		//An alternative lower level class called "DrlParser" can also be used...
 	
@@ -44,12 +55,7 @@ public class FileUtil {
 		builder.addPackageFromDrl(source);
 	
 		//get the compiled package (which is serializable)
-		final org.drools.rule.Package pkg = builder.getPackage();
-	
-		//add the package to a rulebase (deploy the rule package).
-		final RuleBase ruleBase = RuleBaseFactory.newRuleBase();
-		ruleBase.addPackage(pkg);
-		return ruleBase;
+		return builder.getPackage();
 	}
 
 	/**
@@ -3,12 +3,17 @@
  */
 package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
 
 import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.IntentionGraph;
+import ca.mcgill.cs.swevo.jayfx.model.IElement;
 
 /**
  * @author raffi
@@ -28,10 +33,59 @@ public class GraphVizUtil {
 	public static void makeDotFile(
 			final IntentionGraph graph,
 			final File aFile) throws IOException {
-		final FileWriter resFileOut = new FileWriter(aFile, false);
-		final PrintWriter resOut = new PrintWriter(resFileOut);
-		resOut.println(graph.toDotFormat());
-		resOut.close();
+		GraphVizUtil.makeDotFile(graph, aFile, null, false);
+	}
+
+	/**
+	 * Streams the graph to the given file.
+	 * 
+	 * @param graph
+	 * @param aFile
+	 * @param elements
+	 *            the elements whose nodes are written, or <code>null</code>
+	 *            for all of them.
+	 * @param enabledOnly
+	 *            whether to only write enabled nodes and arcs.
+	 * @throws IOException
+	 */
+	public static void makeDotFile(
+			final IntentionGraph graph,
+			final File aFile, final Set<IElement> elements,
+			final boolean enabledOnly) throws IOException {
+		final Writer resOut = new BufferedWriter(new FileWriter(aFile, false));
+		try {
+			graph.writeDotFormat(resOut, elements, enabledOnly,
+					new NullProgressMonitor());
+		}
+		finally {
+			resOut.close();
+		}
+	}
+
+	/**
+	 * Streams the arcs of the graph to the given file as Prolog facts.
+	 * 
+	 * @param graph
+	 * @param aFile
+	 * @param elements
+	 *            the elements whose nodes are written, or <code>null</code>
+	 *            for all of them.
+	 * @param enabledOnly
+	 *            whether to only write enabled nodes and arcs.
+	 * @throws IOException
+	 */
+	public static void makePrologFile(
+			final IntentionGraph graph,
+			final File aFile, final Set<IElement> elements,
+			final boolean enabledOnly) throws IOException {
+		final Writer resOut = new BufferedWriter(new FileWriter(aFile, false));
+		try {
+			graph.writeProlog(resOut, elements, enabledOnly,
+					new NullProgressMonitor());
+		}
+		finally {
+			resOut.close();
+		}
 	}
 
 	/**
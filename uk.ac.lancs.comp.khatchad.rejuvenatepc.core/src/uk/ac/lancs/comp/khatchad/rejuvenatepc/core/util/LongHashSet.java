@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of <code>long</code> values stored in an open-addressed array, so that
+ * neither adding nor looking up a value allocates.
+ *
+ * @author raffi
+ *
+ */
+public class LongHashSet {
+
+	/**
+	 * Marks the free slots; the value itself is kept aside.
+	 */
+	private static final long FREE = Long.MIN_VALUE;
+
+	private long[] slots;
+
+	private int size;
+
+	private boolean containsFree;
+
+	public LongHashSet() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 */
+	public LongHashSet(final int expectedSize) {
+		int capacity = 16;
+		while (capacity < 2 * expectedSize)
+			capacity <<= 1;
+		this.slots = newSlots(capacity);
+	}
+
+	private static long[] newSlots(final int capacity) {
+		final long[] ret = new long[capacity];
+		Arrays.fill(ret, FREE);
+		return ret;
+	}
+
+	/**
+	 * @param value
+	 * @return whether the given value was not already in this set.
+	 */
+	public boolean add(final long value) {
+		if (value == FREE) {
+			if (this.containsFree)
+				return false;
+			this.containsFree = true;
+			this.size++;
+			return true;
+		}
+		final int slot = find(this.slots, value);
+		if (this.slots[slot] == value)
+			return false;
+		this.slots[slot] = value;
+		if (++this.size > this.slots.length / 2)
+			this.grow();
+		return true;
+	}
+
+	/**
+	 * @param value
+	 * @return whether the given value is in this set.
+	 */
+	public boolean contains(final long value) {
+		if (value == FREE)
+			return this.containsFree;
+		return this.slots[find(this.slots, value)] == value;
+	}
+
+	/**
+	 * @return the number of values.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes every value.
+	 */
+	public void clear() {
+		Arrays.fill(this.slots, FREE);
+		this.size = 0;
+		this.containsFree = false;
+	}
+
+	/**
+	 * @return the slot holding the given value, or the free slot where it
+	 *         would be added.
+	 */
+	private static int find(final long[] slots, final long value) {
+		final int mask = slots.length - 1;
+		final long hash = value * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (slots[slot] != FREE && slots[slot] != value)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void grow() {
+		final long[] slots = newSlots(this.slots.length * 2);
+		for (final long value : this.slots)
+			if (value != FREE)
+				slots[find(slots, value)] = value;
+		this.slots = slots;
+	}
+}
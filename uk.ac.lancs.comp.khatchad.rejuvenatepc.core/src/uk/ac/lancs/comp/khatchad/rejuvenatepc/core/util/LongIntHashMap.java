@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from <code>long</code> keys to <code>int</code> values stored in
+ * open-addressed arrays, so that neither putting nor getting a value
+ * allocates.
+ *
+ * @author raffi
+ *
+ */
+public class LongIntHashMap {
+
+	/**
+	 * Marks the free slots; the value of this key itself is kept aside.
+	 */
+	private static final long FREE = Long.MIN_VALUE;
+
+	private long[] keys;
+
+	private int[] values;
+
+	private int size;
+
+	private boolean containsFree;
+
+	private int freeValue;
+
+	/**
+	 * The value got for the keys that are not in this map.
+	 */
+	private final int noValue;
+
+	/**
+	 * @param noValue
+	 *            the value got for the keys that are not in this map.
+	 */
+	public LongIntHashMap(final int noValue) {
+		this(16, noValue);
+	}
+
+	/**
+	 * @param expectedSize
+	 * @param noValue
+	 *            the value got for the keys that are not in this map.
+	 */
+	public LongIntHashMap(final int expectedSize, final int noValue) {
+		int capacity = 16;
+		while (capacity < 2 * expectedSize)
+			capacity <<= 1;
+		this.keys = newKeys(capacity);
+		this.values = new int[capacity];
+		this.noValue = noValue;
+	}
+
+	private static long[] newKeys(final int capacity) {
+		final long[] ret = new long[capacity];
+		Arrays.fill(ret, FREE);
+		return ret;
+	}
+
+	/**
+	 * @param key
+	 * @return the value of the given key, or the value given for the keys
+	 *         that are not in this map.
+	 */
+	public int get(final long key) {
+		if (key == FREE)
+			return this.containsFree ? this.freeValue : this.noValue;
+		final int slot = find(this.keys, key);
+		return this.keys[slot] == key ? this.values[slot] : this.noValue;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void put(final long key, final int value) {
+		if (key == FREE) {
+			if (!this.containsFree) {
+				this.containsFree = true;
+				this.size++;
+			}
+			this.freeValue = value;
+			return;
+		}
+		final int slot = find(this.keys, key);
+		this.values[slot] = value;
+		if (this.keys[slot] == key)
+			return;
+		this.keys[slot] = key;
+		if (++this.size > this.keys.length / 2)
+			this.grow();
+	}
+
+	/**
+	 * @return the number of keys.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes every key.
+	 */
+	public void clear() {
+		Arrays.fill(this.keys, FREE);
+		this.size = 0;
+		this.containsFree = false;
+	}
+
+	/**
+	 * @return the slot holding the given key, or the free slot where it would
+	 *         be put.
+	 */
+	private static int find(final long[] keys, final long key) {
+		final int mask = keys.length - 1;
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (keys[slot] != FREE && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void grow() {
+		final long[] keys = newKeys(this.keys.length * 2);
+		final int[] values = new int[keys.length];
+		for (int i = 0; i < this.keys.length; i++)
+			if (this.keys[i] != FREE) {
+				final int slot = find(keys, this.keys[i]);
+				keys[slot] = this.keys[i];
+				values[slot] = this.values[i];
+			}
+		this.keys = keys;
+		this.values = values;
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package uk.ac.lancs.comp.khatchad.rejuvenatepc.core.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.drools.RuleBase;
+import org.drools.RuleBaseConfiguration;
+import org.drools.RuleBaseFactory;
+import org.drools.common.DroolsObjectInputStream;
+import org.drools.rule.Package;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.Constants;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Path;
+import uk.ac.lancs.comp.khatchad.rejuvenatepc.core.graph.Pattern;
+
+/**
+ * Compiles each rules file once. Rule bases are kept by the hash of the rules
+ * they were compiled from and of the build of the plug-in and of Drools, whose
+ * classes the rules refer to, and the compiled packages are serialized to the
+ * state area of the plug-in so that a new session does not compile them
+ * again.
+ *
+ * @author raffi
+ *
+ */
+public class RuleBaseCache {
+
+	private static final String PACKAGE_EXTENSION = ".pkg";
+
+	private static final Map<String, RuleBase> ruleBases = new HashMap<String, RuleBase>();
+
+	private RuleBaseCache() {
+	}
+
+	/**
+	 * @param resource
+	 *            the class path resource of the rules.
+	 * @return the rule base compiled from the given rules. Sessions created
+	 *         from it should be disposed of once no longer needed.
+	 * @throws Exception
+	 */
+	public static synchronized RuleBase getRuleBase(final String resource)
+			throws Exception {
+		final byte[] source = readResource(resource);
+		final Bundle bundle = Platform.getBundle(Constants.PLUGIN_ID);
+		final String hash = getHash(source, bundle);
+		RuleBase ret = ruleBases.get(hash);
+		if (ret != null)
+			return ret;
+
+		final File packageFile = getPackageFile(bundle, hash);
+		if (packageFile != null && packageFile.isFile())
+			try {
+				ret = newRuleBase(readPackage(packageFile));
+			}
+			catch (final Exception e) {
+				// compile it again.
+				packageFile.delete();
+			}
+
+		if (ret == null) {
+			final Package pkg = FileUtil.readPackage(new InputStreamReader(
+					new ByteArrayInputStream(source)));
+			ret = newRuleBase(pkg);
+			if (packageFile != null)
+				try {
+					writePackage(pkg, packageFile);
+				}
+				catch (final IOException e) {
+					e.printStackTrace();
+				}
+		}
+
+		ruleBases.put(hash, ret);
+		return ret;
+	}
+
+	private static RuleBase newRuleBase(final Package pkg) throws Exception {
+		// paths cannot be changed, and so need not be shadowed.
+		final RuleBaseConfiguration conf = new RuleBaseConfiguration();
+		conf.setShadowProxyExcludes(Path.class.getName() + ' '
+				+ Pattern.class.getName());
+		final RuleBase ret = RuleBaseFactory.newRuleBase(conf);
+		ret.addPackage(pkg);
+		return ret;
+	}
+
+	private static byte[] readResource(final String resource)
+			throws IOException {
+		final InputStream in = RuleBaseCache.class
+				.getResourceAsStream(resource);
+		if (in == null)
+			throw new IOException("Cannot find " + resource);
+		try {
+			final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+				ret.write(buffer, 0, read);
+			return ret.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param source
+	 *            the rules.
+	 * @param bundle
+	 *            the plug-in, or <code>null</code> outside of the platform.
+	 * @return the hash of the given rules and of the builds of the classes
+	 *         they are compiled against.
+	 */
+	private static String getHash(final byte[] source, final Bundle bundle)
+			throws NoSuchAlgorithmException {
+		final MessageDigest md = MessageDigest.getInstance("MD5");
+		md.update(source);
+		final StringBuilder build = new StringBuilder();
+		if (bundle != null) {
+			build.append(bundle.getHeaders().get(
+					org.osgi.framework.Constants.BUNDLE_VERSION));
+			build.append('@').append(bundle.getLastModified());
+		}
+		final java.lang.Package drools = RuleBase.class.getPackage();
+		if (drools != null)
+			build.append('/').append(drools.getImplementationVersion());
+		md.update(build.toString().getBytes());
+		final byte[] digest = md.digest();
+		final StringBuilder ret = new StringBuilder();
+		for (final byte b : digest) {
+			ret.append(Character.forDigit((b >> 4) & 0xF, 16));
+			ret.append(Character.forDigit(b & 0xF, 16));
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * @return the file of the package compiled from the rules with the given
+	 *         hash, or <code>null</code> if the plug-in has no state area,
+	 *         e.g., outside of the platform.
+	 */
+	private static File getPackageFile(final Bundle bundle, final String hash) {
+		if (bundle == null)
+			return null;
+		try {
+			final IPath location = Platform.getStateLocation(bundle);
+			return location == null ? null : new File(location.toFile(), hash
+					+ PACKAGE_EXTENSION);
+		}
+		catch (final IllegalStateException e) {
+			return null;
+		}
+	}
+
+	private static Package readPackage(final File file) throws IOException,
+			ClassNotFoundException {
+		final ObjectInputStream in = new DroolsObjectInputStream(
+				new BufferedInputStream(new FileInputStream(file)),
+				RuleBaseCache.class.getClassLoader());
+		try {
+			return (Package) in.readObject();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static void writePackage(final Package pkg, final File file)
+			throws IOException {
+		final File temp = new File(file.getPath() + ".tmp");
+		final ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeObject(pkg);
+		}
+		finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Cannot write " + file);
+		}
+	}
+}
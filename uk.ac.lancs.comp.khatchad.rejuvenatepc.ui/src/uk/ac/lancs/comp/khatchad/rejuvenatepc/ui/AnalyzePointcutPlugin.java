@@ -201,6 +201,21 @@ public class AnalyzePointcutPlugin extends PointcutRefactoringPlugin {
 		TimeCollector.stop();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.ui.PointcutRefactoringPlugin#dispose()
+	 */
+	@Override
+	public void dispose() {
+		try {
+			super.dispose();
+		}
+		finally {
+			this.analyzer.disposeWarmIntentionGraphs();
+		}
+	}
+
 	@Override
 	protected void openConnections() throws IOException {
 		super.openConnections();
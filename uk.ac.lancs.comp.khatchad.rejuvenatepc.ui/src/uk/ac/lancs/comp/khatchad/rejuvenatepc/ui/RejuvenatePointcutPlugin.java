@@ -124,6 +124,19 @@ public class RejuvenatePointcutPlugin extends PointcutRefactoringPlugin {
 		this.instance = this;
 	}
 
+	/* (non-Javadoc)
+	 * @see uk.ac.lancs.comp.khatchad.rejuvenatepc.ui.PointcutRefactoringPlugin#dispose()
+	 */
+	@Override
+	public void dispose() {
+		try {
+			super.dispose();
+		}
+		finally {
+			this.rejuvenator.disposeWarmIntentionGraphs();
+		}
+	}
+
 	public static RejuvenatePointcutPlugin getInstance() {
 		return instance;
 	}